@@ -0,0 +1,68 @@
+package com.yinrs.rank.benchmark;
+
+import com.yinrs.cache.memory.InMemoryCacheManager;
+import com.yinrs.rank.Rank;
+import com.yinrs.rank.RankManager;
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.localrank.LocalRankManager;
+import com.yinrs.rank.redisrank.RedisRank;
+import com.yinrs.rank.redisrank.RedisRankManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shared setup of the benchmarks: backends, pre-filled leaderboards and random node ids.
+ */
+final class Leaderboards {
+    static final String REDIS = "redis";
+    static final String LOCAL = "local";
+    static final String MEMORY = "memory";
+    private static final int FILL_CHUNK = 1000;
+
+    private Leaderboards() {
+    }
+
+    /**
+     * @param backend "redis" for the redis server of reference.conf, "local" for the in-JVM LocalRank,
+     *                "memory" for RedisRank on an InMemoryCacheManager, i.e. the client side cost without the network
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static RankManager<Rank> manager(String backend) {
+        switch (backend) {
+            case REDIS:
+                return (RankManager) RankManagerFactory.getInstance(RedisRankManager.class);
+            case LOCAL:
+                return (RankManager) RankManagerFactory.getInstance(LocalRankManager.class);
+            case MEMORY:
+                return (RankManager) new RedisRankManager<>("benchmemrank_", "benchmemrank_set", RedisRank.class, new InMemoryCacheManager());
+            default:
+                throw new IllegalArgumentException("unknown backend " + backend);
+        }
+    }
+
+    static void fill(Rank rank, int size) {
+        List<RankNode> chunk = new ArrayList<>(FILL_CHUNK);
+        for (int i = 0; i < size; i++) {
+            chunk.add(new RankNode(nodeId(i), null, score()));
+            if (chunk.size() == FILL_CHUNK || i == size - 1) {
+                rank.insertOrUpdate(chunk);
+                chunk.clear();
+            }
+        }
+    }
+
+    static String nodeId(int i) {
+        return "node" + i;
+    }
+
+    static String randomNodeId(int size) {
+        return nodeId(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    static double score() {
+        return ThreadLocalRandom.current().nextInt(1000000);
+    }
+}
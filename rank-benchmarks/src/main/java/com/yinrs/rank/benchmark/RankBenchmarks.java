@@ -0,0 +1,30 @@
+package com.yinrs.rank.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the rank benchmarks once per thread count, the usual JMH command line options
+ * (benchmark regex, -p size=..., -rf json, ...) are passed through.
+ * <pre>
+ * java -cp rank-benchmarks/target/benchmarks.jar com.yinrs.rank.benchmark.RankBenchmarks -p backend=local
+ * </pre>
+ */
+public class RankBenchmarks {
+    private static final int[] THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        for (int threads : THREADS) {
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(cmd).threads(threads);
+            if (cmd.getIncludes().isEmpty()) {
+                builder.include(RankBenchmarks.class.getPackage().getName());
+            }
+            new Runner(builder.build()).run();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.yinrs.rank.benchmark;
+
+import com.yinrs.rank.Rank;
+import com.yinrs.rank.RankManager;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankPage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single rank operations of a RedisRank, with the in-JVM LocalRank as the "local" backend
+ * and RedisRank on an InMemoryCacheManager as the "memory" one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisRankBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({Leaderboards.REDIS, Leaderboards.LOCAL, Leaderboards.MEMORY})
+    String backend;
+
+    private RankManager<Rank> manager;
+    private Rank rank;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        manager = Leaderboards.manager(backend);
+        rank = manager.register("bench-rank-" + size);
+        rank.removeAll();
+        Leaderboards.fill(rank, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.remove(rank);
+    }
+
+    @Benchmark
+    public void insertOrUpdate() {
+        rank.insertOrUpdate(Leaderboards.randomNodeId(size), Leaderboards.score());
+    }
+
+    @Benchmark
+    public Double incr() {
+        return rank.incr(Leaderboards.randomNodeId(size), 1);
+    }
+
+    @Benchmark
+    public Long getDESCRank() {
+        return rank.getDESCRank(Leaderboards.randomNodeId(size));
+    }
+
+    @Benchmark
+    public List<RankNode> descRangeTop100() {
+        return rank.descRangeByRankWithScores(0, 99);
+    }
+
+    @Benchmark
+    public RankPage descRangePageTop100() {
+        return rank.descRangePage(0, 99);
+    }
+
+    @Benchmark
+    public List<RankNode> descRangePage() {
+        long start = ThreadLocalRandom.current().nextInt(Math.max(size - 100, 1));
+        return rank.descRangeByRankWithScores(start, start + 99);
+    }
+}
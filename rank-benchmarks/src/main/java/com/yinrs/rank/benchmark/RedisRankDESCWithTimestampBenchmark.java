@@ -0,0 +1,72 @@
+package com.yinrs.rank.benchmark;
+
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.redisrank.RedisRankDESCWithTimestamp;
+import com.yinrs.rank.redisrank.RedisRankDESCWithTimestampManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rank operations of a RedisRankDESCWithTimestamp, every write is one lua script.
+ * Filling goes node by node, so the sizes stay below the ones of {@link RedisRankBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisRankDESCWithTimestampBenchmark {
+    @Param({"1000", "100000"})
+    int size;
+
+    private RedisRankDESCWithTimestampManager<RedisRankDESCWithTimestamp> manager;
+    private RedisRankDESCWithTimestamp rank;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        manager = RankManagerFactory.getInstance(RedisRankDESCWithTimestampManager.class);
+        rank = manager.register("bench-rank-" + size);
+        rank.removeAll();
+        for (int i = 0; i < size; i++) {
+            rank.insertOrUpdate(Leaderboards.nodeId(i), Leaderboards.score(), new Date());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.remove(rank);
+    }
+
+    @Benchmark
+    public void insertOrUpdate() {
+        rank.insertOrUpdate(Leaderboards.randomNodeId(size), Leaderboards.score(), new Date());
+    }
+
+    @Benchmark
+    public Double incr() {
+        return rank.incr(Leaderboards.randomNodeId(size), 1, new Date());
+    }
+
+    @Benchmark
+    public Long getDESCRank() {
+        return rank.getDESCRank(Leaderboards.randomNodeId(size));
+    }
+
+    @Benchmark
+    public List<RankNode> descRangeTop100() {
+        return rank.descRangeByRankWithScores(0, 99);
+    }
+
+    @Benchmark
+    public List<RankNode> descRangePage() {
+        long start = ThreadLocalRandom.current().nextInt(Math.max(size - 100, 1));
+        return rank.descRangeByRankWithScores(start, start + 99);
+    }
+}
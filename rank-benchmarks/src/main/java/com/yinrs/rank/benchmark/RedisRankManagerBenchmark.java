@@ -0,0 +1,57 @@
+package com.yinrs.rank.benchmark;
+
+import com.yinrs.rank.Rank;
+import com.yinrs.rank.RankManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RankManager#move between two ranks of the same size, each invocation moves a random node
+ * in a random direction, so both ranks keep about the same size during the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisRankManagerBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({Leaderboards.REDIS, Leaderboards.LOCAL, Leaderboards.MEMORY})
+    String backend;
+
+    private RankManager<Rank> manager;
+    private Rank left;
+    private Rank right;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        manager = Leaderboards.manager(backend);
+        left = manager.register("bench-move-left-" + size);
+        right = manager.register("bench-move-right-" + size);
+        left.removeAll();
+        right.removeAll();
+        Leaderboards.fill(left, size);
+        Leaderboards.fill(right, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.remove(left);
+        manager.remove(right);
+    }
+
+    @Benchmark
+    public void move() {
+        String nodeId = Leaderboards.randomNodeId(size);
+        if (ThreadLocalRandom.current().nextBoolean()) {
+            manager.move(left, right, nodeId);
+        } else {
+            manager.move(right, left, nodeId);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.yinrs.cache;
 
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.metrics.MetricsRegistry;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.Tuple;
 
 import java.util.List;
@@ -14,8 +17,34 @@ public interface CacheManager {
 
     void destroy();
 
+    /**
+     * @return the manager for reads that may lag behind the writes, e.g. served by replicas, or this manager
+     */
+    CacheManager readReplicas();
+
+    MetricsRegistry getMetrics();
+
+    /**
+     * @return true if the keys can be used together in one script
+     */
+    boolean isSameSlot(String... keys);
+
     void del(String key);
 
+    /**
+     * Renames the key, replacing newKey and keeping the time to live. The keys must be in the same slot.
+     */
+    void rename(String key, String newKey);
+
+    /**
+     * Sets the time to live of the key, a key that does not exist is left alone.
+     */
+    void expire(String key, int seconds);
+
+    boolean exists(String key);
+
+    long incr(String key);
+
     long hincrBy(String key, String field, long value);
 
     void set(String key, String value);
@@ -28,6 +57,11 @@ public interface CacheManager {
 
     <T> T get(String key, Class<T> tClass);
 
+    /**
+     * @return the number stored at key, 0 if there is none
+     */
+    <T extends Number> T getNumber(String key, Class<T> clazz);
+
     void hset(String key, String field, String value);
 
     void hset(String key, String field, Object value);
@@ -36,8 +70,18 @@ public interface CacheManager {
 
     void hdel(String key, String... field);
 
+    Map<String, String> hgetAll(String key);
+
     <T> Map<String, T> hgetAll(String key, Class<T> clazz);
 
+    /**
+     * @param cursor "0" to start, then the cursor of the previous result, which is "0" again once the scan is over
+     * @return about count fields and their values, null if the scan failed
+     */
+    ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, int count);
+
+    void hmset(String key, Map<String, String> hash);
+
     void zAdd(String key, String value);
 
     void zadd(String key, double score, String member);
@@ -62,6 +106,19 @@ public interface CacheManager {
 
     Long zremrangeByScore(String key, double start, double end);
 
+    /**
+     * Stores the union of the sorted sets at keys in dstKey, the scores of a member summed; dstKey is deleted
+     * if the union is empty. The keys must be in the same slot.
+     *
+     * @return the number of members in dstKey
+     */
+    Long zunionstore(String dstKey, String... keys);
+
+    /**
+     * Like {@link #zunionstore(String, String...)}, the scores of keys[i] multiplied by weights[i] before they are summed.
+     */
+    Long zunionstore(String dstKey, String[] keys, double[] weights);
+
     Long zrank(String key, String member);
 
     Long zrevrank(String key, String member);
@@ -70,8 +127,21 @@ public interface CacheManager {
 
     Set<Tuple> zrevrangeWithScores(String key, long start, long end);
 
+    /**
+     * ZRANGE (ZREVRANGE if desc) WITHSCORES as the raw reply: member, score, member, score... as bytes, null on error.
+     */
+    List<byte[]> zrangeWithScoresRaw(String key, long start, long end, boolean desc);
+
     <T> List<T> zrange(String key, int start, int end, Class<T> clazz);
 
+    Object eval(RedisScript script, List<String> keys, List<String> args);
+
+    CachePipeline pipelined();
+
+    void subscribeKeyspace(String key, Runnable listener);
+
+    void unsubscribeKeyspace(String key, Runnable listener);
+
     void lpush(String key, String value);
 
     void lRem(String key, String value);
@@ -84,6 +154,8 @@ public interface CacheManager {
 
     Boolean sismember1(String key, String member);
 
+    Set<String> smembers(String key);
+
     <T> List<T> sScan(String key, Class<T> clazz, int start);
 
     List<String> sScan(String key, int start);
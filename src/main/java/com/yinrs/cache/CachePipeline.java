@@ -0,0 +1,30 @@
+package com.yinrs.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Queues commands and sends them together on {@link #sync()}.
+ * Every queued command returns a future that is completed once sync() got its reply.
+ * <p>
+ * warning:this class is not thread safe!
+ */
+public interface CachePipeline {
+
+    CompletableFuture<Long> zadd(String key, double score, String member);
+
+    CompletableFuture<Long> zadd(String key, Map<String, Double> scoreMembers);
+
+    CompletableFuture<Double> zincrby(String key, double score, String member);
+
+    CompletableFuture<Long> zrem(String key, String... member);
+
+    CompletableFuture<Double> zscore(String key, String member);
+
+    CompletableFuture<Long> incr(String key);
+
+    /**
+     * Sends every queued command and completes their futures, exceptionally if a command failed.
+     */
+    void sync();
+}
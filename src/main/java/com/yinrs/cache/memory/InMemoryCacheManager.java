@@ -0,0 +1,810 @@
+package com.yinrs.cache.memory;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.CachePipeline;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.metrics.MetricsRegistry;
+import com.yinrs.rank.localrank.OrderStatisticSkipList;
+import com.yinrs.tools.Jsons;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.NumberUtils;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link CacheManager} keeping the data in this JVM, a stand-in for {@link com.yinrs.cache.redis.RedisManager}
+ * in tests and benchmarks that must run without a redis server. It follows the redis semantics the ranks rely on:
+ * sorted sets ordered by score then member, with the redis index and score range rules, hashes, sets, lists and
+ * strings, empty collections deleted, expiry on access. Every command runs under one lock, like the single thread
+ * of redis, and {@link #eval(RedisScript, List, List)} runs the {@link RedisScript.Emulation} of the script under
+ * it, so scripts stay atomic. As in RedisManager, a failed command is logged and answers its default value.
+ */
+public class InMemoryCacheManager implements CacheManager {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryCacheManager.class);
+    private static final String SCAN_START = "0";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Object> data = new HashMap<>();
+    private final Map<String, Long> expireAt = new HashMap<>();
+    private final Map<String, List<Runnable>> listeners = new ConcurrentHashMap<>();
+    private volatile MetricsRegistry metrics = MetricsRegistry.NOOP;
+
+    @Override
+    public void init() {
+    }
+
+    /**
+     * Drops all keys and keyspace listeners.
+     */
+    @Override
+    public void destroy() {
+        call(() -> {
+            data.clear();
+            expireAt.clear();
+            return null;
+        }, null);
+        listeners.clear();
+    }
+
+    @Override
+    public CacheManager readReplicas() {
+        return this;
+    }
+
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean isSameSlot(String... keys) {
+        return true;
+    }
+
+    /********************* k v start ********************************/
+
+    @Override
+    public void del(String key) {
+        write(key, () -> remove(key), null);
+    }
+
+    @Override
+    public void rename(String key, String newKey) {
+        write(Arrays.asList(key, newKey), () -> {
+            Long deadline = expireAt.get(key);
+            Object value = lookup(key, Object.class);
+            if (value == null) {
+                throw new IllegalStateException("ERR no such key");
+            }
+            remove(key);
+            remove(newKey);
+            data.put(newKey, value);
+            if (deadline != null) {
+                expireAt.put(newKey, deadline);
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public void expire(String key, int seconds) {
+        write(key, () -> {
+            if (lookup(key, Object.class) == null) return null;
+            if (seconds <= 0) {
+                remove(key);
+            } else {
+                expireAt.put(key, System.currentTimeMillis() + seconds * 1000L);
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return call(() -> lookup(key, Object.class) != null, false);
+    }
+
+    @Override
+    public long incr(String key) {
+        return write(key, () -> doIncr(key), 0L);
+    }
+
+    @Override
+    public void set(String key, String value) {
+        set(key, value, 0);
+    }
+
+    @Override
+    public void set(String key, Object value) {
+        set(key, value, 0);
+    }
+
+    @Override
+    public void set(String key, String value, int expireTime) {
+        write(key, () -> {
+            data.put(key, value);
+            if (expireTime > 0) {
+                expireAt.put(key, System.currentTimeMillis() + expireTime * 1000L);
+            } else {
+                expireAt.remove(key);
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public void set(String key, Object value, int expireTime) {
+        set(key, Jsons.toJson(value), expireTime);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Class<T> tClass) {
+        String value = call(() -> lookup(key, String.class), null);
+        if (value == null) return null;
+        if (tClass == String.class) return (T) value;
+        return Jsons.fromJson(value, tClass);
+    }
+
+    @Override
+    public <T extends Number> T getNumber(String key, Class<T> clazz) {
+        String value = call(() -> lookup(key, String.class), null);
+        return NumberUtils.parseNumber(value == null ? "0" : value, clazz);
+    }
+
+    /********************* hash start ********************************/
+
+    @Override
+    public long hincrBy(String key, String field, long value) {
+        return write(key, () -> {
+            Map<String, String> hash = hash(key, true);
+            String old = hash.get(field);
+            long result = (old == null ? 0 : parseLong(old)) + value;
+            hash.put(field, Long.toString(result));
+            return result;
+        }, 0L);
+    }
+
+    @Override
+    public void hset(String key, String field, String value) {
+        write(key, () -> hash(key, true).put(field, value), null);
+    }
+
+    @Override
+    public void hset(String key, String field, Object value) {
+        hset(key, field, Jsons.toJson(value));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T hget(String key, String field, Class<T> tClass) {
+        String value = call(() -> {
+            Map<String, String> hash = hash(key, false);
+            return hash != null ? hash.get(field) : null;
+        }, null);
+        if (value == null) return null;
+        if (tClass == String.class) return (T) value;
+        return Jsons.fromJson(value, tClass);
+    }
+
+    @Override
+    public void hdel(String key, String... field) {
+        write(key, () -> {
+            Map<String, String> hash = hash(key, false);
+            if (hash != null) {
+                for (String f : field) {
+                    hash.remove(f);
+                }
+                removeIfEmpty(key, hash.isEmpty());
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public Map<String, String> hgetAll(String key) {
+        return call(() -> {
+            Map<String, String> hash = hash(key, false);
+            return hash != null ? new HashMap<>(hash) : Collections.<String, String>emptyMap();
+        }, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public <T> Map<String, T> hgetAll(String key, Class<T> clazz) {
+        Map<String, String> result = hgetAll(key);
+        if (result.isEmpty()) return Collections.emptyMap();
+        Map<String, T> newMap = new HashMap<>(result.size());
+        for (Map.Entry<String, String> entry : result.entrySet()) {
+            newMap.put(entry.getKey(), Jsons.fromJson(entry.getValue(), clazz));
+        }
+        return newMap;
+    }
+
+    /**
+     * Fields are scanned in their natural order, the cursor is the last field returned, so fields deleted
+     * meanwhile do not make the scan skip others. A count below 1 fails like in redis.
+     */
+    @Override
+    public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, int count) {
+        return call(() -> {
+            if (count < 1) {
+                throw new IllegalStateException("ERR syntax error");
+            }
+            List<Map.Entry<String, String>> entries = new ArrayList<>();
+            Map<String, String> hash = hash(key, false);
+            if (hash == null) return new ScanResult<>(SCAN_START, entries);
+            TreeMap<String, String> sorted = new TreeMap<>(hash);
+            SortedMap<String, String> rest = SCAN_START.equals(cursor) ? sorted : sorted.tailMap(cursor.substring(1), false);
+            for (Map.Entry<String, String> entry : rest.entrySet()) {
+                if (entries.size() == count) break;
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+            boolean done = entries.isEmpty() || entries.size() == rest.size();
+            return new ScanResult<>(done ? SCAN_START : ">" + entries.get(entries.size() - 1).getKey(), entries);
+        }, null);
+    }
+
+    @Override
+    public void hmset(String key, Map<String, String> hash) {
+        write(key, () -> {
+            hash(key, true).putAll(hash);
+            return null;
+        }, null);
+    }
+
+    /********************* list start ********************************/
+
+    @Override
+    public void lpush(String key, String value) {
+        write(key, () -> {
+            list(key, true).addFirst(value);
+            return null;
+        }, null);
+    }
+
+    /**
+     * Removes every occurrence of the value, like LREM key 0 value.
+     */
+    @Override
+    public void lRem(String key, String value) {
+        write(key, () -> {
+            LinkedList<String> list = list(key, false);
+            if (list != null) {
+                list.removeIf(value::equals);
+                removeIfEmpty(key, list.isEmpty());
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public <T> List<T> lrange(String key, int start, int end, Class<T> clazz) {
+        List<String> values = call(() -> {
+            LinkedList<String> list = list(key, false);
+            if (list == null) return Collections.<String>emptyList();
+            int size = list.size();
+            int from = start < 0 ? Math.max(size + start, 0) : start;
+            int to = Math.min(end < 0 ? size + end : end, size - 1);
+            if (from > to) return Collections.<String>emptyList();
+            return new ArrayList<>(list.subList(from, to + 1));
+        }, null);
+        return toList(values, clazz);
+    }
+
+    /********************* set start ********************************/
+
+    @Override
+    public void sAdd(String key, String value) {
+        write(key, () -> set(key, true).add(value), null);
+    }
+
+    @Override
+    public void sRem(String key, String value) {
+        write(key, () -> {
+            Set<String> set = set(key, false);
+            if (set != null) {
+                set.remove(value);
+                removeIfEmpty(key, set.isEmpty());
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public boolean sismember(String key, String value) {
+        return call(() -> {
+            Set<String> set = set(key, false);
+            return set != null && set.contains(value);
+        }, false);
+    }
+
+    @Override
+    public Boolean sismember1(String key, String member) {
+        return sismember(key, member);
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        return call(() -> {
+            Set<String> set = set(key, false);
+            return set != null ? new HashSet<>(set) : new HashSet<String>();
+        }, null);
+    }
+
+    @Override
+    public <T> List<T> sScan(String key, Class<T> clazz, int start) {
+        return toList(sScan(key, start), clazz);
+    }
+
+    /**
+     * Like SSCAN with an unlimited count: cursor 0 returns every member, any other cursor none.
+     */
+    @Override
+    public List<String> sScan(String key, int start) {
+        if (start != 0) return Collections.emptyList();
+        Set<String> members = smembers(key);
+        return members != null ? new ArrayList<>(members) : Collections.<String>emptyList();
+    }
+
+    @Override
+    public Long sCard(String key) {
+        return call(() -> {
+            Set<String> set = set(key, false);
+            return set != null ? (long) set.size() : 0L;
+        }, 0L);
+    }
+
+    /********************* sorted set start ********************************/
+
+    @Override
+    public void zAdd(String key, String value) {
+        zadd(key, 0, value);
+    }
+
+    @Override
+    public void zadd(String key, double score, String member) {
+        write(key, () -> doZadd(key, score, member), null);
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        return write(key, () -> doZadd(key, scoreMembers), 0L);
+    }
+
+    @Override
+    public Double zincrby(String key, double score, String member) {
+        return write(key, () -> doZincrby(key, score, member), null);
+    }
+
+    @Override
+    public Double zscore(String key, String member) {
+        return call(() -> doZscore(key, member), null);
+    }
+
+    @Override
+    public Long zCard(String key) {
+        return zcard(key);
+    }
+
+    @Override
+    public Long zcard(String key) {
+        return call(() -> {
+            MemorySortedSet zset = zset(key, false);
+            return zset != null ? zset.size() : 0L;
+        }, 0L);
+    }
+
+    @Override
+    public Long zcount(String key, double min, double max) {
+        return call(() -> {
+            MemorySortedSet zset = zset(key, false);
+            return zset != null ? zset.count(min, max) : 0L;
+        }, 0L);
+    }
+
+    @Override
+    public Long zunionstore(String dstKey, String... keys) {
+        double[] weights = new double[keys.length];
+        Arrays.fill(weights, 1);
+        return zunionstore(dstKey, keys, weights);
+    }
+
+    @Override
+    public Long zunionstore(String dstKey, String[] keys, double[] weights) {
+        return write(dstKey, () -> {
+            if (weights.length != keys.length) {
+                throw new IllegalStateException("ERR syntax error");
+            }
+            Map<String, Double> union = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                double weight = weights[i];
+                for (OrderStatisticSkipList.Node node : range(keys[i], 0, -1, false)) {
+                    union.merge(node.getNodeId(), node.getScore() * weight, Double::sum);
+                }
+            }
+            remove(dstKey);
+            if (!union.isEmpty()) {
+                doZadd(dstKey, union);
+            }
+            return (long) union.size();
+        }, 0L);
+    }
+
+    @Override
+    public void zRem(String key, String value) {
+        zrem(key, value);
+    }
+
+    @Override
+    public Long zrem(String key, String... member) {
+        return write(key, () -> doZrem(key, member), 0L);
+    }
+
+    @Override
+    public Long zremrangeByRank(String key, long start, long end) {
+        return write(key, () -> {
+            MemorySortedSet zset = zset(key, false);
+            if (zset == null) return 0L;
+            long removed = zset.removeRange(start, end);
+            removeIfEmpty(key, zset.size() == 0);
+            return removed;
+        }, 0L);
+    }
+
+    @Override
+    public Long zremrangeByScore(String key, double start, double end) {
+        return write(key, () -> {
+            MemorySortedSet zset = zset(key, false);
+            if (zset == null) return 0L;
+            long removed = zset.removeRangeByScore(start, end);
+            removeIfEmpty(key, zset.size() == 0);
+            return removed;
+        }, 0L);
+    }
+
+    @Override
+    public Long zrank(String key, String member) {
+        return call(() -> {
+            MemorySortedSet zset = zset(key, false);
+            return zset != null ? zset.rank(member, false) : null;
+        }, null);
+    }
+
+    @Override
+    public Long zrevrank(String key, String member) {
+        return call(() -> {
+            MemorySortedSet zset = zset(key, false);
+            return zset != null ? zset.rank(member, true) : null;
+        }, null);
+    }
+
+    @Override
+    public Set<Tuple> zrangeWithScores(String key, long start, long end) {
+        return call(() -> tuples(range(key, start, end, false)), null);
+    }
+
+    @Override
+    public Set<Tuple> zrevrangeWithScores(String key, long start, long end) {
+        return call(() -> tuples(range(key, start, end, true)), null);
+    }
+
+    @Override
+    public List<byte[]> zrangeWithScoresRaw(String key, long start, long end, boolean desc) {
+        return call(() -> {
+            List<OrderStatisticSkipList.Node> nodes = range(key, start, end, desc);
+            List<byte[]> reply = new ArrayList<>(nodes.size() * 2);
+            for (OrderStatisticSkipList.Node node : nodes) {
+                reply.add(SafeEncoder.encode(node.getNodeId()));
+                reply.add(SafeEncoder.encode(RedisScript.Emulation.score(node.getScore())));
+            }
+            return reply;
+        }, null);
+    }
+
+    @Override
+    public <T> List<T> zrange(String key, int start, int end, Class<T> clazz) {
+        List<String> members = call(() -> {
+            List<String> list = new ArrayList<>();
+            for (OrderStatisticSkipList.Node node : range(key, start, end, false)) {
+                list.add(node.getNodeId());
+            }
+            return list;
+        }, Collections.<String>emptyList());
+        return toList(members, clazz);
+    }
+
+    /********************* script start ********************************/
+
+    /**
+     * Runs the {@link RedisScript.Emulation} of the script atomically, a script without one fails.
+     */
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        RedisScript.Emulation emulation = script.getEmulation();
+        if (emulation == null) {
+            log.error("cache ex, no emulation of {}", script);
+            return null;
+        }
+        return write(keys, () -> emulation.run(this, keys, args), null);
+    }
+
+    /**
+     * Returns a pipeline whose commands run together, under the lock, on sync().
+     */
+    @Override
+    public CachePipeline pipelined() {
+        return new MemoryPipeline();
+    }
+
+    /**
+     * Calls the listener after every write command on the key, in the writing thread.
+     */
+    @Override
+    public void subscribeKeyspace(String key, Runnable listener) {
+        listeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void unsubscribeKeyspace(String key, Runnable listener) {
+        List<Runnable> list = listeners.get(key);
+        if (list != null) {
+            list.remove(listener);
+        }
+    }
+
+    /********************* internals ********************************/
+
+    private long doIncr(String key) {
+        String old = lookup(key, String.class);
+        long value = (old == null ? 0 : parseLong(old)) + 1;
+        data.put(key, Long.toString(value));
+        return value;
+    }
+
+    private Long doZadd(String key, double score, String member) {
+        return zset(key, true).add(member, score) ? 1L : 0L;
+    }
+
+    private Long doZadd(String key, Map<String, Double> scoreMembers) {
+        MemorySortedSet zset = zset(key, true);
+        long added = 0;
+        for (Map.Entry<String, Double> entry : scoreMembers.entrySet()) {
+            if (zset.add(entry.getKey(), entry.getValue())) added++;
+        }
+        return added;
+    }
+
+    private Double doZincrby(String key, double score, String member) {
+        MemorySortedSet zset = zset(key, true);
+        Double old = zset.score(member);
+        double value = old == null ? score : old + score;
+        zset.add(member, value);
+        return value;
+    }
+
+    private Long doZrem(String key, String... member) {
+        MemorySortedSet zset = zset(key, false);
+        if (zset == null) return 0L;
+        long removed = 0;
+        for (String m : member) {
+            if (zset.remove(m)) removed++;
+        }
+        removeIfEmpty(key, zset.size() == 0);
+        return removed;
+    }
+
+    private Double doZscore(String key, String member) {
+        MemorySortedSet zset = zset(key, false);
+        return zset != null ? zset.score(member) : null;
+    }
+
+    private List<OrderStatisticSkipList.Node> range(String key, long start, long end, boolean desc) {
+        MemorySortedSet zset = zset(key, false);
+        return zset != null ? zset.range(start, end, desc) : Collections.<OrderStatisticSkipList.Node>emptyList();
+    }
+
+    private static Set<Tuple> tuples(List<OrderStatisticSkipList.Node> nodes) {
+        Set<Tuple> tuples = new LinkedHashSet<>(nodes.size() * 2);
+        for (OrderStatisticSkipList.Node node : nodes) {
+            tuples.add(new Tuple(node.getNodeId(), node.getScore()));
+        }
+        return tuples;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key, boolean create) {
+        return lookup(key, HashMap.class, create ? HashMap::new : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key, boolean create) {
+        return lookup(key, HashSet.class, create ? HashSet::new : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LinkedList<String> list(String key, boolean create) {
+        return lookup(key, LinkedList.class, create ? LinkedList::new : null);
+    }
+
+    private MemorySortedSet zset(String key, boolean create) {
+        return lookup(key, MemorySortedSet.class, create ? MemorySortedSet::new : null);
+    }
+
+    private <V> V lookup(String key, Class<V> type) {
+        return lookup(key, type, null);
+    }
+
+    /**
+     * @param create makes the value if the key does not exist, null to answer null instead
+     */
+    private <V> V lookup(String key, Class<V> type, Supplier<V> create) {
+        Long deadline = expireAt.get(key);
+        if (deadline != null && deadline <= System.currentTimeMillis()) {
+            remove(key);
+        }
+        Object value = data.get(key);
+        if (value == null) {
+            if (create == null) return null;
+            V created = create.get();
+            data.put(key, created);
+            return created;
+        }
+        if (!type.isInstance(value)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return type.cast(value);
+    }
+
+    private Object remove(String key) {
+        expireAt.remove(key);
+        return data.remove(key);
+    }
+
+    private void removeIfEmpty(String key, boolean empty) {
+        if (empty) {
+            remove(key);
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("value is not an integer or out of range");
+        }
+    }
+
+    private static <T> List<T> toList(Collection<String> value, Class<T> clazz) {
+        if (value == null) return null;
+        List<T> newValue = new ArrayList<>(value.size());
+        for (String temp : value) {
+            newValue.add(Jsons.fromJson(temp, clazz));
+        }
+        return newValue;
+    }
+
+    /**
+     * Runs the command under the lock, a failed command is logged and answers defaultValue.
+     */
+    private <R> R call(Supplier<R> command, R defaultValue) {
+        lock.lock();
+        try {
+            return command.get();
+        } catch (RuntimeException e) {
+            log.error("cache ex", e);
+            return defaultValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <R> R write(String key, Supplier<R> command, R defaultValue) {
+        return write(Collections.singletonList(key), command, defaultValue);
+    }
+
+    /**
+     * Like {@link #call(Supplier, Object)}, then notifies the listeners of the keys, unless the command
+     * runs inside a script, which notifies for all its keys once it is done.
+     */
+    private <R> R write(Collection<String> keys, Supplier<R> command, R defaultValue) {
+        R result = call(command, defaultValue);
+        if (!lock.isHeldByCurrentThread()) {
+            for (String key : keys) {
+                notifyKeyspace(key);
+            }
+        }
+        return result;
+    }
+
+    private void notifyKeyspace(String key) {
+        List<Runnable> list = listeners.get(key);
+        if (list == null) return;
+        for (Runnable listener : list) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("keyspace listener of {} failed", key, e);
+            }
+        }
+    }
+
+    /**
+     * Queues the commands and runs them in one go on sync(), like a redis pipeline they are not atomic
+     * as a whole but no other command runs in between here.
+     */
+    private final class MemoryPipeline implements CachePipeline {
+        private final List<String> keys = new ArrayList<>();
+        private final List<Runnable> commands = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Long> zadd(String key, double score, String member) {
+            return add(key, () -> doZadd(key, score, member));
+        }
+
+        @Override
+        public CompletableFuture<Long> zadd(String key, Map<String, Double> scoreMembers) {
+            return add(key, () -> doZadd(key, scoreMembers));
+        }
+
+        @Override
+        public CompletableFuture<Double> zincrby(String key, double score, String member) {
+            return add(key, () -> doZincrby(key, score, member));
+        }
+
+        @Override
+        public CompletableFuture<Long> zrem(String key, String... member) {
+            return add(key, () -> doZrem(key, member));
+        }
+
+        @Override
+        public CompletableFuture<Double> zscore(String key, String member) {
+            return add(key, () -> doZscore(key, member));
+        }
+
+        @Override
+        public CompletableFuture<Long> incr(String key) {
+            return add(key, () -> doIncr(key));
+        }
+
+        @Override
+        public void sync() {
+            if (commands.isEmpty()) return;
+            List<Runnable> queued = new ArrayList<>(commands);
+            commands.clear();
+            List<String> touched = new ArrayList<>(new LinkedHashSet<>(keys));
+            keys.clear();
+            write(touched, () -> {
+                for (Runnable command : queued) {
+                    command.run();
+                }
+                return null;
+            }, null);
+        }
+
+        private <T> CompletableFuture<T> add(String key, Supplier<T> command) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            keys.add(key);
+            commands.add(() -> {
+                try {
+                    future.complete(command.get());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+    }
+}
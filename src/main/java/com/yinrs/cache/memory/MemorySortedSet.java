@@ -0,0 +1,109 @@
+package com.yinrs.cache.memory;
+
+import com.yinrs.rank.localrank.OrderStatisticSkipList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorted set of {@link InMemoryCacheManager}, with the ordering and index rules of a redis sorted set:
+ * members ordered by score, then by member, and negative indexes counting from the last member.
+ * <p>
+ * warning:this class is not thread safe!
+ */
+final class MemorySortedSet {
+    private final Map<String, Double> scores = new HashMap<>();
+    private final OrderStatisticSkipList list = new OrderStatisticSkipList();
+
+    /**
+     * @return true if the member is new
+     */
+    boolean add(String member, double score) {
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("resulting score is not a number (NaN)");
+        }
+        Double old = scores.put(member, score);
+        if (old != null) {
+            if (old == score) return false;
+            list.delete(member, old);
+        }
+        list.insert(member, score);
+        return old == null;
+    }
+
+    Double score(String member) {
+        return scores.get(member);
+    }
+
+    boolean remove(String member) {
+        Double score = scores.remove(member);
+        return score != null && list.delete(member, score);
+    }
+
+    long size() {
+        return list.length();
+    }
+
+    /**
+     * @return 0-based rank, null if the member is not in the set
+     */
+    Long rank(String member, boolean desc) {
+        Double score = scores.get(member);
+        if (score == null) return null;
+        long rank = list.rank(member, score) - 1;
+        return desc ? list.length() - 1 - rank : rank;
+    }
+
+    List<OrderStatisticSkipList.Node> range(long start, long end, boolean desc) {
+        long[] range = indexes(start, end);
+        if (range == null) return Collections.emptyList();
+        List<OrderStatisticSkipList.Node> nodes = new ArrayList<>((int) (range[1] - range[0] + 1));
+        OrderStatisticSkipList.Node x = list.byRank(desc ? list.length() - range[0] : range[0] + 1);
+        for (long i = range[0]; i <= range[1] && x != null; i++) {
+            nodes.add(x);
+            x = desc ? x.previous() : x.next();
+        }
+        return nodes;
+    }
+
+    long count(double min, double max) {
+        if (min > max) return 0;
+        return list.countBelow(max, true) - list.countBelow(min, false);
+    }
+
+    long removeRange(long start, long end) {
+        long[] range = indexes(start, end);
+        if (range == null) return 0;
+        return removeNodes(list.deleteRangeByRank(range[0] + 1, range[1] + 1));
+    }
+
+    long removeRangeByScore(double min, double max) {
+        long first = list.countBelow(min, false) + 1;
+        long last = list.countBelow(max, true);
+        if (first > last) return 0;
+        return removeNodes(list.deleteRangeByRank(first, last));
+    }
+
+    private long removeNodes(List<OrderStatisticSkipList.Node> nodes) {
+        for (OrderStatisticSkipList.Node node : nodes) {
+            scores.remove(node.getNodeId());
+        }
+        return nodes.size();
+    }
+
+    /**
+     * @return the 0-based {start, end} inside the set, null if the range is empty
+     */
+    private long[] indexes(long start, long end) {
+        long length = list.length();
+        if (start < 0) start = length + start;
+        if (end < 0) end = length + end;
+        if (start < 0) start = 0;
+        if (start > end || start >= length) return null;
+        if (end >= length) end = length - 1;
+        return new long[]{start, end};
+    }
+}
@@ -0,0 +1,181 @@
+package com.yinrs.cache.redis;
+
+import com.yinrs.cache.redis.connection.RedisConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Supplier;
+
+/**
+ * Calls listeners whenever redis publishes a keyspace notification for their key.
+ * The server must have keyspace events enabled for the commands of interest,
+ * e.g. notify-keyspace-events "Kgz" for sorted sets and DEL.
+ * <p>
+ * Every node gets one subscriber thread holding one connection. Listeners are also called each time
+ * a channel is (re)subscribed, since notifications sent while disconnected are lost.
+ */
+final class KeyspaceNotifier {
+    private static final Logger log = LoggerFactory.getLogger(KeyspaceNotifier.class);
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final RedisConnectionFactory factory;
+    private final String channelPrefix;
+    private final Map<String, Set<Runnable>> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Subscriber> subscribers = new HashMap<>();
+
+    KeyspaceNotifier(RedisConnectionFactory factory) {
+        this.factory = factory;
+        this.channelPrefix = "__keyspace@" + factory.getDatabase() + "__:";
+    }
+
+    synchronized void subscribe(String key, Runnable listener) {
+        Set<Runnable> set = listeners.get(key);
+        if (set == null) {
+            set = new CopyOnWriteArraySet<>();
+            listeners.put(key, set);
+        }
+        set.add(listener);
+        subscriber(key).add(channelPrefix + key);
+    }
+
+    synchronized void unsubscribe(String key, Runnable listener) {
+        Set<Runnable> set = listeners.get(key);
+        if (set != null && set.remove(listener) && set.isEmpty()) {
+            listeners.remove(key);
+            subscriber(key).remove(channelPrefix + key);
+        }
+    }
+
+    synchronized void destroy() {
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.stop();
+        }
+        subscribers.clear();
+    }
+
+    private Subscriber subscriber(String key) {
+        String node;
+        Supplier<Jedis> connection;
+        if (factory.isCluster()) {
+            final int slot = JedisClusterCRC16.getSlot(key);
+            try (Jedis jedis = factory.getClusterConnectionFromSlot(slot)) {
+                node = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+            }
+            connection = () -> factory.getClusterConnectionFromSlot(slot);
+        } else {
+            node = "";
+            connection = factory::getJedisConnection;
+        }
+        Subscriber subscriber = subscribers.get(node);
+        if (subscriber == null) {
+            subscriber = new Subscriber(node, connection);
+            subscribers.put(node, subscriber);
+        }
+        return subscriber;
+    }
+
+    private void fire(String channel) {
+        Set<Runnable> set = listeners.get(channel.substring(channelPrefix.length()));
+        if (set != null) {
+            for (Runnable listener : set) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.error("keyspace listener ex", e);
+                }
+            }
+        }
+    }
+
+    private final class Subscriber extends JedisPubSub implements Runnable {
+        private final Supplier<Jedis> connection;
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+        private final Set<String> requested = ConcurrentHashMap.newKeySet();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Subscriber(String node, Supplier<Jedis> connection) {
+            this.connection = connection;
+            this.thread = new Thread(this, "redis-keyspace-notifier-" + node);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        void add(String channel) {
+            if (channels.add(channel)) {
+                if (isSubscribed()) {
+                    requested.add(channel);
+                    subscribe(channel);
+                } else {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        void remove(String channel) {
+            if (channels.remove(channel) && isSubscribed()) {
+                requested.remove(channel);
+                unsubscribe(channel);
+            }
+        }
+
+        void stop() {
+            running = false;
+            if (isSubscribed()) {
+                unsubscribe();
+            }
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    synchronized (this) {
+                        while (running && channels.isEmpty()) {
+                            wait();
+                        }
+                    }
+                    if (!running) return;
+                    try (Jedis jedis = connection.get()) {
+                        requested.clear();
+                        requested.addAll(channels);
+                        jedis.subscribe(this, requested.toArray(new String[0]));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    log.error("redis keyspace subscription ex", e);
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            fire(channel);
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            fire(channel);
+            for (String missing : channels) {//added while the subscription was being set up
+                if (requested.add(missing)) {
+                    subscribe(missing);
+                }
+            }
+        }
+    }
+}
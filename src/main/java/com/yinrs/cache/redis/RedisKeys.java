@@ -0,0 +1,33 @@
+package com.yinrs.cache.redis;
+
+/**
+ * Key names for redis cluster. A key hashes to its slot by its hash tag, the part between the first "{"
+ * and the next "}" when not empty, or else by the whole key. Keys hashing to the same slot can be used
+ * together in one script, transaction or pipeline of a single node.
+ */
+public final class RedisKeys {
+
+    private RedisKeys() {
+    }
+
+    /**
+     * @return the hash tag of the key, null if it has none and hashes by the whole key
+     */
+    public static String hashTag(String key) {
+        int start = key.indexOf('{');
+        if (start < 0) return null;
+        int end = key.indexOf('}', start + 1);
+        if (end <= start + 1) return null;
+        return key.substring(start + 1, end);
+    }
+
+    /**
+     * Names a key owned by the given one, e.g. a side table, that hashes to the same slot:
+     * "key" gives "{key}suffix", a key that already has a hash tag is kept as prefix.
+     * A key without hash tag but with a "}" cannot be tagged as a whole, it gives "keysuffix" in another slot.
+     */
+    public static String sameSlot(String key, String suffix) {
+        if (hashTag(key) != null || key.indexOf('}') >= 0) return key + suffix;
+        return "{" + key + "}" + suffix;
+    }
+}
@@ -1,8 +1,10 @@
 package com.yinrs.cache.redis;
 
 import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.CachePipeline;
 import com.yinrs.cache.redis.connection.RedisConnectionFactory;
 import com.yinrs.config.CC;
+import com.yinrs.metrics.MetricsRegistry;
 import com.yinrs.tools.Jsons;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
@@ -10,6 +12,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.NumberUtils;
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
 
 import java.util.*;
 
@@ -17,9 +23,51 @@ public final class RedisManager implements CacheManager {
     private static final Logger log = LoggerFactory.getLogger(RedisManager.class);
     public static final RedisManager I = new RedisManager();
 
-    private final RedisConnectionFactory factory = new RedisConnectionFactory();
+    private static final String CMD_PREFIX = "redis.cmd.";
+    private static final String REPLICA_CMD_PREFIX = "redis.replica.cmd.";
+    private static final String POOL_BORROW = "redis.pool.borrow";
+    private static final String REPLICA_POOL_BORROW = "redis.replica.pool.borrow";
+    private static final String REPLICA_POOL_ACTIVE = "redis.replica.pool.active";
+    private static final String POOL_ACTIVE = "redis.pool.active";
+    private static final String POOL_IDLE = "redis.pool.idle";
+    private static final String POOL_WAITERS = "redis.pool.waiters";
+    private static final String ERRORS = "redis.errors";
+    private static final String MULTIPLEXER_QUEUED = "redis.multiplexer.queued";
+    private static final int MAX_REDIRECTS = 5;
+
+    private final RedisConnectionFactory factory;
+    private final RedisManager master;
+    private final RedisManager replicas;
+    private final boolean replica;
+    private final String cmdPrefix;
+    private volatile MetricsRegistry metrics = MetricsRegistry.NOOP;
+    private KeyspaceNotifier keyspaceNotifier;
+    private volatile RedisMultiplexer multiplexer;
+
+    public RedisManager() {
+        this.factory = new RedisConnectionFactory();
+        this.master = this;
+        this.replica = false;
+        this.cmdPrefix = CMD_PREFIX;
+        this.replicas = new RedisManager(this);
+    }
+
+    /**
+     * The read view of {@link #readReplicas()}, sharing the connection factory of the master.
+     */
+    private RedisManager(RedisManager master) {
+        this.factory = master.factory;
+        this.master = master;
+        this.replica = true;
+        this.cmdPrefix = REPLICA_CMD_PREFIX;
+        this.replicas = this;
+    }
 
     public void init() {
+        if (replica) {
+            master.init();
+            return;
+        }
         log.info("begin init redis...");
         factory.setPassword(CC.mp.redis.password);
         factory.setPoolConfig(CC.mp.redis.getPoolConfig(JedisPoolConfig.class));
@@ -27,60 +75,142 @@ public final class RedisManager implements CacheManager {
         factory.setModel(CC.mp.redis.mode);
         factory.setSentinelMaster(CC.mp.redis.master);
         factory.setCluster(CC.mp.redis.isCluster());
+        factory.setReadFromReplicas(CC.mp.redis.read_from_replicas);
+        factory.setReplicaRefreshIntervalMillis(CC.mp.redis.replica_refresh_interval);
         factory.init();
         test();
+        if (CC.mp.redis.multiplexer.enabled) {
+            if (factory.isCluster()) {
+                log.warn("redis multiplexer is not supported in cluster mode, commands use the pool");
+            } else {
+                multiplexer = new RedisMultiplexer(factory, CC.mp.redis.multiplexer.io_threads, CC.mp.redis.multiplexer.max_batch);
+            }
+        }
         log.info("init redis success...");
     }
 
-    private <R> R call(Function<JedisCommands, R> function, R d) {
-        if (factory.isCluster()) {
-            try {
+    /**
+     * Returns the view sending commands to the replicas of the master, when mp.redis.read-from-replicas is
+     * on in sentinel mode, otherwise this manager. Replicas lag behind the master, so the view is for reads
+     * that need not see the caller's own latest writes; its pipelines and keyspace subscriptions still go
+     * to the master. Falls back to the master while no replica is reachable.
+     */
+    public RedisManager readReplicas() {
+        return master.factory.hasReplicas() ? master.replicas : master;
+    }
+
+    /**
+     * Runs one command, its latency (pool borrow included) is recorded as redis.cmd.&lt;command&gt;
+     * (redis.replica.cmd.&lt;command&gt; on the replica view) and failures are counted as redis.errors
+     * and redis.cmd.&lt;command&gt;.errors.
+     */
+    private <R> R call(String command, Function<JedisCommands, R> function, R d) {
+        long begin = System.nanoTime();
+        try {
+            if (factory.isCluster()) {
                 return function.apply(factory.getClusterConnection());
-            } catch (Exception e) {
-                log.error("redis ex", e);
             }
-        } else {
-            try (Jedis jedis = factory.getJedisConnection()) {
+            try (Jedis jedis = borrow()) {
                 return function.apply(jedis);
-            } catch (Exception e) {
-                log.error("redis ex", e);
             }
+        } catch (Exception e) {
+            log.error("redis ex", e);
+            error(command);
+        } finally {
+            metrics.recordLatency(cmdPrefix + command, System.nanoTime() - begin);
         }
         return d;
     }
 
-    private void call(Consumer<JedisCommands> consumer) {
-        if (factory.isCluster()) {
-            try {
-                consumer.accept(factory.getClusterConnection());
-            } catch (Exception e) {
-                log.error("redis ex", e);
-            }
-        } else {
-            try (Jedis jedis = factory.getJedisConnection()) {
-                consumer.accept(jedis);
-            } catch (Exception e) {
-                log.error("redis ex", e);
-            }
+    private void call(String command, Consumer<JedisCommands> consumer) {
+        call(command, jedis -> {
+            consumer.accept(jedis);
+            return null;
+        }, null);
+    }
+
+    /**
+     * Like {@link #call(String, Function, Object)}, but in multiplexer mode the command is queued for the
+     * I/O threads instead, as the pipelined form given.
+     */
+    private <R> R call(String command, Function<JedisCommands, R> function,
+                       java.util.function.Function<Pipeline, Response<R>> pipelined, R d) {
+        RedisMultiplexer mux = multiplexer;
+        if (mux == null) return call(command, function, d);
+        long begin = System.nanoTime();
+        try {
+            return mux.execute(pipelined);
+        } catch (Exception e) {
+            log.error("redis ex", e);
+            error(command);
+        } finally {
+            metrics.recordLatency(cmdPrefix + command, System.nanoTime() - begin);
+        }
+        return d;
+    }
+
+    private <R> void callVoid(String command, Consumer<JedisCommands> consumer,
+                              java.util.function.Function<Pipeline, Response<R>> pipelined) {
+        call(command, jedis -> {
+            consumer.accept(jedis);
+            return null;
+        }, pipelined, null);
+    }
+
+    private Jedis borrow() {
+        long begin = System.nanoTime();
+        try {
+            return replica ? factory.getReplicaJedisConnection() : factory.getJedisConnection();
+        } finally {
+            metrics.recordLatency(replica ? REPLICA_POOL_BORROW : POOL_BORROW, System.nanoTime() - begin);
+        }
+    }
+
+    private void error(String command) {
+        metrics.incrementCounter(ERRORS);
+        metrics.incrementCounter(cmdPrefix + command + ".errors");
+    }
+
+    /**
+     * Plugs in the registry receiving the command latencies, pool borrow waits, pool gauges and error counts.
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        if (replica) {
+            master.setMetrics(metrics);
+            return;
         }
+        this.metrics = Objects.requireNonNull(metrics);
+        replicas.metrics = metrics;
+        metrics.registerGauge(POOL_ACTIVE, factory::getNumActive);
+        metrics.registerGauge(POOL_IDLE, factory::getNumIdle);
+        metrics.registerGauge(POOL_WAITERS, factory::getNumWaiters);
+        metrics.registerGauge(REPLICA_POOL_ACTIVE, factory::getNumReplicaActive);
+        metrics.registerGauge(MULTIPLEXER_QUEUED, () -> {
+            RedisMultiplexer mux = multiplexer;
+            return mux != null ? mux.queued() : 0;
+        });
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
 
     public long incr(final String key) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("incr", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.incr(key);
             }
-        }, 0L);
+        }, p -> p.incr(key), 0L);
     }
 
     public long incrBy(final String key, final long delt) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("incrby", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.incrBy(key, delt);
             }
-        }, 0L);
+        }, p -> p.incrBy(key, delt), 0L);
     }
 
     /********************* k v redis start ********************************/
@@ -91,7 +221,7 @@ public final class RedisManager implements CacheManager {
      */
     @SuppressWarnings("unchecked")
     public <T> T get(final String key, Class<T> clazz) {
-        String value = call(jedis -> jedis.get(key), null);
+        String value = call("get", jedis -> jedis.get(key), null);
         if (value == null) {
             return null;
         } else if (clazz == String.class) {
@@ -102,7 +232,7 @@ public final class RedisManager implements CacheManager {
 
 
     public <T extends Number> T getNumber(final String key, Class<T> clazz) {
-        String value = call(jedis -> jedis.get(key), null);
+        String value = call("get", jedis -> jedis.get(key), null);
         value = value == null ? "0" : value;
         return NumberUtils.parseNumber(value, clazz);
     }
@@ -125,7 +255,7 @@ public final class RedisManager implements CacheManager {
      * @param time  seconds
      */
     public void set(final String key, final String value, final int time) {
-        call(new Consumer<JedisCommands>() {
+        call("set", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.set(key, value);
@@ -136,13 +266,42 @@ public final class RedisManager implements CacheManager {
         });
     }
 
+    @Override
+    public boolean exists(final String key) {
+        return call("exists", jedis -> jedis.exists(key), p -> p.exists(key), false);
+    }
+
     public void del(final String key) {
-        call(new Consumer<JedisCommands>() {
+        callVoid("del", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.del(key);
             }
-        });
+        }, p -> p.del(key));
+    }
+
+    /**
+     * Both keys must be in one slot, see {@link #onSlot(String, String, Function, Object)}.
+     */
+    @Override
+    public void rename(final String key, final String newKey) {
+        onSlot("rename", key, new Function<Jedis, Void>() {
+            @Override
+            public Void apply(Jedis jedis) {
+                jedis.rename(key, newKey);
+                return null;
+            }
+        }, null);
+    }
+
+    @Override
+    public void expire(final String key, final int seconds) {
+        callVoid("expire", new Consumer<JedisCommands>() {
+            @Override
+            public void accept(JedisCommands jedis) {
+                jedis.expire(key, seconds);
+            }
+        }, p -> p.expire(key, seconds));
     }
 
     /********************* k v redis end ********************************/
@@ -151,12 +310,12 @@ public final class RedisManager implements CacheManager {
      * hash redis start
      ********************************/
     public void hset(final String key, final String field, final String value) {
-        call(new Consumer<JedisCommands>() {
+        callVoid("hset", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.hset(key, field, value);
             }
-        });
+        }, p -> p.hset(key, field, value));
     }
 
     public void hset(final String key, final String field, final Object value) {
@@ -164,43 +323,53 @@ public final class RedisManager implements CacheManager {
     }
 
     public String hget(final String key, final String field) {
-        return call(new Function<JedisCommands, String>() {
+        return call("hget", new Function<JedisCommands, String>() {
             @Override
             public String apply(JedisCommands jedis) {
                 return jedis.hget(key, field);
             }
-        }, null);
+        }, p -> p.hget(key, field), null);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T hget(final String key, final String field, Class<T> clazz) {
-        String value = call(new Function<JedisCommands, String>() {
+        String value = call("hget", new Function<JedisCommands, String>() {
             @Override
             public String apply(JedisCommands jedis) {
                 return jedis.hget(key, field);
             }
-        }, null);
+        }, p -> p.hget(key, field), null);
         if (value == null) return null;
         if (clazz == String.class) return (T) value;
         return Jsons.fromJson(value, clazz);
     }
 
+    @Override
+    public ScanResult<Map.Entry<String, String>> hscan(final String key, final String cursor, final int count) {
+        return call("hscan", new Function<JedisCommands, ScanResult<Map.Entry<String, String>>>() {
+            @Override
+            public ScanResult<Map.Entry<String, String>> apply(JedisCommands jedis) {
+                return jedis.hscan(key, cursor, new ScanParams().count(count));
+            }
+        }, null);
+    }
+
     public void hdel(final String key, final String... field) {
-        call(new Consumer<JedisCommands>() {
+        callVoid("hdel", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.hdel(key, field);
             }
-        });
+        }, p -> p.hdel(key, field));
     }
 
     public Map<String, String> hgetAll(final String key) {
-        return call(new Function<JedisCommands, Map<String, String>>() {
+        return call("hgetall", new Function<JedisCommands, Map<String, String>>() {
             @Override
             public Map<String, String> apply(JedisCommands jedis) {
                 return jedis.hgetAll(key);
             }
-        }, Collections.<String, String>emptyMap());
+        }, p -> p.hgetAll(key), Collections.<String, String>emptyMap());
     }
 
     public <T> Map<String, T> hgetAll(String key, Class<T> clazz) {
@@ -220,7 +389,7 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public Set<String> hkeys(final String key) {
-        return call(new Function<JedisCommands, Set<String>>() {
+        return call("hkeys", new Function<JedisCommands, Set<String>>() {
             @Override
             public Set<String> apply(JedisCommands jedis) {
                 return jedis.hkeys(key);
@@ -236,7 +405,7 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public <T> List<T> hmget(final String key, Class<T> clazz, final String... fields) {
-        List<String> list = call(new Function<JedisCommands, List<String>>() {
+        List<String> list = call("hmget", new Function<JedisCommands, List<String>>() {
             @Override
             public List<String> apply(JedisCommands jedis) {
                 return jedis.hmget(key, fields);
@@ -260,7 +429,7 @@ public final class RedisManager implements CacheManager {
      * @param time
      */
     public void hmset(final String key, final Map<String, String> hash, final int time) {
-        call(new Consumer<JedisCommands>() {
+        call("hmset", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.hmset(key, hash);
@@ -276,12 +445,12 @@ public final class RedisManager implements CacheManager {
     }
 
     public long hincrBy(final String key, final String field, final long value) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("hincrby", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.hincrBy(key, field, value);
             }
-        }, 0L);
+        }, p -> p.hincrBy(key, field, value), 0L);
     }
 
     /********************* hash redis end ********************************/
@@ -291,7 +460,7 @@ public final class RedisManager implements CacheManager {
      * 从队列的左边入队
      */
     public void lpush(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        call("lpush", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.lpush(key, value);
@@ -307,7 +476,7 @@ public final class RedisManager implements CacheManager {
      * 从队列的右边入队
      */
     public void rpush(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        call("rpush", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.rpush(key, value);
@@ -324,7 +493,7 @@ public final class RedisManager implements CacheManager {
      */
     @SuppressWarnings("unchecked")
     public <T> T lpop(final String key, Class<T> clazz) {
-        String value = call(new Function<JedisCommands, String>() {
+        String value = call("lpop", new Function<JedisCommands, String>() {
             @Override
             public String apply(JedisCommands jedis) {
                 return jedis.lpop(key);
@@ -340,7 +509,7 @@ public final class RedisManager implements CacheManager {
      */
     @SuppressWarnings("unchecked")
     public <T> T rpop(final String key, Class<T> clazz) {
-        String value = call(new Function<JedisCommands, String>() {
+        String value = call("rpop", new Function<JedisCommands, String>() {
             @Override
             public String apply(JedisCommands jedis) {
                 return jedis.rpop(key);
@@ -357,7 +526,7 @@ public final class RedisManager implements CacheManager {
      * 偏移量也可以是负数，表示偏移量是从list尾部开始计数。 例如， -1 表示列表的最后一个元素，-2 是倒数第二个，以此类推。
      */
     public <T> List<T> lrange(final String key, final int start, final int end, Class<T> clazz) {
-        List<String> list = call(new Function<JedisCommands, List<String>>() {
+        List<String> list = call("lrange", new Function<JedisCommands, List<String>>() {
             @Override
             public List<String> apply(JedisCommands jedis) {
                 return jedis.lrange(key, start, end);
@@ -379,7 +548,7 @@ public final class RedisManager implements CacheManager {
      * 偏移量也可以是负数，表示偏移量是从list尾部开始计数。 例如， -1 表示列表的最后一个元素，-2 是倒数第二个，以此类推。
      */
     public List<String> lrange(final String key, final int start, final int end) {
-        return call(new Function<JedisCommands, List<String>>() {
+        return call("lrange", new Function<JedisCommands, List<String>>() {
             @Override
             public List<String> apply(JedisCommands jedis) {
                 return jedis.lrange(key, start, end);
@@ -393,7 +562,7 @@ public final class RedisManager implements CacheManager {
      * 里的值不是一个list的话，会返回error。
      */
     public long llen(final String key) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("llen", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.llen(key);
@@ -408,7 +577,7 @@ public final class RedisManager implements CacheManager {
      * @param value
      */
     public void lRem(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        call("lrem", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.lrem(key, 0, value);
@@ -430,7 +599,7 @@ public final class RedisManager implements CacheManager {
      * @param value
      */
     public void sAdd(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        call("sadd", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.sadd(key, value);
@@ -443,7 +612,7 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public Long sCard(final String key) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("scard", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.scard(key);
@@ -452,7 +621,7 @@ public final class RedisManager implements CacheManager {
     }
 
     public void sRem(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        call("srem", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.srem(key, value);
@@ -461,26 +630,26 @@ public final class RedisManager implements CacheManager {
     }
 
     public boolean sismember(final String key, final String value) {
-        return call(new Function<JedisCommands, Boolean>() {
+        return call("sismember", new Function<JedisCommands, Boolean>() {
             @Override
             public Boolean apply(JedisCommands jedis) {
                 return jedis.sismember(key, value);
             }
-        }, false);
+        }, p -> p.sismember(key, value), false);
     }
 
     @Override
     public Boolean sismember1(String key, String member) {
-        return call(new Function<JedisCommands, Boolean>() {
+        return call("sismember", new Function<JedisCommands, Boolean>() {
             @Override
             public Boolean apply(JedisCommands jedis) {
                 return jedis.sismember(key, member);
             }
-        }, false);
+        }, p -> p.sismember(key, member), false);
     }
 
     public Set<String> smembers(final String key) {
-        return call(new Function<JedisCommands, Set<String>>() {
+        return call("smembers", new Function<JedisCommands, Set<String>>() {
             @Override
             public Set<String> apply(JedisCommands jedis) {
                 return jedis.smembers(key);
@@ -489,7 +658,7 @@ public final class RedisManager implements CacheManager {
     }
 
     public String srandmember(final String key) {
-        return call(new Function<JedisCommands, String>() {
+        return call("srandmember", new Function<JedisCommands, String>() {
             @Override
             public String apply(JedisCommands jedis) {
                 return jedis.srandmember(key);
@@ -505,7 +674,7 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public <T> List<T> sScan(final String key, Class<T> clazz, final int start) {
-        List<String> list = call(new Function<JedisCommands, List<String>>() {
+        List<String> list = call("sscan", new Function<JedisCommands, List<String>>() {
             @Override
             public List<String> apply(JedisCommands jedis) {
                 return jedis.sscan(key, Integer.toString(start), new ScanParams().count(Integer.MAX_VALUE)).getResult();
@@ -521,7 +690,7 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public List<String> sScan(final String key, final int start) {
-        return call(new Function<JedisCommands, List<String>>() {
+        return call("sscan", new Function<JedisCommands, List<String>>() {
             @Override
             public List<String> apply(JedisCommands jedis) {
                 return jedis.sscan(key, Integer.toString(start), new ScanParams().count(Integer.MAX_VALUE)).getResult();
@@ -538,51 +707,51 @@ public final class RedisManager implements CacheManager {
      * @param value
      */
     public void zAdd(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        callVoid("zadd", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.zadd(key, 0, value);
             }
-        });
+        }, p -> p.zadd(key, 0, value));
     }
 
     public void zadd(final String key, final double score, final String member) {
-        call(new Consumer<JedisCommands>() {
+        callVoid("zadd", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.zadd(key, score, member);
             }
-        });
+        }, p -> p.zadd(key, score, member));
     }
 
     @Override
     public Long zadd(String key, Map<String, Double> scoreMembers) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zadd", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zadd(key, scoreMembers);
             }
-        }, 0L);
+        }, p -> p.zadd(key, scoreMembers), 0L);
     }
 
     @Override
     public Double zincrby(String key, double score, String member) {
-        return call(new Function<JedisCommands, Double>() {
+        return call("zincrby", new Function<JedisCommands, Double>() {
             @Override
             public Double apply(JedisCommands jedis) {
                 return jedis.zincrby(key, score, member);
             }
-        }, null);
+        }, p -> p.zincrby(key, score, member), null);
     }
 
     @Override
     public Double zscore(String key, String member) {
-        return call(new Function<JedisCommands, Double>() {
+        return call("zscore", new Function<JedisCommands, Double>() {
             @Override
             public Double apply(JedisCommands jedis) {
                 return jedis.zscore(key, member);
             }
-        }, null);
+        }, p -> p.zscore(key, member), null);
     }
 
     /**
@@ -590,113 +759,279 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public Long zCard(final String key) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zcard", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zcard(key);
             }
-        }, 0L);
+        }, p -> p.zcard(key), 0L);
     }
 
     @Override
     public Long zcard(String key) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zcard", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zcard(key);
             }
-        }, 0L);
+        }, p -> p.zcard(key), 0L);
     }
 
     @Override
     public Long zcount(String key, double min, double max) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zcount", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zcount(key, min, max);
             }
+        }, p -> p.zcount(key, min, max), 0L);
+    }
+
+    @Override
+    public Long zunionstore(final String dstKey, final String... keys) {
+        return zunionstore(dstKey, null, keys);
+    }
+
+    @Override
+    public Long zunionstore(final String dstKey, final String[] keys, final double[] weights) {
+        return zunionstore(dstKey, new ZParams().weightsByDouble(weights), keys);
+    }
+
+    /**
+     * All keys must be in one slot, see {@link #onSlot(String, String, Function, Object)}.
+     */
+    private Long zunionstore(final String dstKey, final ZParams params, final String[] keys) {
+        return onSlot("zunionstore", dstKey, new Function<Jedis, Long>() {
+            @Override
+            public Long apply(Jedis jedis) {
+                return params != null ? jedis.zunionstore(dstKey, params, keys) : jedis.zunionstore(dstKey, keys);
+            }
         }, 0L);
     }
 
     public void zRem(final String key, final String value) {
-        call(new Consumer<JedisCommands>() {
+        callVoid("zrem", new Consumer<JedisCommands>() {
             @Override
             public void accept(JedisCommands jedis) {
                 jedis.zrem(key, value);
             }
-        });
+        }, p -> p.zrem(key, value));
     }
 
     @Override
     public Long zrem(String key, String... member) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zrem", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zrem(key, member);
             }
-        }, null);
+        }, p -> p.zrem(key, member), null);
     }
 
     @Override
     public Long zremrangeByRank(String key, long start, long end) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zremrangebyrank", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zremrangeByRank(key, start, end);
             }
-        }, null);
+        }, p -> p.zremrangeByRank(key, start, end), null);
     }
 
     @Override
     public Long zremrangeByScore(String key, double start, double end) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zremrangebyscore", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zremrangeByScore(key, start, end);
             }
-        }, null);
+        }, p -> p.zremrangeByScore(key, start, end), null);
     }
 
     @Override
     public Long zrank(String key, String member) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zrank", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zrank(key, member);
             }
-        }, null);
+        }, p -> p.zrank(key, member), null);
     }
 
     @Override
     public Long zrevrank(String key, String member) {
-        return call(new Function<JedisCommands, Long>() {
+        return call("zrevrank", new Function<JedisCommands, Long>() {
             @Override
             public Long apply(JedisCommands jedis) {
                 return jedis.zrevrank(key, member);
             }
-        }, null);
+        }, p -> p.zrevrank(key, member), null);
     }
 
     @Override
     public Set<Tuple> zrangeWithScores(String key, long start, long end) {
-        return call(new Function<JedisCommands, Set<Tuple>>() {
+        return call("zrangewithscores", new Function<JedisCommands, Set<Tuple>>() {
             @Override
             public Set<Tuple> apply(JedisCommands jedis) {
                 return jedis.zrangeWithScores(key, start, end);
             }
-        }, null);
+        }, p -> p.zrangeWithScores(key, start, end), null);
     }
 
     @Override
     public Set<Tuple> zrevrangeWithScores(String key, long start, long end) {
-        return call(new Function<JedisCommands, Set<Tuple>>() {
+        return call("zrevrangewithscores", new Function<JedisCommands, Set<Tuple>>() {
             @Override
             public Set<Tuple> apply(JedisCommands jedis) {
                 return jedis.zrevrangeWithScores(key, start, end);
             }
+        }, p -> p.zrevrangeWithScores(key, start, end), null);
+    }
+
+    /**
+     * Reads the range without building a Set of Tuples, for callers copying the reply into their own structure.
+     */
+    @Override
+    public List<byte[]> zrangeWithScoresRaw(final String key, final long start, final long end, final boolean desc) {
+        return onSlot(desc ? "zrevrangewithscores" : "zrangewithscores", key, new Function<Jedis, List<byte[]>>() {
+            @Override
+            public List<byte[]> apply(Jedis jedis) {
+                Client client = jedis.getClient();
+                if (desc) {
+                    client.zrevrangeWithScores(key, start, end);
+                } else {
+                    client.zrangeWithScores(key, start, end);
+                }
+                return client.getBinaryMultiBulkReply();
+            }
         }, null);
     }
 
+    /**
+     * Runs the call on a connection to the node serving the slot of the key, or to the single node.
+     * In cluster mode a MOVED reply reloads the slot map and runs the call again, an ASK reply runs it on
+     * the importing node after ASKING, both up to {@value #MAX_REDIRECTS} times, as JedisCluster and
+     * {@link RedisPipelineBatch} do.
+     */
+    private <T> T onSlot(String command, String key, Function<Jedis, T> call, T defaultValue) {
+        long begin = System.nanoTime();
+        try {
+            if (!factory.isCluster()) {
+                try (Jedis jedis = borrow()) {
+                    return call.apply(jedis);
+                }
+            }
+            HostAndPort asking = null;
+            for (int redirects = 0; ; redirects++) {
+                try (Jedis jedis = asking != null ? factory.getClusterConnectionFromNode(asking)
+                        : factory.getClusterConnectionFromSlot(JedisClusterCRC16.getSlot(key))) {
+                    if (asking != null) {
+                        jedis.asking();
+                    }
+                    return call.apply(jedis);
+                } catch (JedisRedirectionException e) {
+                    if (redirects == MAX_REDIRECTS) throw e;
+                    if (e instanceof JedisAskDataException) {
+                        asking = e.getTargetNode();
+                    } else {
+                        asking = null;
+                        factory.renewClusterSlotCache();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("redis ex", e);
+            error(command);
+        } finally {
+            metrics.recordLatency(cmdPrefix + command, System.nanoTime() - begin);
+        }
+        return defaultValue;
+    }
+
+    /*********************
+     * pipeline
+     ********************************/
+    /**
+     * Returns a new pipeline, commands queued on it are sent in one round trip per node on sync().
+     */
+    @Override
+    public CachePipeline pipelined() {
+        return new RedisPipelineBatch(factory, metrics);
+    }
+
+    /*********************
+     * keyspace notification
+     ********************************/
+    /**
+     * Calls the listener whenever a command touches the key, and after every (re)subscription.
+     * Needs keyspace events enabled on the server, e.g. notify-keyspace-events "Kgz".
+     */
+    @Override
+    public synchronized void subscribeKeyspace(String key, Runnable listener) {
+        if (replica) {
+            master.subscribeKeyspace(key, listener);
+            return;
+        }
+        if (keyspaceNotifier == null) {
+            keyspaceNotifier = new KeyspaceNotifier(factory);
+        }
+        keyspaceNotifier.subscribe(key, listener);
+    }
+
+    @Override
+    public synchronized void unsubscribeKeyspace(String key, Runnable listener) {
+        if (replica) {
+            master.unsubscribeKeyspace(key, listener);
+            return;
+        }
+        if (keyspaceNotifier != null) {
+            keyspaceNotifier.unsubscribe(key, listener);
+        }
+    }
+
+    /*********************
+     * script
+     ********************************/
+    /**
+     * Runs the script with EVALSHA and falls back to EVAL when the node has not cached it yet.
+     * Integer replies come back as Long, bulk replies as String, multi bulk replies as List.
+     */
+    @Override
+    public Object eval(final RedisScript script, final List<String> keys, final List<String> args) {
+        long begin = System.nanoTime();
+        try {
+            if (factory.isCluster()) {
+                JedisCluster cluster = factory.getClusterConnection();
+                try {
+                    return cluster.evalsha(script.getSha1(), keys, args);
+                } catch (JedisNoScriptException e) {
+                    return cluster.eval(script.getScript(), keys, args);
+                }
+            }
+            RedisMultiplexer mux = multiplexer;
+            if (mux != null) {
+                try {
+                    return mux.execute(p -> p.evalsha(script.getSha1(), keys, args));
+                } catch (JedisNoScriptException e) {
+                    return mux.execute(p -> p.eval(script.getScript(), keys, args));
+                }
+            }
+            try (Jedis jedis = borrow()) {
+                try {
+                    return jedis.evalsha(script.getSha1(), keys, args);
+                } catch (JedisNoScriptException e) {
+                    return jedis.eval(script.getScript(), keys, args);
+                }
+            }
+        } catch (Exception e) {
+            log.error("redis ex", e);
+            error("evalsha");
+        } finally {
+            metrics.recordLatency(cmdPrefix + "evalsha", System.nanoTime() - begin);
+        }
+        return null;
+    }
+
     /**
      * 重复设置时，key 已经存在返回0,不存在返回1
      *
@@ -706,7 +1041,7 @@ public final class RedisManager implements CacheManager {
      * @return
      */
     public <T> long setNotExists(String key, T value, int expireTime) {
-        return call(x -> {
+        return call("setnx", x -> {
             long result = x.setnx(key, Jsons.toJson(value));
             if (expireTime > 0 && result == 1) {
                 x.expire(key, expireTime);
@@ -722,7 +1057,7 @@ public final class RedisManager implements CacheManager {
      * 偏移量也可以是负数，表示偏移量是从list尾部开始计数。 例如， -1 表示列表的最后一个元素，-2 是倒数第二个，以此类推。
      */
     public <T> List<T> zrange(final String key, final int start, final int end, Class<T> clazz) {
-        Set<String> value = call(new Function<JedisCommands, Set<String>>() {
+        Set<String> value = call("zrange", new Function<JedisCommands, Set<String>>() {
             @Override
             public Set<String> apply(JedisCommands jedis) {
                 return jedis.zrange(key, start, end);
@@ -743,9 +1078,37 @@ public final class RedisManager implements CacheManager {
     }
 
     public void destroy() {
+        if (replica) {
+            master.destroy();
+            return;
+        }
+        RedisMultiplexer mux = multiplexer;
+        if (mux != null) {
+            multiplexer = null;
+            mux.close();
+        }
+        synchronized (this) {
+            if (keyspaceNotifier != null) {
+                keyspaceNotifier.destroy();
+                keyspaceNotifier = null;
+            }
+        }
         if (factory != null) factory.destroy();
     }
 
+    /**
+     * @return true if the keys can be used together in one script or transaction,
+     * which in cluster mode means they hash to the same slot
+     */
+    public boolean isSameSlot(String... keys) {
+        if (!factory.isCluster() || keys.length < 2) return true;
+        int slot = JedisClusterCRC16.getSlot(keys[0]);
+        for (int i = 1; i < keys.length; i++) {
+            if (JedisClusterCRC16.getSlot(keys[i]) != slot) return false;
+        }
+        return true;
+    }
+
     public void test() {
         if (factory.isCluster()) {
             JedisCluster cluster = factory.getClusterConnection();
@@ -0,0 +1,161 @@
+package com.yinrs.cache.redis;
+
+import com.yinrs.cache.redis.connection.RedisConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Sends the commands of many threads over a few long-lived connections. Callers put their command on a
+ * shared queue and wait; each I/O thread owns one connection, takes whatever commands are queued, up to
+ * maxBatch, and writes them as one pipeline. While a batch is on the wire the next one piles up in the
+ * queue, so under load every round trip carries many commands, and when idle a command goes out alone
+ * without waiting.
+ */
+final class RedisMultiplexer {
+    private static final Logger log = LoggerFactory.getLogger(RedisMultiplexer.class);
+
+    private final RedisConnectionFactory factory;
+    private final int maxBatch;
+    private final BlockingQueue<Op<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread[] ioThreads;
+    private volatile boolean running = true;
+
+    RedisMultiplexer(RedisConnectionFactory factory, int threads, int maxBatch) {
+        if (threads < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("threads and maxBatch must be positive");
+        }
+        this.factory = factory;
+        this.maxBatch = maxBatch;
+        this.ioThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            ioThreads[i] = new Thread(this::loop, "redis-multiplexer-" + i);
+            ioThreads[i].setDaemon(true);
+            ioThreads[i].start();
+        }
+    }
+
+    /**
+     * Queues the command and waits for its reply.
+     *
+     * @throws JedisException if the command failed or the multiplexer is closed
+     */
+    <R> R execute(Function<Pipeline, Response<R>> command) {
+        if (!running) throw new JedisException("redis multiplexer closed");
+        Op<R> op = new Op<>(command);
+        queue.add(op);
+        if (!running && queue.remove(op)) throw new JedisException("redis multiplexer closed");
+        try {
+            return op.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException("interrupted waiting for redis", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JedisException) throw (JedisException) cause;
+            throw new JedisException(cause);
+        }
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    void close() {
+        running = false;
+        for (Thread thread : ioThreads) {
+            thread.interrupt();
+        }
+        for (Thread thread : ioThreads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<Op<?>> left = new ArrayList<>();
+        queue.drainTo(left);
+        fail(left, new JedisException("redis multiplexer closed"));
+    }
+
+    private void loop() {
+        List<Op<?>> batch = new ArrayList<>(maxBatch);
+        Jedis jedis = null;
+        try {
+            while (running) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                try {
+                    if (jedis == null) {
+                        jedis = factory.getJedisConnection();
+                    }
+                    send(jedis, batch);
+                } catch (Exception e) {
+                    log.error("redis ex", e);
+                    fail(batch, e);
+                    if (jedis != null) {//replies may be left unread, never reuse the socket
+                        jedis.disconnect();
+                        jedis.close();
+                        jedis = null;
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fail(batch, new JedisException("redis multiplexer closed"));
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    private static void send(Jedis jedis, List<Op<?>> batch) {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<?>> responses = new ArrayList<>(batch.size());
+        for (Op<?> op : batch) {
+            responses.add(op.command.apply(pipeline));
+        }
+        pipeline.sync();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(responses.get(i));
+        }
+    }
+
+    private static void fail(List<Op<?>> ops, Exception e) {
+        for (Op<?> op : ops) {
+            op.future.completeExceptionally(e);
+        }
+    }
+
+    private static final class Op<R> {
+        final Function<Pipeline, Response<R>> command;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Op(Function<Pipeline, Response<R>> command) {
+            this.command = command;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Response<?> response) {
+            try {
+                future.complete((R) response.get());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.yinrs.cache.redis;
+
+import com.yinrs.cache.CachePipeline;
+import com.yinrs.cache.redis.connection.RedisConnectionFactory;
+import com.yinrs.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Jedis {@link Pipeline} based {@link CachePipeline}. A single node gets one pipeline on one pooled
+ * connection; in cluster mode the commands are grouped by the node serving their slot and every node
+ * gets one pipeline, so a sync costs one round trip per node. Commands answered with MOVED are sent
+ * again after reloading the slot map, commands answered with ASK are sent to the importing node,
+ * both up to {@value #MAX_REDIRECTS} times.
+ */
+final class RedisPipelineBatch implements CachePipeline {
+    private static final Logger log = LoggerFactory.getLogger(RedisPipelineBatch.class);
+
+    private static final String SYNC = "redis.pipeline.sync";
+    private static final String REDIRECTS = "redis.pipeline.redirects";
+    private static final int MAX_REDIRECTS = 5;
+
+    private final RedisConnectionFactory factory;
+    private final MetricsRegistry metrics;
+    private List<Command<?>> commands = new ArrayList<>();
+
+    RedisPipelineBatch(RedisConnectionFactory factory, MetricsRegistry metrics) {
+        this.factory = factory;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletableFuture<Long> zadd(final String key, final double score, final String member) {
+        return add(key, p -> p.zadd(key, score, member));
+    }
+
+    @Override
+    public CompletableFuture<Long> zadd(final String key, final Map<String, Double> scoreMembers) {
+        return add(key, p -> p.zadd(key, scoreMembers));
+    }
+
+    @Override
+    public CompletableFuture<Double> zincrby(final String key, final double score, final String member) {
+        return add(key, p -> p.zincrby(key, score, member));
+    }
+
+    @Override
+    public CompletableFuture<Long> zrem(final String key, final String... member) {
+        return add(key, p -> p.zrem(key, member));
+    }
+
+    @Override
+    public CompletableFuture<Double> zscore(final String key, final String member) {
+        return add(key, p -> p.zscore(key, member));
+    }
+
+    @Override
+    public CompletableFuture<Long> incr(final String key) {
+        return add(key, p -> p.incr(key));
+    }
+
+    @Override
+    public void sync() {
+        if (commands.isEmpty()) return;
+        List<Command<?>> pending = commands;
+        commands = new ArrayList<>();
+        long begin = System.nanoTime();
+        try {
+            sync(pending);
+        } finally {
+            metrics.recordLatency(SYNC, System.nanoTime() - begin);
+        }
+    }
+
+    private void sync(List<Command<?>> pending) {
+        if (factory.isCluster()) {
+            syncCluster(pending);
+        } else {
+            long borrow = System.nanoTime();
+            try (Jedis jedis = factory.getJedisConnection()) {
+                metrics.recordLatency("redis.pool.borrow", System.nanoTime() - borrow);
+                run(jedis, pending, null);
+            } catch (Exception e) {
+                fail(pending, e);
+            }
+        }
+    }
+
+    private void syncCluster(List<Command<?>> pending) {
+        for (int redirects = 0; ; redirects++) {
+            List<Command<?>> redirected = new ArrayList<>();
+            Map<String, Jedis> connections = new LinkedHashMap<>();
+            Map<String, List<Command<?>>> nodes = new HashMap<>();
+            try {
+                for (Map.Entry<Integer, List<Command<?>>> entry : bySlot(pending).entrySet()) {
+                    Jedis jedis;
+                    try {
+                        jedis = factory.getClusterConnectionFromSlot(entry.getKey());
+                    } catch (Exception e) {
+                        fail(entry.getValue(), e);
+                        continue;
+                    }
+                    String node = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+                    if (connections.containsKey(node)) {
+                        jedis.close();
+                        nodes.get(node).addAll(entry.getValue());
+                    } else {
+                        connections.put(node, jedis);
+                        nodes.put(node, new ArrayList<>(entry.getValue()));
+                    }
+                }
+                for (Map.Entry<String, Jedis> entry : connections.entrySet()) {
+                    List<Command<?>> group = nodes.get(entry.getKey());
+                    try {
+                        run(entry.getValue(), group, redirected);
+                    } catch (Exception e) {
+                        fail(group, e);
+                    }
+                }
+            } finally {
+                for (Jedis jedis : connections.values()) {
+                    jedis.close();
+                }
+            }
+            if (redirected.isEmpty()) return;
+            metrics.incrementCounter(REDIRECTS);
+            if (redirects == MAX_REDIRECTS) {
+                for (Command<?> command : redirected) {
+                    fail(Collections.<Command<?>>singletonList(command), command.redirection);
+                }
+                return;
+            }
+            pending = new ArrayList<>();
+            boolean moved = false;
+            for (Command<?> command : redirected) {
+                if (command.redirection instanceof JedisAskDataException) {
+                    ask(command);
+                } else {
+                    moved = true;
+                    pending.add(command);
+                }
+            }
+            if (!moved) return;
+            factory.renewClusterSlotCache();
+        }
+    }
+
+    /**
+     * Sends the command to the node importing its slot, preceded by ASKING.
+     */
+    private void ask(Command<?> command) {
+        try (Jedis jedis = factory.getClusterConnectionFromNode(command.redirection.getTargetNode())) {
+            jedis.asking();
+            run(jedis, Collections.<Command<?>>singletonList(command), null);
+        } catch (Exception e) {
+            fail(Collections.<Command<?>>singletonList(command), e);
+        }
+    }
+
+    private static Map<Integer, List<Command<?>>> bySlot(List<Command<?>> pending) {
+        Map<Integer, List<Command<?>>> slots = new LinkedHashMap<>();
+        for (Command<?> command : pending) {
+            int slot = JedisClusterCRC16.getSlot(command.key);
+            List<Command<?>> group = slots.get(slot);
+            if (group == null) {
+                group = new ArrayList<>();
+                slots.put(slot, group);
+            }
+            group.add(command);
+        }
+        return slots;
+    }
+
+    private <T> CompletableFuture<T> add(String key, Function<Pipeline, Response<T>> function) {
+        Command<T> command = new Command<>(key, function);
+        commands.add(command);
+        return command.future;
+    }
+
+    /**
+     * @param redirected receives the commands answered with MOVED or ASK, null to complete them exceptionally
+     */
+    private void run(Jedis jedis, List<Command<?>> group, List<Command<?>> redirected) {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<?>> responses = new ArrayList<>(group.size());
+        for (Command<?> command : group) {
+            responses.add(command.function.apply(pipeline));
+        }
+        pipeline.sync();
+        for (int i = 0; i < group.size(); i++) {
+            Command<?> command = group.get(i);
+            if (!command.complete(responses.get(i), redirected != null)) {
+                redirected.add(command);
+            }
+        }
+    }
+
+    private void fail(List<Command<?>> group, Exception e) {
+        log.error("redis ex", e);
+        metrics.incrementCounter("redis.errors");
+        metrics.incrementCounter(SYNC + ".errors");
+        for (Command<?> command : group) {
+            command.future.completeExceptionally(e);
+        }
+    }
+
+    private static final class Command<T> {
+        final String key;
+        final Function<Pipeline, Response<T>> function;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        JedisRedirectionException redirection;
+
+        Command(String key, Function<Pipeline, Response<T>> function) {
+            this.key = key;
+            this.function = function;
+        }
+
+        /**
+         * @return false if the reply is a redirection to follow, the future is then left pending
+         */
+        @SuppressWarnings("unchecked")
+        boolean complete(Response<?> response, boolean followRedirection) {
+            try {
+                future.complete((T) response.get());
+            } catch (JedisRedirectionException e) {
+                if (followRedirection) {
+                    redirection = e;
+                    return false;
+                }
+                future.completeExceptionally(e);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+            return true;
+        }
+    }
+}
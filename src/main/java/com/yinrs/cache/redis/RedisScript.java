@@ -0,0 +1,83 @@
+package com.yinrs.cache.redis;
+
+import com.yinrs.cache.CacheManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * A lua script together with its SHA1 digest, so it can be sent with EVALSHA
+ * and only falls back to EVAL the first time a redis node sees it.
+ * It may carry an {@link Emulation}, the same script in java for caches that cannot run lua.
+ */
+public final class RedisScript {
+    private final String script;
+    private final String sha1;
+    private final Emulation emulation;
+
+    public RedisScript(String script) {
+        this(script, null);
+    }
+
+    public RedisScript(String script, Emulation emulation) {
+        this.script = script;
+        this.sha1 = sha1Hex(script);
+        this.emulation = emulation;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * @return the java version of the script, null if there is none
+     */
+    public Emulation getEmulation() {
+        return emulation;
+    }
+
+    private static String sha1Hex(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RedisScript{" +
+                "sha1='" + sha1 + '\'' +
+                '}';
+    }
+
+    /**
+     * The script written against a {@link CacheManager}, see {@link com.yinrs.cache.memory.InMemoryCacheManager}.
+     * It gets the keys and args of the script and answers as the lua script would: Long for integers,
+     * String for bulk replies, List for multi bulk replies, null for nil and false. Errors are thrown.
+     */
+    public interface Emulation {
+        Object run(CacheManager cache, List<String> keys, List<String> args);
+
+        /**
+         * @return the score as a bulk reply, e.g. of ZSCORE
+         */
+        static String score(double score) {
+            if (score == Double.POSITIVE_INFINITY) return "inf";
+            if (score == Double.NEGATIVE_INFINITY) return "-inf";
+            if (score == Math.rint(score) && Math.abs(score) < 1e17) return Long.toString((long) score);
+            return Double.toString(score);
+        }
+    }
+}
@@ -34,12 +34,15 @@ public class RedisConnectionFactory {
     private Pool<Jedis> pool;
     private JedisPoolConfig poolConfig = new JedisPoolConfig();
     private int dbIndex = 0;
-    private JedisCluster cluster;
+    private SlotJedisCluster cluster;
     private List<RedisNode> redisServers;
     private boolean isCluster = false;
     private String model = "single";
     protected String sentinelMaster = "mymaster";
     protected Set<String> sentinelSet = null;
+    private boolean readFromReplicas = false;
+    private long replicaRefreshIntervalMillis = 10000;
+    private SentinelReplicaPools replicas;
 
     /**
      * Constructs a new <code>JedisConnectionFactory</code> instance with default settings (default connection pooling, no
@@ -86,6 +89,11 @@ public class RedisConnectionFactory {
             this.cluster = createCluster();
         } else if (model.equals("sentinel")) {
             this.pool = createSentinelPool();
+            if (readFromReplicas) {
+                this.replicas = new SentinelReplicaPools(getSentinelMaster(), getSentinelSet(), this.poolConfig,
+                        getShardInfo().getConnectionTimeout(), getShardInfo().getPassword(), dbIndex);
+                this.replicas.start(replicaRefreshIntervalMillis);
+            }
         } else {
             this.pool = createPool();
         }
@@ -129,7 +137,7 @@ public class RedisConnectionFactory {
     }
 
 
-    private JedisCluster createCluster() {
+    private SlotJedisCluster createCluster() {
         return createCluster(this.redisServers, this.poolConfig);
     }
 
@@ -138,7 +146,7 @@ public class RedisConnectionFactory {
      * @return
      * @since 1.7
      */
-    protected JedisCluster createCluster(List<RedisNode> servers, GenericObjectPoolConfig poolConfig) {
+    protected SlotJedisCluster createCluster(List<RedisNode> servers, GenericObjectPoolConfig poolConfig) {
 
         Set<HostAndPort> hostAndPort = new HashSet<>();
         for (RedisNode server : servers) {
@@ -151,9 +159,9 @@ public class RedisConnectionFactory {
         }
 
         if (poolConfig != null) {
-            return new JedisCluster(hostAndPort, timeout, redirects, poolConfig);
+            return new SlotJedisCluster(hostAndPort, timeout, redirects, poolConfig);
         }
-        return new JedisCluster(hostAndPort, timeout, redirects, poolConfig);
+        return new SlotJedisCluster(hostAndPort, timeout, redirects, poolConfig);
     }
 
     /*
@@ -161,6 +169,10 @@ public class RedisConnectionFactory {
      * @see org.springframework.beans.factory.DisposableBean#destroy()
      */
     public void destroy() {
+        if (replicas != null) {
+            replicas.destroy();
+            replicas = null;
+        }
         if (pool != null) {
             try {
                 pool.destroy();
@@ -187,6 +199,26 @@ public class RedisConnectionFactory {
         return fetchJedisConnector();
     }
 
+    /**
+     * Returns a connection to one of the master's replicas when reading from replicas in sentinel mode,
+     * otherwise, or if no replica is reachable, a connection to the master.
+     */
+    public Jedis getReplicaJedisConnection() {
+        SentinelReplicaPools current = replicas;
+        if (current != null) {
+            Jedis jedis = current.getResource();
+            if (jedis != null) return jedis;
+        }
+        return fetchJedisConnector();
+    }
+
+    /**
+     * @return true if reads can be sent to replicas, see {@link #setReadFromReplicas(boolean)}
+     */
+    public boolean hasReplicas() {
+        return replicas != null;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.springframework.data.redis.connection.RedisConnectionFactory#getClusterConnection()
@@ -195,10 +227,99 @@ public class RedisConnectionFactory {
         return cluster;
     }
 
+    /**
+     * Returns a connection to the cluster node serving the given slot, e.g. to pipeline commands
+     * whose keys all hash to that slot. The caller must close it to give it back to the node pool.
+     */
+    public Jedis getClusterConnectionFromSlot(int slot) {
+        return cluster.getConnectionFromSlot(slot);
+    }
+
+    /**
+     * Returns a connection to the given cluster node, e.g. the target of an ASK redirection.
+     * The caller must close it to give it back to the node pool.
+     */
+    public Jedis getClusterConnectionFromNode(HostAndPort node) {
+        return cluster.getConnectionFromNode(node);
+    }
+
+    /**
+     * Reloads which node serves which slot, after a MOVED redirection.
+     */
+    public void renewClusterSlotCache() {
+        cluster.renewSlotCache();
+    }
+
+    /**
+     * @return connections borrowed and not yet returned, summed over the node pools in cluster mode
+     */
+    public int getNumActive() {
+        if (pool != null) return pool.getNumActive();
+        int active = 0;
+        if (cluster != null) {
+            for (JedisPool nodePool : cluster.getClusterNodes().values()) {
+                active += nodePool.getNumActive();
+            }
+        }
+        return active;
+    }
+
+    /**
+     * @return connections idle in the pool, summed over the node pools in cluster mode
+     */
+    public int getNumIdle() {
+        if (pool != null) return pool.getNumIdle();
+        int idle = 0;
+        if (cluster != null) {
+            for (JedisPool nodePool : cluster.getClusterNodes().values()) {
+                idle += nodePool.getNumIdle();
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return threads blocked waiting for a connection, summed over the node pools in cluster mode
+     */
+    public int getNumWaiters() {
+        if (pool != null) return pool.getNumWaiters();
+        int waiters = 0;
+        if (cluster != null) {
+            for (JedisPool nodePool : cluster.getClusterNodes().values()) {
+                waiters += nodePool.getNumWaiters();
+            }
+        }
+        return waiters;
+    }
+
+    /**
+     * @return connections borrowed from the replica pools and not yet returned
+     */
+    public int getNumReplicaActive() {
+        SentinelReplicaPools current = replicas;
+        return current != null ? current.getNumActive() : 0;
+    }
+
     public boolean isCluster() {
         return isCluster;
     }
 
+    public boolean isReadFromReplicas() {
+        return readFromReplicas;
+    }
+
+    /**
+     * Only used in sentinel mode: keeps pools to the replicas the sentinels report, refreshed every
+     * replicaRefreshIntervalMillis, for {@link #getReplicaJedisConnection()}.
+     */
+    public void setReadFromReplicas(boolean readFromReplicas) {
+        this.readFromReplicas = readFromReplicas;
+    }
+
+    public void setReplicaRefreshIntervalMillis(long replicaRefreshIntervalMillis) {
+        this.replicaRefreshIntervalMillis = replicaRefreshIntervalMillis;
+    }
+
     public String getModel() {
         return model;
     }
@@ -350,4 +471,27 @@ public class RedisConnectionFactory {
         this.hostName = redisServers.get(0).getHost();
         this.port = redisServers.get(0).getPort();
     }
-}
\ No newline at end of file
+
+    /**
+     * {@link JedisCluster} only hands out connections per command, this exposes the slot and node connections
+     * of its handler so that commands of the same node can share a pipeline.
+     */
+    static class SlotJedisCluster extends JedisCluster {
+
+        SlotJedisCluster(Set<HostAndPort> nodes, int timeout, int maxAttempts, GenericObjectPoolConfig poolConfig) {
+            super(nodes, timeout, maxAttempts, poolConfig);
+        }
+
+        Jedis getConnectionFromSlot(int slot) {
+            return ((JedisSlotBasedConnectionHandler) connectionHandler).getConnectionFromSlot(slot);
+        }
+
+        Jedis getConnectionFromNode(HostAndPort node) {
+            return connectionHandler.getConnectionFromNode(node);
+        }
+
+        void renewSlotCache() {
+            connectionHandler.renewSlotCache();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.yinrs.cache.redis.connection;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pools to the replicas of a sentinel monitored master. The replicas are asked from the sentinels
+ * (SENTINEL SLAVES) on start and every refresh interval; replicas flagged down or disconnected, or whose
+ * link to the master is not ok, are left out. Connections are handed out round robin over the replicas.
+ */
+final class SentinelReplicaPools {
+    private static final Logger log = LoggerFactory.getLogger(SentinelReplicaPools.class);
+
+    private final String masterName;
+    private final Set<String> sentinels;
+    private final GenericObjectPoolConfig poolConfig;
+    private final int timeout;
+    private final String password;
+    private final int database;
+    private final Map<HostAndPort, JedisPool> pools = new HashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<JedisPool> healthy = Collections.emptyList();
+    private ScheduledExecutorService refresher;
+
+    SentinelReplicaPools(String masterName, Set<String> sentinels, GenericObjectPoolConfig poolConfig,
+                         int timeout, String password, int database) {
+        this.masterName = masterName;
+        this.sentinels = sentinels;
+        this.poolConfig = poolConfig;
+        this.timeout = timeout;
+        this.password = password;
+        this.database = database;
+    }
+
+    void start(long refreshIntervalMillis) {
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-replica-refresh-" + masterName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Asks the sentinels in turn until one answers, then opens pools to new replicas and closes the pools
+     * of replicas gone. If no sentinel answers the known replicas are kept.
+     */
+    synchronized void refresh() {
+        List<Map<String, String>> replicas = null;
+        for (String sentinel : sentinels) {
+            HostAndPort address = HostAndPort.parseString(sentinel);
+            try (Jedis jedis = new Jedis(address.getHost(), address.getPort(), timeout)) {
+                replicas = jedis.sentinelSlaves(masterName);
+                break;
+            } catch (JedisException e) {
+                log.warn("cannot list replicas of {} from sentinel {}", masterName, sentinel, e);
+            }
+        }
+        if (replicas == null) return;
+
+        Set<HostAndPort> addresses = new HashSet<>();
+        for (Map<String, String> replica : replicas) {
+            if (isHealthy(replica)) {
+                addresses.add(new HostAndPort(replica.get("ip"), Integer.parseInt(replica.get("port"))));
+            }
+        }
+        List<JedisPool> removed = new ArrayList<>();
+        Iterator<Map.Entry<HostAndPort, JedisPool>> iterator = pools.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<HostAndPort, JedisPool> entry = iterator.next();
+            if (!addresses.contains(entry.getKey())) {
+                log.info("replica {} of {} removed", entry.getKey(), masterName);
+                iterator.remove();
+                removed.add(entry.getValue());
+            }
+        }
+        for (HostAndPort address : addresses) {
+            if (!pools.containsKey(address)) {
+                log.info("replica {} of {} added", address, masterName);
+                pools.put(address, new JedisPool(poolConfig, address.getHost(), address.getPort(), timeout, password, database));
+            }
+        }
+        healthy = new ArrayList<>(pools.values());
+        for (JedisPool pool : removed) {
+            pool.destroy();
+        }
+    }
+
+    /**
+     * @return a connection to the next reachable replica, null if there is none
+     */
+    Jedis getResource() {
+        List<JedisPool> current = healthy;
+        int size = current.size();
+        if (size == 0) return null;
+        int first = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            try {
+                return current.get((first + i) % size).getResource();
+            } catch (JedisException e) {
+                log.warn("cannot get replica connection of {}", masterName, e);
+            }
+        }
+        return null;
+    }
+
+    int getNumActive() {
+        int active = 0;
+        for (JedisPool pool : healthy) {
+            active += pool.getNumActive();
+        }
+        return active;
+    }
+
+    synchronized void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        for (JedisPool pool : pools.values()) {
+            try {
+                pool.destroy();
+            } catch (Exception ex) {
+                log.warn("Cannot properly close Jedis pool", ex);
+            }
+        }
+        pools.clear();
+        healthy = Collections.emptyList();
+    }
+
+    /**
+     * @param replica one entry of SENTINEL SLAVES
+     */
+    static boolean isHealthy(Map<String, String> replica) {
+        String flags = replica.get("flags");
+        if (flags == null || replica.get("ip") == null || replica.get("port") == null) return false;
+        for (String flag : flags.split(",")) {
+            if (flag.equals("s_down") || flag.equals("o_down") || flag.equals("disconnected")) return false;
+        }
+        return "ok".equals(replica.get("master-link-status"));
+    }
+}
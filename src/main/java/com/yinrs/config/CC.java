@@ -255,6 +255,16 @@ public class CC {
             public static String clusterModel = cfg.getString("cluster-model");
             public static String mode = cfg.getString("cluster-model");
             public static String master = cfg.getString("sentinelMaster");
+            public static boolean read_from_replicas = cfg.getBoolean("read-from-replicas");
+            public static long replica_refresh_interval = cfg.getDuration("replica-refresh-interval", TimeUnit.MILLISECONDS);
+
+            public static class multiplexer {
+                static Config cfg = redis.cfg.getObject("multiplexer").toConfig();
+
+                public static boolean enabled = cfg.getBoolean("enabled");
+                public static int io_threads = cfg.getInt("io-threads");
+                public static int max_batch = cfg.getInt("max-batch");
+            }
 
             public static List<RedisNode> nodes() {
                 List<Object> list = cfg.getList("nodes").unwrapped();
@@ -274,6 +284,33 @@ public class CC {
             }
         }
 
+        public static class rank {
+            static Config cfg = mp.cfg.getObject("rank").toConfig();
+
+            public static boolean lock_free = cfg.getBoolean("lock-free");
+            public static boolean persistent = cfg.getBoolean("persistent");
+            public static int shards = cfg.getInt("shards");
+            public static int async_threads = cfg.getInt("async-threads");
+            public static int scatter_threads = cfg.getInt("scatter-threads");
+
+            public static class result_cache {
+                static Config cfg = rank.cfg.getObject("result-cache").toConfig();
+
+                public static boolean enabled = cfg.getBoolean("enabled");
+                public static long max_entries = cfg.getLong("max-entries");
+                public static long version_window = cfg.getDuration("version-window", TimeUnit.MILLISECONDS);
+            }
+
+            public static class packed_timestamp {
+                static Config cfg = rank.cfg.getObject("packed-timestamp").toConfig();
+
+                public static int score_bits = cfg.getInt("score-bits");
+                public static int time_bits = cfg.getInt("time-bits");
+                public static long epoch = cfg.getLong("epoch");
+                public static long time_unit = cfg.getDuration("time-unit", TimeUnit.MILLISECONDS);
+            }
+        }
+
 //        public static class http {
 //
 //            Config cfg = mp.cfg.getObject("http").toConfig();
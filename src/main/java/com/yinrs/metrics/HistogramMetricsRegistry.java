@@ -0,0 +1,70 @@
+package com.yinrs.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In process registry keeping a {@link LatencyHistogram} per latency name, for callers
+ * that read or log the numbers themselves instead of shipping them to a metrics backend.
+ */
+public class HistogramMetricsRegistry implements MetricsRegistry {
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordLatency(String name, long nanos) {
+        histograms.computeIfAbsent(name, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void incrementCounter(String name) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return the histogram of the name, null if nothing was recorded under it
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.get(name);
+    }
+
+    public long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the current value of the gauge, null if no gauge has the name
+     */
+    public Long gauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? null : gauge.getAsLong();
+    }
+
+    public void reset() {
+        histograms.clear();
+        counters.clear();
+    }
+
+    /**
+     * @return one line per metric, sorted by name
+     */
+    public String report() {
+        Map<String, String> lines = new TreeMap<>();
+        histograms.forEach((name, histogram) -> lines.put(name, histogram.toString()));
+        counters.forEach((name, counter) -> lines.put(name, "count=" + counter.sum()));
+        gauges.forEach((name, gauge) -> lines.put(name, "value=" + gauge.getAsLong()));
+        StringBuilder sb = new StringBuilder();
+        lines.forEach((name, line) -> sb.append(name).append(' ').append(line).append('\n'));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.yinrs.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Sink of the client side metrics, plug an implementation in with
+ * {@link com.yinrs.cache.redis.RedisManager#setMetrics(MetricsRegistry)}.
+ * Implementations must be thread safe and cheap, they sit on the path of every redis command.
+ */
+public interface MetricsRegistry {
+    MetricsRegistry NOOP = new NoopMetricsRegistry();
+
+    /**
+     * @param name  metric name, e.g. redis.cmd.zadd
+     * @param nanos elapsed time in nanoseconds
+     */
+    void recordLatency(String name, long nanos);
+
+    void incrementCounter(String name);
+
+    /**
+     * Registers a value read on demand, registering the same name again replaces the supplier.
+     */
+    void registerGauge(String name, LongSupplier gauge);
+}
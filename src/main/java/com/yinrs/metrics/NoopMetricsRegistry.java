@@ -0,0 +1,20 @@
+package com.yinrs.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Drops every metric, the default registry.
+ */
+final class NoopMetricsRegistry implements MetricsRegistry {
+    @Override
+    public void recordLatency(String name, long nanos) {
+    }
+
+    @Override
+    public void incrementCounter(String name) {
+    }
+
+    @Override
+    public void registerGauge(String name, LongSupplier gauge) {
+    }
+}
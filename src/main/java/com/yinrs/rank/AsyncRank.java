@@ -0,0 +1,129 @@
+package com.yinrs.rank;
+
+import com.yinrs.config.CC;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non blocking view of a {@link Rank}: every call runs on an executor and completes a future,
+ * so the calling thread never waits for a redis connection or round trip.
+ * Calls are not ordered against each other, chain the futures when one call depends on another.
+ */
+public final class AsyncRank {
+    private final Rank rank;
+    private final Executor executor;
+
+    /**
+     * @param executor runs the blocking calls, size it to the redis connection pool
+     */
+    public AsyncRank(Rank rank, Executor executor) {
+        this.rank = rank;
+        this.executor = executor;
+    }
+
+    /**
+     * Uses the shared executor of rank.async-threads daemon threads.
+     */
+    public AsyncRank(Rank rank) {
+        this(rank, DefaultExecutor.INSTANCE);
+    }
+
+    public CompletableFuture<Void> insertOrUpdate(String nodeId, double nodeScores) {
+        return CompletableFuture.runAsync(() -> rank.insertOrUpdate(nodeId, nodeScores), executor);
+    }
+
+    public CompletableFuture<Long> insertOrUpdate(List<RankNode> list) {
+        return supply(() -> rank.insertOrUpdate(list));
+    }
+
+    public CompletableFuture<Double> incr(String nodeId, double nodeScores) {
+        return supply(() -> rank.incr(nodeId, nodeScores));
+    }
+
+    public CompletableFuture<Double> getNodeVal(String nodeId) {
+        return supply(() -> rank.getNodeVal(nodeId));
+    }
+
+    public CompletableFuture<Long> remove(String... nodeIds) {
+        return supply(() -> rank.remove(nodeIds));
+    }
+
+    public CompletableFuture<Long> removeByRank(long start, long end) {//start with 0
+        return supply(() -> rank.removeByRank(start, end));
+    }
+
+    public CompletableFuture<Long> removeByScore(double minNodeScores, double maxNodeScores) {
+        return supply(() -> rank.removeByScore(minNodeScores, maxNodeScores));
+    }
+
+    public CompletableFuture<Long> getASCRank(String nodeId) {//start with 0
+        return supply(() -> rank.getASCRank(nodeId));
+    }
+
+    public CompletableFuture<Long> getDESCRank(String nodeId) {//start with 0
+        return supply(() -> rank.getDESCRank(nodeId));
+    }
+
+    public CompletableFuture<List<RankNode>> ascRangeByRankWithScores(long start, long end) {//start with 0
+        return supply(() -> rank.ascRangeByRankWithScores(start, end));
+    }
+
+    public CompletableFuture<List<RankNode>> descRangeByRankWithScores(long start, long end) {//start with 0
+        return supply(() -> rank.descRangeByRankWithScores(start, end));
+    }
+
+    public CompletableFuture<RankPage> ascRangePage(long start, long end) {//start with 0
+        return supply(() -> rank.ascRangePage(start, end));
+    }
+
+    public CompletableFuture<RankPage> descRangePage(long start, long end) {//start with 0
+        return supply(() -> rank.descRangePage(start, end));
+    }
+
+    public CompletableFuture<List<RankNode>> ascNeighborhood(String nodeId, int above, int below) {
+        return supply(() -> rank.ascNeighborhood(nodeId, above, below));
+    }
+
+    public CompletableFuture<List<RankNode>> descNeighborhood(String nodeId, int above, int below) {
+        return supply(() -> rank.descNeighborhood(nodeId, above, below));
+    }
+
+    public CompletableFuture<Long> countAll() {
+        return supply(rank::countAll);
+    }
+
+    public CompletableFuture<Long> countBy(double minNodeScores, double maxNodeScores) {
+        return supply(() -> rank.countBy(minNodeScores, maxNodeScores));
+    }
+
+    public CompletableFuture<Long> removeAll() {
+        return supply(rank::removeAll);
+    }
+
+    public Rank getRank() {
+        return rank;
+    }
+
+    public String getRankName() {
+        return rank.getRankName();
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    private static final class DefaultExecutor {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(CC.mp.rank.async_threads, r -> {
+            Thread thread = new Thread(r, "rank-async-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package com.yinrs.rank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Batch for ranks without a pipeline, execute() simply calls the rank once per queued operation.
+ */
+class DirectRankBatch extends RankBatch {
+    private final Rank rank;
+    private List<Runnable> operations = new ArrayList<>();
+
+    DirectRankBatch(Rank rank) {
+        this.rank = rank;
+    }
+
+    @Override
+    public CompletableFuture<Void> insertOrUpdate(String nodeId, double nodeScores) {
+        return add(() -> {
+            rank.insertOrUpdate(nodeId, nodeScores);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Double> incr(String nodeId, double nodeScores) {
+        return add(() -> rank.incr(nodeId, nodeScores));
+    }
+
+    @Override
+    public CompletableFuture<Long> remove(String... nodeIds) {
+        return add(() -> rank.remove(nodeIds));
+    }
+
+    @Override
+    public CompletableFuture<Double> getNodeVal(String nodeId) {
+        return add(() -> rank.getNodeVal(nodeId));
+    }
+
+    @Override
+    public void execute() {
+        List<Runnable> pending = operations;
+        operations = new ArrayList<>();
+        for (Runnable operation : pending) {
+            operation.run();
+        }
+    }
+
+    private <T> CompletableFuture<T> add(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        operations.add(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -1,8 +1,14 @@
 package com.yinrs.rank;
 
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class Rank {
+    private static final int SNAPSHOT_PAGE = 10000;
     private String rankName;
 
     protected Rank(String rankName) {
@@ -31,12 +37,125 @@ public abstract class Rank {
 
     public abstract List<RankNode> descRangeByRankWithScores(long start, long end);//start with 0
 
+    /**
+     * Same nodes as {@link #ascRangeByRankWithScores(long, long)} as one compact {@link RankPage}, null if the rank cannot be read.
+     * This default copies the nodes of the list, ranks override it to fill the page directly.
+     */
+    public RankPage ascRangePage(long start, long end) {//start with 0
+        return RankPage.of(ascRangeByRankWithScores(start, end), start);
+    }
+
+    /**
+     * Same nodes as {@link #descRangeByRankWithScores(long, long)} as one compact {@link RankPage}, see {@link #ascRangePage(long, long)}.
+     */
+    public RankPage descRangePage(long start, long end) {//start with 0
+        return RankPage.of(descRangeByRankWithScores(start, end), start);
+    }
+
     public abstract Long countAll();
 
     public abstract Long countBy(double minNodeScores, double maxNodeScores);
 
     public abstract Long removeAll();
 
+    /**
+     * Returns the node together with up to above nodes ranked right before it and up to below nodes
+     * ranked right after it, from the highest score, each carrying its rank. Null if the node is not in the rank.
+     * This default reads the rank and then the range, ranks able to do both at once override it.
+     */
+    public List<RankNode> descNeighborhood(String nodeId, int above, int below) {
+        return neighborhood(true, nodeId, above, below);
+    }
+
+    /**
+     * Same as {@link #descNeighborhood(String, int, int)} from the lowest score.
+     */
+    public List<RankNode> ascNeighborhood(String nodeId, int above, int below) {
+        return neighborhood(false, nodeId, above, below);
+    }
+
+    private List<RankNode> neighborhood(boolean desc, String nodeId, int above, int below) {
+        checkNeighborhood(above, below);
+        Long rank = desc ? getDESCRank(nodeId) : getASCRank(nodeId);
+        if (rank == null) return null;
+        long start = Math.max(rank - above, 0);
+        return desc ? descRangeByRankWithScores(start, rank + below) : ascRangeByRankWithScores(start, rank + below);
+    }
+
+    protected static void checkNeighborhood(int above, int below) {
+        if (above < 0 || below < 0) {
+            throw new IllegalArgumentException("above and below must not be negative");
+        }
+    }
+
+    /**
+     * Starts a batch of operations on this rank, they are only applied when the batch is executed.
+     */
+    public RankBatch batch() {
+        return new DirectRankBatch(this);
+    }
+
+    /**
+     * Non blocking view of this rank on the shared rank.async-threads executor, see {@link AsyncRank}.
+     */
+    public AsyncRank async() {
+        return new AsyncRank(this);
+    }
+
+    /**
+     * Lazily walks the whole rank from the highest score, fetching pageSize nodes at a time,
+     * so memory stays bounded by one page. Nodes moving between pages while walking may be
+     * seen twice or skipped.
+     */
+    public Stream<RankNode> streamDesc(int pageSize) {
+        return stream(true, pageSize);
+    }
+
+    /**
+     * Lazily walks the whole rank from the lowest score, see {@link #streamDesc(int)}.
+     */
+    public Stream<RankNode> streamAsc(int pageSize) {
+        return stream(false, pageSize);
+    }
+
+    private Stream<RankNode> stream(boolean desc, int pageSize) {
+        RankPageIterator iterator = new RankPageIterator(this, desc, pageSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Writes every node to a {@link RankSnapshot} file at path, replacing it once complete.
+     * This default reads the rank page by page like {@link #streamAsc(int)}, so nodes moving while it runs
+     * may be written twice or skipped; ranks able to hold their writes meanwhile override it.
+     */
+    public void snapshotTo(Path path) {
+        try (RankSnapshot.Writer writer = RankSnapshot.create(path, rankName, false)) {
+            for (long start = 0; ; start += SNAPSHOT_PAGE) {
+                RankPage page = ascRangePage(start, start + SNAPSHOT_PAGE - 1);
+                if (page == null) {
+                    throw new IllegalStateException("cannot read " + rankName + " to snapshot it");
+                }
+                for (int i = 0; i < page.size(); i++) {
+                    writer.add(page.getNodeId(i), page.getNodeScore(i));
+                }
+                if (page.size() < SNAPSHOT_PAGE) break;
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Replaces the nodes of the rank by those of the snapshot, from where its cursor is.
+     * This default removes every node then inserts the snapshot in batches, so readers may see the rank
+     * partially loaded; ranks able to swap the nodes in at once override it.
+     */
+    public void restore(RankSnapshot snapshot) {
+        removeAll();
+        for (RankPage page = snapshot.nextPage(SNAPSHOT_PAGE); page.size() > 0; page = snapshot.nextPage(SNAPSHOT_PAGE)) {
+            insertOrUpdate(page.toRankNodes());
+        }
+    }
+
     public String getRankName() {
         return rankName;
     }
@@ -0,0 +1,22 @@
+package com.yinrs.rank;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Queues operations on one rank and applies them together on {@link #execute()}.
+ * Every queued operation returns a future that is completed by execute().
+ * <p>
+ * warning:this class is not thread safe!
+ */
+public abstract class RankBatch {
+
+    public abstract CompletableFuture<Void> insertOrUpdate(String nodeId, double nodeScores);
+
+    public abstract CompletableFuture<Double> incr(String nodeId, double nodeScores);
+
+    public abstract CompletableFuture<Long> remove(String... nodeIds);
+
+    public abstract CompletableFuture<Double> getNodeVal(String nodeId);
+
+    public abstract void execute();
+}
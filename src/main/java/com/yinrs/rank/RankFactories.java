@@ -0,0 +1,40 @@
+package com.yinrs.rank;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link RankFactory} of every rank type, loaded once from the ServiceLoader.
+ */
+public final class RankFactories {
+    private static final Map<Class<?>, RankFactory<?>> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        for (RankFactory<?> factory : ServiceLoader.load(RankFactory.class, RankFactories.class.getClassLoader())) {
+            FACTORIES.put(factory.rankType(), factory);
+        }
+    }
+
+    private RankFactories() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if no factory creates the rank type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Rank> RankFactory<T> get(Class<T> rankType) {
+        RankFactory<T> factory = (RankFactory<T>) FACTORIES.get(rankType);
+        if (factory == null) {
+            throw new IllegalArgumentException("no RankFactory registered for " + rankType.getName());
+        }
+        return factory;
+    }
+
+    /**
+     * Registers a factory without the ServiceLoader, replacing the one of the same rank type.
+     */
+    public static void register(RankFactory<?> factory) {
+        FACTORIES.put(factory.rankType(), factory);
+    }
+}
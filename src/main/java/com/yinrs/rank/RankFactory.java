@@ -0,0 +1,23 @@
+package com.yinrs.rank;
+
+import com.yinrs.cache.CacheManager;
+
+/**
+ * Creates the ranks of one type for its manager. Implementations are found with {@link java.util.ServiceLoader}:
+ * list them in META-INF/services/com.yinrs.rank.RankFactory, with a public no argument constructor.
+ * A rank type has one factory, a factory listed later replaces an earlier one of the same type.
+ */
+public interface RankFactory<T extends Rank> {
+    Class<T> rankType();
+
+    T create(String rankName);
+
+    /**
+     * Creates the rank on the given cache instead of the default one of its type.
+     *
+     * @throws UnsupportedOperationException if the ranks of this type do not live in a cache
+     */
+    default T create(String rankName, CacheManager cache) {
+        throw new UnsupportedOperationException(rankType().getName() + " does not live in a cache");
+    }
+}
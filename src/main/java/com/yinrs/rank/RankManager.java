@@ -1,5 +1,6 @@
 package com.yinrs.rank;
 
+import java.nio.file.Path;
 import java.util.List;
 
 public interface RankManager<T extends Rank> {
@@ -20,5 +21,21 @@ public interface RankManager<T extends Rank> {
     void removeAll();
 
     void move(T src, T tgt, String nodeId);
+
+    /**
+     * Registers the rank named in the {@link RankSnapshot} at path and replaces its nodes by the snapshot,
+     * see {@link Rank#restore(RankSnapshot)}.
+     *
+     * @return the restored rank, null if the snapshot names no rank
+     */
+    default T restoreFrom(Path path) {
+        try (RankSnapshot snapshot = RankSnapshot.open(path)) {
+            T rank = register(snapshot.getRankName());
+            if (rank != null) {
+                rank.restore(snapshot);
+            }
+            return rank;
+        }
+    }
 }
 
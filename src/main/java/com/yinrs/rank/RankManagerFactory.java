@@ -1,22 +1,58 @@
 package com.yinrs.rank;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
+/**
+ * Registry of the manager of every rank manager type, loaded once from the ServiceLoader, see {@link RankManagerProvider}.
+ * A manager type without a provider is resolved by its public static instance() method.
+ */
 public class RankManagerFactory {
+    private static final Map<Class<?>, Supplier<? extends RankManager>> MANAGERS = new ConcurrentHashMap<>();
+
+    static {
+        for (RankManagerProvider<?> provider : ServiceLoader.load(RankManagerProvider.class, RankManagerFactory.class.getClassLoader())) {
+            MANAGERS.put(provider.managerType(), provider::instance);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the manager type has neither a provider nor a static instance() method
+     */
     public static <T extends RankManager> T getInstance(Class<T> clazz) {
+        Supplier<? extends RankManager> instance = MANAGERS.computeIfAbsent(clazz, RankManagerFactory::staticInstance);
+        return clazz.cast(instance.get());
+    }
+
+    /**
+     * Makes a manager type available to {@link #getInstance(Class)} without the ServiceLoader,
+     * instance usually returns its singleton.
+     */
+    public static <T extends RankManager> void register(Class<T> clazz, Supplier<T> instance) {
+        MANAGERS.put(clazz, instance);
+    }
+
+    private static Supplier<? extends RankManager> staticInstance(Class<?> clazz) {
+        Method method;
         try {
-            Method instance = clazz.getDeclaredMethod("instance");
-            instance.setAccessible(true);
-            return (T) instance.invoke(null);
+            method = clazz.getDeclaredMethod("instance");
+            method.setAccessible(true);
         } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } finally {
+            throw new IllegalArgumentException("no RankManager registered for " + clazz.getName(), e);
+        }
+        if (!Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalArgumentException("no RankManager registered for " + clazz.getName());
         }
-        return null;
+        return () -> {
+            try {
+                return (RankManager) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot get the RankManager " + clazz.getName(), e);
+            }
+        };
     }
-}
\ No newline at end of file
+}
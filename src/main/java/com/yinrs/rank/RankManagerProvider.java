@@ -0,0 +1,15 @@
+package com.yinrs.rank;
+
+/**
+ * Gives {@link RankManagerFactory} the manager of one type. Implementations are found with
+ * {@link java.util.ServiceLoader}: list them in META-INF/services/com.yinrs.rank.RankManagerProvider,
+ * with a public no argument constructor. A provider listed later replaces an earlier one of the same type.
+ */
+public interface RankManagerProvider<T extends RankManager> {
+    Class<T> managerType();
+
+    /**
+     * @return the manager, usually its singleton
+     */
+    T instance();
+}
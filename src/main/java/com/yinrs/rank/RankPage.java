@@ -0,0 +1,206 @@
+package com.yinrs.rank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact result of a range query: the node at index i has nodeId ids[i], score scores[i]
+ * and rank startRank + i. Holds two arrays instead of one {@link RankNode} per node.
+ */
+public final class RankPage {
+    private static final RankPage EMPTY = new RankPage(new String[0], new double[0], 0);
+
+    private final String[] ids;
+    private final double[] scores;
+    private final long startRank;
+
+    public RankPage(String[] ids, double[] scores, long startRank) {
+        if (ids.length != scores.length) {
+            throw new IllegalArgumentException("ids and scores must have the same length");
+        }
+        this.ids = ids;
+        this.scores = scores;
+        this.startRank = startRank;
+    }
+
+    public static RankPage empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param startRank rank of the first node when the nodes carry none
+     * @return the page of the nodes, null if nodes is null
+     */
+    public static RankPage of(List<RankNode> nodes, long startRank) {
+        if (nodes == null) return null;
+        if (!nodes.isEmpty() && nodes.get(0).getRank() != null) {
+            startRank = nodes.get(0).getRank();
+        }
+        String[] ids = new String[nodes.size()];
+        double[] scores = new double[nodes.size()];
+        int i = 0;
+        for (RankNode node : nodes) {
+            ids[i] = node.getNodeId();
+            scores[i++] = node.getNodeScore();
+        }
+        return new RankPage(ids, scores, startRank);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public String getNodeId(int i) {
+        return ids[i];
+    }
+
+    public double getNodeScore(int i) {
+        return scores[i];
+    }
+
+    public long getRank(int i) {
+        return startRank + i;
+    }
+
+    public long getStartRank() {
+        return startRank;
+    }
+
+    /**
+     * The backing arrays, not copied.
+     */
+    public String[] getIds() {
+        return ids;
+    }
+
+    public double[] getScores() {
+        return scores;
+    }
+
+    public List<RankNode> toRankNodes() {
+        List<RankNode> list = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            list.add(new RankNode(ids[i], startRank + i, scores[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Writes the page as a json array of {"nodeId":..,"rank":..,"nodeScore":..}, the fields of {@link RankNode}.
+     * Infinite scores are written as null, as {@link com.yinrs.tools.Jsons} does.
+     */
+    public void writeTo(Appendable out) {
+        try {
+            out.append('[');
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) out.append(',');
+                out.append("{\"nodeId\":");
+                appendJsonString(out, ids[i]);
+                out.append(",\"rank\":").append(Long.toString(startRank + i));
+                double score = scores[i];
+                out.append(",\"nodeScore\":").append(Double.isNaN(score) || Double.isInfinite(score) ? "null" : Double.toString(score)).append('}');
+            }
+            out.append(']');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the page in binary: int size, long startRank, then per node an int utf-8 length,
+     * the utf-8 bytes of the nodeId and the double score.
+     *
+     * @throws java.nio.BufferOverflowException if the buffer has less than {@link #binarySize()} bytes remaining
+     */
+    public void writeTo(ByteBuffer out) {
+        out.putInt(ids.length);
+        out.putLong(startRank);
+        for (int i = 0; i < ids.length; i++) {
+            byte[] id = ids[i].getBytes(StandardCharsets.UTF_8);
+            out.putInt(id.length);
+            out.put(id);
+            out.putDouble(scores[i]);
+        }
+    }
+
+    /**
+     * Reads a page written by {@link #writeTo(ByteBuffer)}.
+     */
+    public static RankPage readFrom(ByteBuffer in) {
+        int size = in.getInt();
+        long startRank = in.getLong();
+        String[] ids = new String[size];
+        double[] scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            byte[] id = new byte[in.getInt()];
+            in.get(id);
+            ids[i] = new String(id, StandardCharsets.UTF_8);
+            scores[i] = in.getDouble();
+        }
+        return new RankPage(ids, scores, startRank);
+    }
+
+    /**
+     * @return the bytes {@link #writeTo(ByteBuffer)} writes
+     */
+    public int binarySize() {
+        int size = Integer.BYTES + Long.BYTES;
+        for (String id : ids) {
+            size += Integer.BYTES + utf8Length(id) + Double.BYTES;
+        }
+        return size;
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void appendJsonString(Appendable out, String s) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
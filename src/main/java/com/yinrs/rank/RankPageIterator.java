@@ -0,0 +1,51 @@
+package com.yinrs.rank;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Walks a rank page by page, a page is only fetched once the previous one has been consumed.
+ */
+class RankPageIterator implements Iterator<RankNode> {
+    private final Rank rank;
+    private final boolean desc;
+    private final int pageSize;
+    private long start;
+    private Iterator<RankNode> page;
+    private boolean lastPage;
+
+    RankPageIterator(Rank rank, boolean desc, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.rank = rank;
+        this.desc = desc;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page == null || !page.hasNext()) {
+            if (lastPage) return false;
+            long end = start + pageSize - 1;
+            List<RankNode> nodes = desc ? rank.descRangeByRankWithScores(start, end) : rank.ascRangeByRankWithScores(start, end);
+            if (Objects.isNull(nodes)) {
+                throw new IllegalStateException("cannot read rank " + rank.getRankName() + " from " + start + " to " + end);
+            }
+            lastPage = nodes.size() < pageSize;
+            start += pageSize;
+            page = nodes.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public RankNode next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+}
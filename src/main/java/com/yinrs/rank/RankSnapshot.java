@@ -0,0 +1,332 @@
+package com.yinrs.rank;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Snapshot file of a rank, read through a memory mapping. Binary, big endian: int magic "RKSN", short version,
+ * short flags, long number of nodes, int utf-8 length and utf-8 bytes of the rank name, then the nodes from the
+ * lowest score. With the numeric ids flag a node is its long id and double score, 16 bytes; otherwise it is
+ * written like in {@link RankPage#writeTo(ByteBuffer)}: int utf-8 length, utf-8 bytes of the nodeId, double score.
+ * <p>
+ * Reading is a cursor: {@link #next()} moves to the next node, whose fields the getters then return.
+ * The file is mapped in windows of up to 1GB, released when the snapshot is collected.
+ * <p>
+ * warning:this class is not thread safe!
+ */
+public final class RankSnapshot implements Closeable {
+    private static final int MAGIC = 0x524B534E;
+    private static final short VERSION = 1;
+    private static final short NUMERIC_IDS = 1;
+    private static final int HEADER = Integer.BYTES + 2 * Short.BYTES + Long.BYTES;
+    private static final long WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+    private final String rankName;
+    private final boolean numericIds;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long read;
+    private String nodeId;
+    private long longNodeId;
+    private double nodeScore;
+
+    private RankSnapshot(FileChannel channel, Path path) throws IOException {
+        this.channel = channel;
+        if (channel.size() < HEADER) {
+            throw new IllegalArgumentException("not a rank snapshot: " + path);
+        }
+        map(0);
+        if (window.getInt() != MAGIC || window.getShort() != VERSION) {
+            throw new IllegalArgumentException("not a rank snapshot: " + path);
+        }
+        numericIds = (window.getShort() & NUMERIC_IDS) != 0;
+        size = window.getLong();
+        rankName = readString();
+    }
+
+    /**
+     * Maps the snapshot file written by a {@link Writer}.
+     *
+     * @throws IllegalArgumentException if the file is not a rank snapshot
+     */
+    public static RankSnapshot open(Path path) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new RankSnapshot(channel, path);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts writing a snapshot, the file at path is only replaced on {@link Writer#commit()}.
+     *
+     * @param numericIds whether the nodes are added with {@link Writer#add(long, double)}
+     */
+    public static Writer create(Path path, String rankName, boolean numericIds) {
+        return new Writer(path, rankName, numericIds);
+    }
+
+    public String getRankName() {
+        return rankName;
+    }
+
+    /**
+     * @return true if the node ids are longs, readable with {@link #getLongNodeId()}
+     */
+    public boolean hasNumericIds() {
+        return numericIds;
+    }
+
+    /**
+     * @return the number of nodes in the snapshot
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Moves to the next node.
+     *
+     * @return false if every node was read
+     */
+    public boolean next() {
+        if (read == size) return false;
+        try {
+            if (numericIds) {
+                ensure(Long.BYTES + Double.BYTES);
+                longNodeId = window.getLong();
+                nodeId = null;
+            } else {
+                nodeId = readString();
+            }
+            ensure(Double.BYTES);
+            nodeScore = window.getDouble();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        read++;
+        return true;
+    }
+
+    public String getNodeId() {
+        if (nodeId == null) {
+            nodeId = Long.toString(longNodeId);
+        }
+        return nodeId;
+    }
+
+    /**
+     * @throws IllegalStateException if the ids of the snapshot are not numeric
+     */
+    public long getLongNodeId() {
+        if (!numericIds) {
+            throw new IllegalStateException("the node ids of " + rankName + " are not numeric");
+        }
+        return longNodeId;
+    }
+
+    public double getNodeScore() {
+        return nodeScore;
+    }
+
+    /**
+     * Reads up to max next nodes as a page, ranked from the lowest score.
+     *
+     * @return the page, empty once every node was read
+     */
+    public RankPage nextPage(int max) {
+        int count = (int) Math.min(max, size - read);
+        if (count <= 0) return RankPage.empty();
+        long startRank = read;
+        String[] ids = new String[count];
+        double[] scores = new double[count];
+        for (int i = 0; i < count; i++) {
+            next();
+            ids[i] = getNodeId();
+            scores[i] = nodeScore;
+        }
+        return new RankPage(ids, scores, startRank);
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        closeQuietly(channel);
+    }
+
+    private String readString() throws IOException {
+        ensure(Integer.BYTES);
+        int length = window.getInt();
+        ensure(length);
+        byte[] bytes = new byte[length];
+        window.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Remaps the window from the current position if it has less than the given bytes left.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() >= bytes) return;
+        map(windowStart + window.position());
+        if (window.remaining() < bytes) {
+            throw new IllegalArgumentException("truncated rank snapshot of " + rankName);
+        }
+    }
+
+    private void map(long position) throws IOException {
+        long length = Math.min(WINDOW, channel.size() - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file next to its path, streamed through a buffer as the size of the
+     * nodes is not known upfront, and moves it over the path on {@link #commit()}. Closing a writer that was not
+     * committed deletes the temporary file.
+     * <p>
+     * warning:this class is not thread safe!
+     */
+    public static final class Writer implements Closeable {
+        private static final int BUFFER = 1 << 20;
+
+        private final Path path;
+        private final Path temp;
+        private final boolean numericIds;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+        private FileChannel channel;
+        private long count;
+
+        private Writer(Path path, String rankName, boolean numericIds) {
+            this.path = path;
+            this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.numericIds = numericIds;
+            try {
+                channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                buffer.putInt(MAGIC);
+                buffer.putShort(VERSION);
+                buffer.putShort(numericIds ? NUMERIC_IDS : 0);
+                buffer.putLong(0);
+                putString(rankName);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void add(String nodeId, double nodeScore) {
+            if (numericIds) {
+                add(Long.parseLong(nodeId), nodeScore);
+                return;
+            }
+            try {
+                putString(nodeId);
+                reserve(Double.BYTES);
+                buffer.putDouble(nodeScore);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count++;
+        }
+
+        /**
+         * @throws IllegalStateException if the writer was not created for numeric ids
+         */
+        public void add(long nodeId, double nodeScore) {
+            if (!numericIds) {
+                throw new IllegalStateException("the snapshot has no numeric ids");
+            }
+            try {
+                reserve(Long.BYTES + Double.BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.putLong(nodeId);
+            buffer.putDouble(nodeScore);
+            count++;
+        }
+
+        /**
+         * Writes the number of nodes, syncs the file to disk and moves it over the path.
+         */
+        public void commit() {
+            try {
+                flush();
+                ByteBuffer size = ByteBuffer.allocate(Long.BYTES);
+                size.putLong(count).flip();
+                channel.write(size, Integer.BYTES + 2 * Short.BYTES);
+                channel.force(true);
+                channel.close();
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = null;//moved, nothing left for close() to delete
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (channel == null) return;
+            closeQuietly(channel);
+            channel = null;
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            reserve(Integer.BYTES);
+            buffer.putInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                channel.write(ByteBuffer.wrap(bytes));
+                return;
+            }
+            reserve(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
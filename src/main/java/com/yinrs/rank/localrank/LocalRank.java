@@ -0,0 +1,387 @@
+package com.yinrs.rank.localrank;
+
+import com.yinrs.rank.Rank;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankPage;
+import com.yinrs.rank.RankSnapshot;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process rank backed by an order-statistic skip list, with the same ordering
+ * and index semantics as {@link com.yinrs.rank.redisrank.RedisRank} but without
+ * any network round trip. The data lives only in this JVM.
+ */
+public class LocalRank extends Rank {
+    private final Map<String, Double> scores = new HashMap<>();
+    private final OrderStatisticSkipList skipList = new OrderStatisticSkipList();
+    private ReadWriteLock rwLock;
+    private Lock rLock;
+    private Lock wLock;
+
+    LocalRank(String rankName) {
+        super(rankName);
+        initLock();
+    }
+
+    static LocalRank getInstance(String rankName) {
+        return new LocalRank(rankName);
+    }
+
+    private void initLock() {
+        rwLock = new ReentrantReadWriteLock();
+        rLock = rwLock.readLock();
+        wLock = rwLock.writeLock();
+    }
+
+    @Override
+    public void insertOrUpdate(String nodeId, double nodeScores) {
+        wLock();
+        try {
+            put(nodeId, nodeScores);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Long insertOrUpdate(List<RankNode> list) {
+        wLock();
+        try {
+            if (!CollectionUtils.isEmpty(list)) {
+                long added = 0;
+                for (RankNode rankNode : list) {
+                    if (put(rankNode.getNodeId(), rankNode.getNodeScore())) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+        } finally {
+            wUnlock();
+        }
+        return null;
+    }
+
+    @Override
+    public Double incr(String nodeId, double nodeScores) {
+        wLock();
+        try {
+            Double oldVal = scores.get(nodeId);
+            double finalVal = Objects.nonNull(oldVal) ? oldVal + nodeScores : nodeScores;
+            put(nodeId, finalVal);
+            return finalVal;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Double getNodeVal(String nodeId) {
+        rLock();
+        try {
+            return scores.get(nodeId);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    Double getNodeValWithoutLock(String nodeId) {
+        return scores.get(nodeId);
+    }
+
+    @Override
+    public long remove(String... nodeIds) {
+        wLock();
+        try {
+            long removed = 0;
+            if (Objects.nonNull(nodeIds)) {
+                for (String nodeId : nodeIds) {
+                    Double oldVal = scores.remove(nodeId);
+                    if (Objects.nonNull(oldVal)) {
+                        skipList.delete(nodeId, oldVal);
+                        removed++;
+                    }
+                }
+            }
+            return removed;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public long removeByRank(long start, long end) {
+        wLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return 0;
+            return removeNodes(skipList.deleteRangeByRank(range[0] + 1, range[1] + 1));
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public long removeByScore(double minNodeScores, double maxNodeScores) {
+        wLock();
+        try {
+            long first = skipList.countBelow(minNodeScores, false) + 1;
+            long last = skipList.countBelow(maxNodeScores, true);
+            if (first > last) return 0;
+            return removeNodes(skipList.deleteRangeByRank(first, last));
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Long getASCRank(String nodeId) {
+        rLock();
+        try {
+            Double score = scores.get(nodeId);
+            if (Objects.isNull(score)) return null;
+            return skipList.rank(nodeId, score) - 1;
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long getDESCRank(String nodeId) {
+        rLock();
+        try {
+            Double score = scores.get(nodeId);
+            if (Objects.isNull(score)) return null;
+            return skipList.length() - skipList.rank(nodeId, score);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public List<RankNode> ascRangeByRankWithScores(long start, long end) {
+        rLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return new ArrayList<>(0);
+            List<RankNode> list = new ArrayList<>((int) (range[1] - range[0] + 1));
+            OrderStatisticSkipList.Node x = skipList.byRank(range[0] + 1);
+            for (long rank = range[0]; rank <= range[1]; rank++) {
+                list.add(new RankNode(x.nodeId, rank, x.score));
+                x = x.forward[0];
+            }
+            return list;
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public List<RankNode> descRangeByRankWithScores(long start, long end) {
+        rLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return new ArrayList<>(0);
+            List<RankNode> list = new ArrayList<>((int) (range[1] - range[0] + 1));
+            OrderStatisticSkipList.Node x = skipList.byRank(skipList.length() - range[0]);
+            for (long rank = range[0]; rank <= range[1]; rank++) {
+                list.add(new RankNode(x.nodeId, rank, x.score));
+                x = x.backward;
+            }
+            return list;
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public RankPage ascRangePage(long start, long end) {
+        rLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return RankPage.empty();
+            int size = (int) (range[1] - range[0] + 1);
+            String[] ids = new String[size];
+            double[] scores = new double[size];
+            OrderStatisticSkipList.Node x = skipList.byRank(range[0] + 1);
+            for (int i = 0; i < size; i++) {
+                ids[i] = x.nodeId;
+                scores[i] = x.score;
+                x = x.forward[0];
+            }
+            return new RankPage(ids, scores, range[0]);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public RankPage descRangePage(long start, long end) {
+        rLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return RankPage.empty();
+            int size = (int) (range[1] - range[0] + 1);
+            String[] ids = new String[size];
+            double[] scores = new double[size];
+            OrderStatisticSkipList.Node x = skipList.byRank(skipList.length() - range[0]);
+            for (int i = 0; i < size; i++) {
+                ids[i] = x.nodeId;
+                scores[i] = x.score;
+                x = x.backward;
+            }
+            return new RankPage(ids, scores, range[0]);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public List<RankNode> ascNeighborhood(String nodeId, int above, int below) {
+        rLock();
+        try {
+            return super.ascNeighborhood(nodeId, above, below);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public List<RankNode> descNeighborhood(String nodeId, int above, int below) {
+        rLock();
+        try {
+            return super.descNeighborhood(nodeId, above, below);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long countAll() {
+        rLock();
+        try {
+            return skipList.length();
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long countBy(double minNodeScores, double maxNodeScores) {
+        rLock();
+        try {
+            long count = skipList.countBelow(maxNodeScores, true) - skipList.countBelow(minNodeScores, false);
+            return Math.max(count, 0);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long removeAll() {
+        wLock();
+        try {
+            long removed = skipList.length();
+            skipList.clear();
+            scores.clear();
+            return removed;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    /**
+     * Holds the read lock while writing, so the snapshot is consistent.
+     */
+    @Override
+    public void snapshotTo(Path path) {
+        rLock();
+        try {
+            super.snapshotTo(path);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    /**
+     * Loads the snapshot under the write lock, readers see the old nodes or the restored ones.
+     */
+    @Override
+    public void restore(RankSnapshot snapshot) {
+        wLock();
+        try {
+            skipList.clear();
+            scores.clear();
+            while (snapshot.next()) {
+                put(snapshot.getNodeId(), snapshot.getNodeScore());
+            }
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o);
+    }
+
+    /**
+     * @return true if the node was added, false if an existing node was updated
+     */
+    private boolean put(String nodeId, double nodeScores) {
+        if (Double.isNaN(nodeScores)) {
+            throw new IllegalArgumentException("score is not a number, nodeId=" + nodeId);
+        }
+        Double oldVal = scores.put(nodeId, nodeScores);
+        if (Objects.nonNull(oldVal)) {
+            if (oldVal == nodeScores) return false;
+            skipList.delete(nodeId, oldVal);
+        }
+        skipList.insert(nodeId, nodeScores);
+        return Objects.isNull(oldVal);
+    }
+
+    private long removeNodes(List<OrderStatisticSkipList.Node> nodes) {
+        for (OrderStatisticSkipList.Node node : nodes) {
+            scores.remove(node.nodeId);
+        }
+        return nodes.size();
+    }
+
+    /**
+     * Normalizes a redis style index range (negative index counts from the tail).
+     *
+     * @return 0-based [start, end] or null if the range is empty
+     */
+    private long[] range(long start, long end) {
+        long length = skipList.length();
+        if (start < 0) start = length + start;
+        if (end < 0) end = length + end;
+        if (start < 0) start = 0;
+        if (start > end || start >= length) return null;
+        if (end >= length) end = length - 1;
+        return new long[]{start, end};
+    }
+
+    void wLock() {
+        wLock.lock();
+    }
+
+    void wUnlock() {
+        wLock.unlock();
+    }
+
+    void rLock() {
+        rLock.lock();
+    }
+
+    void rUnlock() {
+        rLock.unlock();
+    }
+}
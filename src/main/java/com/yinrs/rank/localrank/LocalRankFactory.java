@@ -0,0 +1,15 @@
+package com.yinrs.rank.localrank;
+
+import com.yinrs.rank.RankFactory;
+
+public class LocalRankFactory implements RankFactory<LocalRank> {
+    @Override
+    public Class<LocalRank> rankType() {
+        return LocalRank.class;
+    }
+
+    @Override
+    public LocalRank create(String rankName) {
+        return LocalRank.getInstance(rankName);
+    }
+}
@@ -0,0 +1,121 @@
+package com.yinrs.rank.localrank;
+
+import com.yinrs.rank.RankFactories;
+import com.yinrs.rank.RankFactory;
+import com.yinrs.rank.RankManager;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LocalRankManager implements RankManager<LocalRank> {
+    private static LocalRankManager singleton = null;
+    private final Map<String, LocalRank> map = new ConcurrentHashMap<>();
+    private final RankFactory<LocalRank> factory = RankFactories.get(LocalRank.class);
+
+    public static LocalRankManager instance() {
+        if (singleton == null) {
+            synchronized (LocalRankManager.class) {
+                if (singleton == null) {
+                    singleton = new LocalRankManager();
+                }
+            }
+        }
+        return singleton;
+    }
+
+    LocalRankManager() {
+    }
+
+    @Override
+    public synchronized LocalRank register(String rankName) {
+        if (StringUtils.isEmpty(rankName)) return null;
+        rankName = rankName.trim();
+
+        LocalRank rank = map.get(rankName);
+        if (Objects.isNull(rank)) {
+            rank = factory.create(rankName);
+            map.put(rankName, rank);
+        }
+        return rank;
+    }
+
+    @Override
+    public List<LocalRank> ranks() {
+        return new ArrayList<>(map.values());
+    }
+
+    @Override
+    public Boolean isRank(String rankName) {
+        if (StringUtils.isEmpty(rankName)) return false;
+        return map.containsKey(rankName.trim());
+    }
+
+    @Override
+    public Boolean isRank(LocalRank rank) {
+        if (Objects.isNull(rank) || StringUtils.isEmpty(rank.getRankName())) return false;
+        return map.get(rank.getRankName()) == rank;
+    }
+
+    @Override
+    public LocalRank find(String rankName) {
+        if (StringUtils.isEmpty(rankName)) return null;
+        return map.get(rankName.trim());
+    }
+
+    @Override
+    public void remove(String rankName) {
+        if (StringUtils.isEmpty(rankName)) return;
+        LocalRank rank = map.remove(rankName.trim());
+        if (Objects.nonNull(rank)) {
+            rank.removeAll();
+        }
+    }
+
+    @Override
+    public void remove(LocalRank rank) {
+        if (Objects.isNull(rank)) return;
+        if (map.remove(rank.getRankName(), rank)) {
+            rank.removeAll();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        for (LocalRank rank : ranks()) {
+            remove(rank);
+        }
+    }
+
+    @Override
+    public void move(LocalRank src, LocalRank tgt, String nodeId) {
+        if (isRank(src) && isRank(tgt) && !src.equals(tgt)) {
+            boolean srcFirst = src.getRankName().compareTo(tgt.getRankName()) > 0;
+            if (srcFirst) {
+                src.wLock();
+                tgt.wLock();
+            } else {
+                tgt.wLock();
+                src.wLock();
+            }
+            try {
+                Double nodeVal = src.getNodeValWithoutLock(nodeId);
+                if (Objects.nonNull(nodeVal)) {
+                    tgt.insertOrUpdate(nodeId, nodeVal);
+                    src.remove(nodeId);
+                }
+            } finally {
+                if (srcFirst) {
+                    tgt.wUnlock();
+                    src.wUnlock();
+                } else {
+                    src.wUnlock();
+                    tgt.wUnlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.yinrs.rank.localrank;
+
+import com.yinrs.rank.RankManagerProvider;
+
+public class LocalRankManagerProvider implements RankManagerProvider<LocalRankManager> {
+    @Override
+    public Class<LocalRankManager> managerType() {
+        return LocalRankManager.class;
+    }
+
+    @Override
+    public LocalRankManager instance() {
+        return LocalRankManager.instance();
+    }
+}
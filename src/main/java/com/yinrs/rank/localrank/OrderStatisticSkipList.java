@@ -0,0 +1,241 @@
+package com.yinrs.rank.localrank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Order-statistic skip list with the same layout as the redis zskiplist:
+ * every forward pointer carries the number of nodes it jumps over, so rank
+ * lookups and lookups by rank are O(log n).
+ * Nodes are ordered by score, then by nodeId, exactly like a redis sorted set.
+ * <p>
+ * warning:this class is not thread safe!
+ * must be used with a lock, as LocalRank and InMemoryCacheManager do.
+ */
+public class OrderStatisticSkipList {
+    private static final int MAX_LEVEL = 32;
+    private static final double P = 0.25;
+
+    private final Node header = new Node(null, 0, MAX_LEVEL);
+    private int level = 1;
+    private long length;
+
+    public static final class Node {
+        final String nodeId;
+        final double score;
+        final Node[] forward;
+        final long[] span;
+        Node backward;
+
+        Node(String nodeId, double score, int level) {
+            this.nodeId = nodeId;
+            this.score = score;
+            this.forward = new Node[level];
+            this.span = new long[level];
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return the node ranked right after this one, null for the last
+         */
+        public Node next() {
+            return forward[0];
+        }
+
+        /**
+         * @return the node ranked right before this one, null for the first
+         */
+        public Node previous() {
+            return backward;
+        }
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public void insert(String nodeId, double score) {
+        Node[] update = new Node[MAX_LEVEL];
+        long[] rank = new long[MAX_LEVEL];
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.forward[i] != null && less(x.forward[i], score, nodeId)) {
+                rank[i] += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        int lvl = randomLevel();
+        if (lvl > level) {
+            for (int i = level; i < lvl; i++) {
+                rank[i] = 0;
+                update[i] = header;
+                update[i].span[i] = length;
+            }
+            level = lvl;
+        }
+        x = new Node(nodeId, score, lvl);
+        for (int i = 0; i < lvl; i++) {
+            x.forward[i] = update[i].forward[i];
+            update[i].forward[i] = x;
+            x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = lvl; i < level; i++) {
+            update[i].span[i]++;
+        }
+        x.backward = update[0] == header ? null : update[0];
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x;
+        }
+        length++;
+    }
+
+    public boolean delete(String nodeId, double score) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && less(x.forward[i], score, nodeId)) {
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        x = x.forward[0];
+        if (x != null && x.score == score && x.nodeId.equals(nodeId)) {
+            unlink(x, update);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 1-based rank, 0 if the node is not in the list
+     */
+    public long rank(String nodeId, double score) {
+        long rank = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && (less(x.forward[i], score, nodeId)
+                    || (x.forward[i].score == score && x.forward[i].nodeId.equals(nodeId)))) {
+                rank += x.span[i];
+                x = x.forward[i];
+            }
+            if (x != header && x.score == score && x.nodeId.equals(nodeId)) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param rank 1-based rank
+     */
+    public Node byRank(long rank) {
+        long traversed = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.forward[i];
+            }
+            if (traversed == rank) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of nodes with a score lower than (or equal to, when inclusive) the given score
+     */
+    public long countBelow(double score, boolean inclusive) {
+        long count = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null
+                    && (x.forward[i].score < score || (inclusive && x.forward[i].score == score))) {
+                count += x.span[i];
+                x = x.forward[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the nodes between the two 1-based ranks, both inclusive.
+     *
+     * @return the removed nodes
+     */
+    public List<Node> deleteRangeByRank(long start, long end) {
+        Node[] update = new Node[MAX_LEVEL];
+        long traversed = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && traversed + x.span[i] < start) {
+                traversed += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        traversed++;
+        x = x.forward[0];
+        List<Node> removed = new ArrayList<>();
+        while (x != null && traversed <= end) {
+            Node next = x.forward[0];
+            unlink(x, update);
+            removed.add(x);
+            traversed++;
+            x = next;
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            header.forward[i] = null;
+            header.span[i] = 0;
+        }
+        level = 1;
+        length = 0;
+    }
+
+    private void unlink(Node x, Node[] update) {
+        for (int i = 0; i < level; i++) {
+            if (update[i].forward[i] == x) {
+                update[i].span[i] += x.span[i] - 1;
+                update[i].forward[i] = x.forward[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x.backward;
+        }
+        while (level > 1 && header.forward[level - 1] == null) {
+            level--;
+        }
+        length--;
+    }
+
+    private static boolean less(Node node, double score, String nodeId) {
+        return node.score < score || (node.score == score && node.nodeId.compareTo(nodeId) < 0);
+    }
+
+    private static int randomLevel() {
+        int lvl = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (lvl < MAX_LEVEL && random.nextDouble() < P) {
+            lvl++;
+        }
+        return lvl;
+    }
+}
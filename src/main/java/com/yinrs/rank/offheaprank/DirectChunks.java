@@ -0,0 +1,84 @@
+package com.yinrs.rank.offheaprank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed size records in direct memory, outside the java heap. The records live in chunks of
+ * 2^chunkShift records, so a store can grow past the 2GB of one ByteBuffer and a record never moves
+ * once its chunk is full; only a store smaller than one chunk is copied when it grows.
+ * The memory is given back when the buffers are collected.
+ * <p>
+ * warning:this class is not thread safe!
+ */
+final class DirectChunks {
+    private static final int MIN_RECORDS = 16;
+
+    private final int recordSize;
+    private final int chunkShift;
+    private final long chunkMask;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private long capacity;
+
+    DirectChunks(int recordSize, int chunkShift, long records) {
+        if ((long) recordSize << chunkShift > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("chunks of " + recordSize + " << " + chunkShift + " bytes do not fit a ByteBuffer");
+        }
+        this.recordSize = recordSize;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        ensureCapacity(records);
+    }
+
+    /**
+     * Grows the store to hold at least the given number of records, the new records are zeroed.
+     */
+    void ensureCapacity(long records) {
+        if (records <= capacity) return;
+        long chunkRecords = 1L << chunkShift;
+        if (capacity < chunkRecords) {
+            long size = Math.min(Math.max(Math.max(capacity * 2, records), MIN_RECORDS), chunkRecords);
+            ByteBuffer first = allocate(size);
+            if (chunks.length > 0) {
+                ByteBuffer old = chunks[0].duplicate();
+                old.clear();
+                first.put(old);
+                first.clear();
+            }
+            chunks = new ByteBuffer[]{first};
+            capacity = size;
+        }
+        while (capacity < records) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = allocate(chunkRecords);
+            capacity += chunkRecords;
+        }
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes of direct memory held
+     */
+    long bytes() {
+        return capacity * recordSize;
+    }
+
+    ByteBuffer chunk(long record) {
+        return chunks[(int) (record >>> chunkShift)];
+    }
+
+    /**
+     * @return the byte offset of the record inside its {@link #chunk(long)}
+     */
+    int offset(long record) {
+        return (int) (record & chunkMask) * recordSize;
+    }
+
+    private ByteBuffer allocate(long records) {
+        return ByteBuffer.allocateDirect((int) (records * recordSize)).order(ByteOrder.nativeOrder());
+    }
+}
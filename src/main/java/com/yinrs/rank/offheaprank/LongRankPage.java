@@ -0,0 +1,70 @@
+package com.yinrs.rank.offheaprank;
+
+import com.yinrs.rank.RankPage;
+
+/**
+ * {@link RankPage} of numeric node ids: the node at index i has id ids[i], score scores[i]
+ * and rank startRank + i, with no String or boxed value per node.
+ */
+public final class LongRankPage {
+    private static final LongRankPage EMPTY = new LongRankPage(new long[0], new double[0], 0);
+
+    private final long[] ids;
+    private final double[] scores;
+    private final long startRank;
+
+    public LongRankPage(long[] ids, double[] scores, long startRank) {
+        if (ids.length != scores.length) {
+            throw new IllegalArgumentException("ids and scores must have the same length");
+        }
+        this.ids = ids;
+        this.scores = scores;
+        this.startRank = startRank;
+    }
+
+    public static LongRankPage empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getNodeId(int i) {
+        return ids[i];
+    }
+
+    public double getNodeScore(int i) {
+        return scores[i];
+    }
+
+    public long getRank(int i) {
+        return startRank + i;
+    }
+
+    public long getStartRank() {
+        return startRank;
+    }
+
+    /**
+     * The backing arrays, not copied.
+     */
+    public long[] getIds() {
+        return ids;
+    }
+
+    public double[] getScores() {
+        return scores;
+    }
+
+    /**
+     * @return the same nodes with their ids as decimal strings, sharing the scores array
+     */
+    public RankPage toRankPage() {
+        String[] nodeIds = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            nodeIds[i] = Long.toString(ids[i]);
+        }
+        return new RankPage(nodeIds, scores, startRank);
+    }
+}
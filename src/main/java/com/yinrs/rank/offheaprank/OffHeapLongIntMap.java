@@ -0,0 +1,155 @@
+package com.yinrs.rank.offheaprank;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open addressing map from long keys to non negative int values in {@link DirectChunks}, 12 bytes an entry:
+ * the key and value + 1, 0 marking a free entry. Linear probing, removals shift the following entries back
+ * instead of leaving tombstones. Doubles its table at 3/4 load.
+ * <p>
+ * warning:this class is not thread safe!
+ */
+final class OffHeapLongIntMap {
+    private static final int ENTRY = 12;
+    private static final int VALUE = 8;
+    private static final int CHUNK_SHIFT = 20;
+    private static final long MIN_CAPACITY = 16;
+
+    private DirectChunks table;
+    private long mask;
+    private long size;
+
+    OffHeapLongIntMap() {
+        clear();
+    }
+
+    /**
+     * @return the value of the key, -1 if there is none
+     */
+    int get(long key) {
+        for (long i = home(key); ; i = (i + 1) & mask) {
+            int value = value(i);
+            if (value < 0) return -1;
+            if (key(i) == key) return value;
+        }
+    }
+
+    /**
+     * @return the previous value of the key, -1 if there was none
+     */
+    int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative");
+        }
+        long i = home(key);
+        for (; ; i = (i + 1) & mask) {
+            int old = value(i);
+            if (old < 0) break;
+            if (key(i) == key) {
+                set(i, key, value);
+                return old;
+            }
+        }
+        set(i, key, value);
+        if (++size * 4 > (mask + 1) * 3) {
+            resize((mask + 1) * 2);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the removed value, -1 if the key was absent
+     */
+    int remove(long key) {
+        long i = home(key);
+        for (; ; i = (i + 1) & mask) {
+            int value = value(i);
+            if (value < 0) return -1;
+            if (key(i) == key) {
+                shiftBack(i);
+                size--;
+                return value;
+            }
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long bytes() {
+        return table.bytes();
+    }
+
+    /**
+     * Removes every key and gives the table back.
+     */
+    void clear() {
+        table = new DirectChunks(ENTRY, CHUNK_SHIFT, MIN_CAPACITY);
+        mask = MIN_CAPACITY - 1;
+        size = 0;
+    }
+
+    /**
+     * Empties entry i and moves back the entries of its probe run that may no longer be reached past it.
+     */
+    private void shiftBack(long i) {
+        for (long j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            int value = value(j);
+            if (value < 0) break;
+            long key = key(j);
+            long home = home(key);
+            boolean reachable = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!reachable) {
+                set(i, key, value);
+                i = j;
+            }
+        }
+        ByteBuffer chunk = table.chunk(i);
+        chunk.putInt(table.offset(i) + VALUE, 0);
+    }
+
+    private void resize(long capacity) {
+        DirectChunks old = this.table;
+        long oldCapacity = mask + 1;
+        table = new DirectChunks(ENTRY, CHUNK_SHIFT, capacity);
+        mask = capacity - 1;
+        for (long i = 0; i < oldCapacity; i++) {
+            ByteBuffer chunk = old.chunk(i);
+            int offset = old.offset(i);
+            int value = chunk.getInt(offset + VALUE) - 1;
+            if (value >= 0) {
+                long key = chunk.getLong(offset);
+                long j = home(key);
+                while (value(j) >= 0) {
+                    j = (j + 1) & mask;
+                }
+                set(j, key, value);
+            }
+        }
+    }
+
+    private long home(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key & mask;
+    }
+
+    private long key(long i) {
+        return table.chunk(i).getLong(table.offset(i));
+    }
+
+    private int value(long i) {
+        return table.chunk(i).getInt(table.offset(i) + VALUE) - 1;
+    }
+
+    private void set(long i, long key, int value) {
+        ByteBuffer chunk = table.chunk(i);
+        int offset = table.offset(i);
+        chunk.putLong(offset, key);
+        chunk.putInt(offset + VALUE, value + 1);
+    }
+}
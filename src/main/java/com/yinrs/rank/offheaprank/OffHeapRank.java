@@ -0,0 +1,472 @@
+package com.yinrs.rank.offheaprank;
+
+import com.yinrs.rank.Rank;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankPage;
+import com.yinrs.rank.RankSnapshot;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process rank of numeric node ids kept outside the java heap: an order statistic treap and an
+ * id to node map, both in direct buffers, so tens of millions of nodes cost the collector nothing
+ * and a node takes 32 bytes plus 16 to 32 bytes of map, 12 byte entries at 3/8 to 3/4 load.
+ * Same index semantics as {@link com.yinrs.rank.localrank.LocalRank}, but nodes with the same score
+ * are ordered by their numeric id instead of the bytes of the id.
+ * <p>
+ * The long based methods are the fast path. The String ones parse the node id as a long:
+ * reads of a non numeric id find nothing and writes of one throw an IllegalArgumentException,
+ * ids come back in their canonical decimal form.
+ * The memory is given back when the direct buffers are collected: when the rank is, or after
+ * {@link #removeAll()}, which drops the buffers but does not free them itself.
+ */
+public class OffHeapRank extends Rank {
+    private static final int SNAPSHOT_PAGE = 10000;
+    private final OffHeapLongIntMap slots = new OffHeapLongIntMap();
+    private final OffHeapTreap treap = new OffHeapTreap();
+    private ReadWriteLock rwLock;
+    private Lock rLock;
+    private Lock wLock;
+
+    OffHeapRank(String rankName) {
+        super(rankName);
+        initLock();
+    }
+
+    static OffHeapRank getInstance(String rankName) {
+        return new OffHeapRank(rankName);
+    }
+
+    private void initLock() {
+        rwLock = new ReentrantReadWriteLock();
+        rLock = rwLock.readLock();
+        wLock = rwLock.writeLock();
+    }
+
+    /**
+     * @return true if the node was added, false if an existing node was updated
+     */
+    public boolean insertOrUpdate(long nodeId, double nodeScores) {
+        wLock();
+        try {
+            return put(nodeId, nodeScores);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    public double incr(long nodeId, double nodeScores) {
+        wLock();
+        try {
+            int slot = slots.get(nodeId);
+            double finalVal = slot >= 0 ? treap.score(slot) + nodeScores : nodeScores;
+            put(nodeId, finalVal);
+            return finalVal;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    /**
+     * @return the score of the node, NaN if it is not in the rank
+     */
+    public double getNodeVal(long nodeId) {
+        rLock();
+        try {
+            int slot = slots.get(nodeId);
+            return slot >= 0 ? treap.score(slot) : Double.NaN;
+        } finally {
+            rUnlock();
+        }
+    }
+
+    /**
+     * @return true if the node was in the rank
+     */
+    public boolean remove(long nodeId) {
+        wLock();
+        try {
+            return delete(nodeId);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    /**
+     * @return the 0-based rank from the lowest score, -1 if the node is not in the rank
+     */
+    public long getASCRank(long nodeId) {
+        rLock();
+        try {
+            int slot = slots.get(nodeId);
+            return slot >= 0 ? treap.rank(slot) - 1 : -1;
+        } finally {
+            rUnlock();
+        }
+    }
+
+    /**
+     * @return the 0-based rank from the highest score, -1 if the node is not in the rank
+     */
+    public long getDESCRank(long nodeId) {
+        rLock();
+        try {
+            int slot = slots.get(nodeId);
+            return slot >= 0 ? treap.length() - treap.rank(slot) : -1;
+        } finally {
+            rUnlock();
+        }
+    }
+
+    public LongRankPage ascLongRangePage(long start, long end) {
+        return longRangePage(false, start, end);
+    }
+
+    public LongRankPage descLongRangePage(long start, long end) {
+        return longRangePage(true, start, end);
+    }
+
+    /**
+     * @return the bytes of direct memory held by the rank
+     */
+    public long offHeapBytes() {
+        rLock();
+        try {
+            return slots.bytes() + treap.bytes();
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public void insertOrUpdate(String nodeId, double nodeScores) {
+        insertOrUpdate(toId(nodeId), nodeScores);
+    }
+
+    @Override
+    public Long insertOrUpdate(List<RankNode> list) {
+        if (CollectionUtils.isEmpty(list)) return null;
+        long[] ids = new long[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = toId(list.get(i).getNodeId());
+        }
+        wLock();
+        try {
+            long added = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (put(ids[i], list.get(i).getNodeScore())) {
+                    added++;
+                }
+            }
+            return added;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Double incr(String nodeId, double nodeScores) {
+        return incr(toId(nodeId), nodeScores);
+    }
+
+    @Override
+    public Double getNodeVal(String nodeId) {
+        Long id = parseId(nodeId);
+        if (Objects.isNull(id)) return null;
+        double score = getNodeVal(id.longValue());
+        return Double.isNaN(score) ? null : score;
+    }
+
+    @Override
+    public long remove(String... nodeIds) {
+        if (Objects.isNull(nodeIds)) return 0;
+        wLock();
+        try {
+            long removed = 0;
+            for (String nodeId : nodeIds) {
+                Long id = parseId(nodeId);
+                if (Objects.nonNull(id) && delete(id)) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public long removeByRank(long start, long end) {
+        wLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return 0;
+            return treap.deleteRangeByRank(range[0] + 1, range[1] + 1, slots::remove);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public long removeByScore(double minNodeScores, double maxNodeScores) {
+        wLock();
+        try {
+            long first = treap.countBelow(minNodeScores, false) + 1;
+            long last = treap.countBelow(maxNodeScores, true);
+            if (first > last) return 0;
+            return treap.deleteRangeByRank(first, last, slots::remove);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Long getASCRank(String nodeId) {
+        Long id = parseId(nodeId);
+        if (Objects.isNull(id)) return null;
+        long rank = getASCRank(id.longValue());
+        return rank < 0 ? null : rank;
+    }
+
+    @Override
+    public Long getDESCRank(String nodeId) {
+        Long id = parseId(nodeId);
+        if (Objects.isNull(id)) return null;
+        long rank = getDESCRank(id.longValue());
+        return rank < 0 ? null : rank;
+    }
+
+    @Override
+    public List<RankNode> ascRangeByRankWithScores(long start, long end) {
+        return toRankNodes(ascLongRangePage(start, end));
+    }
+
+    @Override
+    public List<RankNode> descRangeByRankWithScores(long start, long end) {
+        return toRankNodes(descLongRangePage(start, end));
+    }
+
+    @Override
+    public RankPage ascRangePage(long start, long end) {
+        return ascLongRangePage(start, end).toRankPage();
+    }
+
+    @Override
+    public RankPage descRangePage(long start, long end) {
+        return descLongRangePage(start, end).toRankPage();
+    }
+
+    @Override
+    public List<RankNode> ascNeighborhood(String nodeId, int above, int below) {
+        rLock();
+        try {
+            return super.ascNeighborhood(nodeId, above, below);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public List<RankNode> descNeighborhood(String nodeId, int above, int below) {
+        rLock();
+        try {
+            return super.descNeighborhood(nodeId, above, below);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long countAll() {
+        rLock();
+        try {
+            return treap.length();
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long countBy(double minNodeScores, double maxNodeScores) {
+        rLock();
+        try {
+            long count = treap.countBelow(maxNodeScores, true) - treap.countBelow(minNodeScores, false);
+            return Math.max(count, 0);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long removeAll() {
+        wLock();
+        try {
+            long removed = treap.length();
+            treap.clear();
+            slots.clear();
+            return removed;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    /**
+     * Writes the snapshot with numeric ids, 16 bytes a node, under the read lock so it is consistent.
+     */
+    @Override
+    public void snapshotTo(Path path) {
+        rLock();
+        try (RankSnapshot.Writer writer = RankSnapshot.create(path, getRankName(), true)) {
+            long length = treap.length();
+            long[] ids = new long[(int) Math.min(length, SNAPSHOT_PAGE)];
+            double[] scores = new double[ids.length];
+            for (long start = 0; start < length; start += ids.length) {
+                int count = (int) Math.min(ids.length, length - start);
+                treap.fill(start, count, false, ids, scores);
+                for (int i = 0; i < count; i++) {
+                    writer.add(ids[i], scores[i]);
+                }
+            }
+            writer.commit();
+        } finally {
+            rUnlock();
+        }
+    }
+
+    /**
+     * Loads the snapshot under the write lock, readers see the old nodes or the restored ones.
+     * A snapshot with non numeric ids throws an IllegalArgumentException at the first of them,
+     * leaving the nodes read before it.
+     */
+    @Override
+    public void restore(RankSnapshot snapshot) {
+        wLock();
+        try {
+            treap.clear();
+            slots.clear();
+            while (snapshot.next()) {
+                long nodeId = snapshot.hasNumericIds() ? snapshot.getLongNodeId() : toId(snapshot.getNodeId());
+                put(nodeId, snapshot.getNodeScore());
+            }
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o);
+    }
+
+    private LongRankPage longRangePage(boolean desc, long start, long end) {
+        rLock();
+        try {
+            long[] range = range(start, end);
+            if (range == null) return LongRankPage.empty();
+            int size = (int) (range[1] - range[0] + 1);
+            long[] ids = new long[size];
+            double[] scores = new double[size];
+            treap.fill(range[0], size, desc, ids, scores);
+            return new LongRankPage(ids, scores, range[0]);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    /**
+     * @return true if the node was added, false if an existing node was updated
+     */
+    private boolean put(long nodeId, double nodeScores) {
+        if (Double.isNaN(nodeScores)) {
+            throw new IllegalArgumentException("score is not a number, nodeId=" + nodeId);
+        }
+        int slot = slots.get(nodeId);
+        if (slot >= 0) {
+            if (treap.score(slot) != nodeScores) {
+                treap.update(slot, nodeScores);
+            }
+            return false;
+        }
+        slots.put(nodeId, treap.insert(nodeId, nodeScores));
+        return true;
+    }
+
+    private boolean delete(long nodeId) {
+        int slot = slots.remove(nodeId);
+        if (slot < 0) return false;
+        treap.delete(slot);
+        return true;
+    }
+
+    /**
+     * Normalizes a redis style index range (negative index counts from the tail).
+     *
+     * @return 0-based [start, end] or null if the range is empty
+     */
+    private long[] range(long start, long end) {
+        long length = treap.length();
+        if (start < 0) start = length + start;
+        if (end < 0) end = length + end;
+        if (start < 0) start = 0;
+        if (start > end || start >= length) return null;
+        if (end >= length) end = length - 1;
+        return new long[]{start, end};
+    }
+
+    private static List<RankNode> toRankNodes(LongRankPage page) {
+        List<RankNode> list = new ArrayList<>(page.size());
+        for (int i = 0; i < page.size(); i++) {
+            list.add(new RankNode(Long.toString(page.getNodeId(i)), page.getRank(i), page.getNodeScore(i)));
+        }
+        return list;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the node id is not a long
+     */
+    private static long toId(String nodeId) {
+        if (Objects.isNull(nodeId)) {
+            throw new IllegalArgumentException("nodeId must not be null");
+        }
+        try {
+            return Long.parseLong(nodeId.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("nodeId is not a number, nodeId=" + nodeId, e);
+        }
+    }
+
+    /**
+     * @return the node id as a long, null if it is not one
+     */
+    private static Long parseId(String nodeId) {
+        if (Objects.isNull(nodeId)) return null;
+        try {
+            return Long.parseLong(nodeId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    void wLock() {
+        wLock.lock();
+    }
+
+    void wUnlock() {
+        wLock.unlock();
+    }
+
+    void rLock() {
+        rLock.lock();
+    }
+
+    void rUnlock() {
+        rLock.unlock();
+    }
+}
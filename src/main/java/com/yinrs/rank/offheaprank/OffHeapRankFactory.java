@@ -0,0 +1,15 @@
+package com.yinrs.rank.offheaprank;
+
+import com.yinrs.rank.RankFactory;
+
+public class OffHeapRankFactory implements RankFactory<OffHeapRank> {
+    @Override
+    public Class<OffHeapRank> rankType() {
+        return OffHeapRank.class;
+    }
+
+    @Override
+    public OffHeapRank create(String rankName) {
+        return OffHeapRank.getInstance(rankName);
+    }
+}
@@ -0,0 +1,15 @@
+package com.yinrs.rank.offheaprank;
+
+import com.yinrs.rank.RankManagerProvider;
+
+public class OffHeapRankManagerProvider implements RankManagerProvider<OffHeapRankManager> {
+    @Override
+    public Class<OffHeapRankManager> managerType() {
+        return OffHeapRankManager.class;
+    }
+
+    @Override
+    public OffHeapRankManager instance() {
+        return OffHeapRankManager.instance();
+    }
+}
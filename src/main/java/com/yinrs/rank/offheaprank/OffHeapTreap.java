@@ -0,0 +1,367 @@
+package com.yinrs.rank.offheaprank;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Order statistic treap of (id, score) nodes in {@link DirectChunks}, ordered by score and then by id,
+ * 32 bytes a node: id, score, left, right, subtree size and heap priority. Nodes are addressed by
+ * their slot, which never changes while the node is in the tree; freed slots are chained through
+ * their left field and reused. Ranks are 1-based, like {@link com.yinrs.rank.localrank.OrderStatisticSkipList}.
+ * <p>
+ * warning:this class is not thread safe!
+ */
+final class OffHeapTreap {
+    static final int NIL = -1;
+
+    private static final int NODE = 32;
+    private static final int SCORE = 8;
+    private static final int LEFT = 16;
+    private static final int RIGHT = 20;
+    private static final int SIZE = 24;
+    private static final int PRIORITY = 28;
+    private static final int CHUNK_SHIFT = 20;
+
+    private DirectChunks nodes;
+    private int root;
+    private int free;
+    private int next;
+    private int seed;
+    // second result of split
+    private int splitLeft;
+    private int splitRight;
+
+    OffHeapTreap() {
+        seed = (int) System.nanoTime() | 1;
+        clear();
+    }
+
+    /**
+     * @return the slot of the new node
+     */
+    int insert(long id, double score) {
+        int slot = allocate();
+        ByteBuffer chunk = nodes.chunk(slot);
+        int offset = nodes.offset(slot);
+        chunk.putLong(offset, id);
+        chunk.putDouble(offset + SCORE, score);
+        link(slot);
+        return slot;
+    }
+
+    void update(int slot, double score) {
+        root = unlink(root, slot);
+        nodes.chunk(slot).putDouble(nodes.offset(slot) + SCORE, score);
+        link(slot);
+    }
+
+    void delete(int slot) {
+        root = unlink(root, slot);
+        release(slot);
+    }
+
+    long id(int slot) {
+        return nodes.chunk(slot).getLong(nodes.offset(slot));
+    }
+
+    double score(int slot) {
+        return nodes.chunk(slot).getDouble(nodes.offset(slot) + SCORE);
+    }
+
+    long length() {
+        return size(root);
+    }
+
+    /**
+     * @return the 1-based rank of the node from the lowest score
+     */
+    long rank(int slot) {
+        long id = id(slot);
+        double score = score(slot);
+        long rank = 0;
+        int x = root;
+        while (x != NIL) {
+            int c = compare(id, score, x);
+            if (c < 0) {
+                x = left(x);
+            } else {
+                rank += size(left(x)) + 1;
+                if (c == 0) return rank;
+                x = right(x);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the slot of the node with the given 1-based rank, NIL if out of range
+     */
+    int byRank(long rank) {
+        int x = root;
+        while (x != NIL) {
+            long before = size(left(x)) + 1;
+            if (rank == before) return x;
+            if (rank < before) {
+                x = left(x);
+            } else {
+                rank -= before;
+                x = right(x);
+            }
+        }
+        return NIL;
+    }
+
+    /**
+     * @return the number of nodes with a score lower than (or equal to, if inclusive) the given one
+     */
+    long countBelow(double score, boolean inclusive) {
+        long count = 0;
+        int x = root;
+        while (x != NIL) {
+            double s = score(x);
+            if (s < score || (inclusive && s == score)) {
+                count += size(left(x)) + 1;
+                x = right(x);
+            } else {
+                x = left(x);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the nodes ranked first to last, both 1-based and inclusive, passing the id of each to removed.
+     *
+     * @return the number of deleted nodes
+     */
+    long deleteRangeByRank(long first, long last, LongConsumer removed) {
+        split(root, first - 1);
+        int before = splitLeft;
+        split(splitRight, last - first + 1);
+        int range = splitLeft;
+        int after = splitRight;
+        root = merge(before, after);
+        long count = size(range);
+        int[] stack = new int[64];
+        int top = 0;
+        if (range != NIL) stack[top++] = range;
+        while (top > 0) {
+            int x = stack[--top];
+            if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            if (left(x) != NIL) stack[top++] = left(x);
+            if (right(x) != NIL) stack[top++] = right(x);
+            removed.accept(id(x));
+            release(x);
+        }
+        return count;
+    }
+
+    /**
+     * Copies count nodes, from the given 0-based index, into ids and scores. With desc the index counts
+     * from the highest score and the nodes are copied from the highest score down.
+     */
+    void fill(long start, int count, boolean desc, long[] ids, double[] scores) {
+        int[] stack = new int[64];
+        int top = 0;
+        long index = desc ? length() - 1 - start : start;
+        int x = root;
+        while (x != NIL) {
+            if (top == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            long before = size(left(x));
+            if (index == before) {
+                stack[top++] = x;
+                break;
+            }
+            if (index < before) {
+                if (!desc) stack[top++] = x;
+                x = left(x);
+            } else {
+                if (desc) stack[top++] = x;
+                index -= before + 1;
+                x = right(x);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            x = stack[--top];
+            ids[i] = id(x);
+            scores[i] = score(x);
+            x = desc ? left(x) : right(x);
+            while (x != NIL) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = x;
+                x = desc ? right(x) : left(x);
+            }
+        }
+    }
+
+    long bytes() {
+        return nodes.bytes();
+    }
+
+    /**
+     * Removes every node and gives the memory back.
+     */
+    void clear() {
+        nodes = new DirectChunks(NODE, CHUNK_SHIFT, 0);
+        root = NIL;
+        free = NIL;
+        next = 0;
+    }
+
+    private void link(int slot) {
+        setLeft(slot, NIL);
+        setRight(slot, NIL);
+        setSize(slot, 1);
+        nodes.chunk(slot).putInt(nodes.offset(slot) + PRIORITY, nextPriority());
+        root = insert(root, slot);
+    }
+
+    private int insert(int x, int slot) {
+        if (x == NIL) return slot;
+        if (compare(id(slot), score(slot), x) < 0) {
+            int l = insert(left(x), slot);
+            setLeft(x, l);
+            updateSize(x);
+            if (priority(l) > priority(x)) x = rotateRight(x);
+        } else {
+            int r = insert(right(x), slot);
+            setRight(x, r);
+            updateSize(x);
+            if (priority(r) > priority(x)) x = rotateLeft(x);
+        }
+        return x;
+    }
+
+    private int unlink(int x, int slot) {
+        if (x == slot) return merge(left(x), right(x));
+        if (compare(id(slot), score(slot), x) < 0) {
+            setLeft(x, unlink(left(x), slot));
+        } else {
+            setRight(x, unlink(right(x), slot));
+        }
+        updateSize(x);
+        return x;
+    }
+
+    private int rotateRight(int x) {
+        int l = left(x);
+        setLeft(x, right(l));
+        setRight(l, x);
+        updateSize(x);
+        updateSize(l);
+        return l;
+    }
+
+    private int rotateLeft(int x) {
+        int r = right(x);
+        setRight(x, left(r));
+        setLeft(r, x);
+        updateSize(x);
+        updateSize(r);
+        return r;
+    }
+
+    /**
+     * Joins two trees, every node of a ordered before every node of b.
+     */
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priority(a) > priority(b)) {
+            setRight(a, merge(right(a), b));
+            updateSize(a);
+            return a;
+        }
+        setLeft(b, merge(a, left(b)));
+        updateSize(b);
+        return b;
+    }
+
+    /**
+     * Splits the tree into its first count nodes, left in splitLeft, and the rest, left in splitRight.
+     */
+    private void split(int x, long count) {
+        if (x == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        long before = size(left(x));
+        if (count <= before) {
+            split(left(x), count);
+            setLeft(x, splitRight);
+            updateSize(x);
+            splitRight = x;
+        } else {
+            split(right(x), count - before - 1);
+            setRight(x, splitLeft);
+            updateSize(x);
+            splitLeft = x;
+        }
+    }
+
+    private int compare(long id, double score, int x) {
+        double s = score(x);
+        if (score < s) return -1;
+        if (score > s) return 1;
+        return Long.compare(id, id(x));
+    }
+
+    private int allocate() {
+        if (free != NIL) {
+            int slot = free;
+            free = left(slot);
+            return slot;
+        }
+        if (next == Integer.MAX_VALUE) {
+            throw new IllegalStateException("off heap rank is full");
+        }
+        nodes.ensureCapacity(next + 1L);
+        return next++;
+    }
+
+    private void release(int slot) {
+        setLeft(slot, free);
+        free = slot;
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private int left(int x) {
+        return nodes.chunk(x).getInt(nodes.offset(x) + LEFT);
+    }
+
+    private int right(int x) {
+        return nodes.chunk(x).getInt(nodes.offset(x) + RIGHT);
+    }
+
+    private long size(int x) {
+        return x == NIL ? 0 : nodes.chunk(x).getInt(nodes.offset(x) + SIZE);
+    }
+
+    private int priority(int x) {
+        return nodes.chunk(x).getInt(nodes.offset(x) + PRIORITY);
+    }
+
+    private void setLeft(int x, int left) {
+        nodes.chunk(x).putInt(nodes.offset(x) + LEFT, left);
+    }
+
+    private void setRight(int x, int right) {
+        nodes.chunk(x).putInt(nodes.offset(x) + RIGHT, right);
+    }
+
+    private void setSize(int x, long size) {
+        nodes.chunk(x).putInt(nodes.offset(x) + SIZE, (int) size);
+    }
+
+    private void updateSize(int x) {
+        setSize(x, size(left(x)) + size(right(x)) + 1);
+    }
+}
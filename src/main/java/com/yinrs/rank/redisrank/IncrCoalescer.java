@@ -0,0 +1,109 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CachePipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sums the incr deltas of a {@link RedisRank} per nodeId and writes them as one pipelined
+ * batch of ZINCRBY, every flush interval or as soon as maxPending nodeIds are waiting.
+ * A batch is taken out and written under the write lock of the rank and the monitor of the coalescer,
+ * which {@link #discard(String...)} and {@link #discardAll()} also hold, so a remove never runs between
+ * the two and is never undone by a delta in flight. Removes by rank or score and moves flush the pending
+ * deltas first under the same write lock, as those deltas decide which nodes they touch.
+ * Deltas of a batch that failed are logged and dropped: a ZINCRBY whose reply was lost may have been applied,
+ * and retrying it could count it twice.
+ */
+class IncrCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(IncrCoalescer.class);
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rank-incr-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RedisRank rank;
+    private final int maxPending;
+    private final ConcurrentHashMap<String, Double> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledFuture<?> task;
+
+    IncrCoalescer(RedisRank rank, long flushIntervalMillis, int maxPending) {
+        if (flushIntervalMillis <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("flushIntervalMillis and maxPending must be positive");
+        }
+        this.rank = rank;
+        this.maxPending = maxPending;
+        this.task = FLUSHER.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void incr(String nodeId, double nodeScores) {
+        pending.merge(nodeId, nodeScores, Double::sum);
+        if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            FLUSHER.execute(this::flushQuietly);
+        }
+    }
+
+    synchronized void discard(String... nodeIds) {
+        for (String nodeId : nodeIds) {
+            pending.remove(nodeId);
+        }
+    }
+
+    synchronized void discardAll() {
+        pending.clear();
+    }
+
+    void flush() {
+        flushRequested.set(false);
+        if (pending.isEmpty()) return;
+        rank.wLock();
+        try {
+            synchronized (this) {
+                flushLocked();
+            }
+        } finally {
+            rank.invalidateCaches();
+            rank.wUnlock();
+        }
+    }
+
+    private void flushLocked() {
+        if (pending.isEmpty()) return;
+        CachePipeline pipeline = rank.getRedis().pipelined();
+        Map<String, Double> deltas = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Double>> futures = new LinkedHashMap<>();
+        for (String nodeId : pending.keySet()) {
+            Double delta = pending.remove(nodeId);
+            if (delta != null) {
+                deltas.put(nodeId, delta);
+                futures.put(nodeId, pipeline.zincrby(rank.getRankName(), delta, nodeId));
+            }
+        }
+        rank.queueVersionIncr(pipeline);
+        pipeline.sync();
+        for (Map.Entry<String, CompletableFuture<Double>> entry : futures.entrySet()) {
+            if (entry.getValue().isCompletedExceptionally()) {
+                log.error("incr of " + entry.getKey() + " by " + deltas.get(entry.getKey()) + " in rank " + rank.getRankName() + " lost");
+            }
+        }
+    }
+
+    void close() {
+        task.cancel(false);
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("flush incr of rank " + rank.getRankName() + " ex", e);
+        }
+    }
+}
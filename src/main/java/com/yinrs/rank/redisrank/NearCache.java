@@ -0,0 +1,112 @@
+package com.yinrs.rank.redisrank;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.yinrs.rank.RankNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side copy of the first topK nodes of a {@link RedisRank}, one page per direction.
+ * Concurrent misses share one load, pages expire after ttlMillis and are dropped by
+ * {@link #invalidate()} on local writes and on keyspace notifications of the rank key.
+ */
+class NearCache {
+    private final RedisRank rank;
+    private final int topK;
+    private final AtomicLong generation = new AtomicLong();
+    private final LoadingCache<Boolean, Page> pages;
+    private final Runnable invalidator = this::invalidate;
+
+    NearCache(RedisRank rank, int topK, long ttlMillis) {
+        if (topK <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("topK and ttlMillis must be positive");
+        }
+        this.rank = rank;
+        this.topK = topK;
+        this.pages = CacheBuilder.newBuilder()
+                .maximumSize(2)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build(new CacheLoader<Boolean, Page>() {
+                    @Override
+                    public Page load(Boolean desc) {
+                        return loadPage(desc);
+                    }
+                });
+    }
+
+    void start() {
+        rank.getRedis().subscribeKeyspace(rank.getRankName(), invalidator);
+    }
+
+    void stop() {
+        rank.getRedis().unsubscribeKeyspace(rank.getRankName(), invalidator);
+        invalidate();
+    }
+
+    void invalidate() {
+        generation.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    /**
+     * @return the nodes of the range, or null if the range is not inside the cached page
+     */
+    List<RankNode> range(boolean desc, long start, long end) {
+        boolean inPage = start >= 0 && end >= start && end < topK;
+        boolean fromTail = start < 0 || end < 0;
+        if (!inPage && !fromTail) return null;
+        Page page = page(desc);
+        if (Objects.isNull(page)) return null;
+        List<RankNode> nodes = page.nodes;
+        int size = nodes.size();
+        if (fromTail && size >= topK) return null;//only a page holding the whole rank knows its tail
+        if (start < 0) start = size + start;
+        if (end < 0) end = size + end;
+        if (start < 0) start = 0;
+        if (start > end || start >= size) return new ArrayList<>(0);
+        if (end >= size) end = size - 1;
+        return new ArrayList<>(nodes.subList((int) start, (int) end + 1));
+    }
+
+    private Page page(boolean desc) {
+        try {
+            for (int i = 0; i < 2; i++) {
+                Page page = pages.get(desc);
+                if (page.generation == generation.get()) {
+                    return page;
+                }
+                pages.asMap().remove(desc, page);//loaded before the last invalidation
+            }
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private Page loadPage(boolean desc) {
+        long gen = generation.get();
+        List<RankNode> nodes = rank.fetchRange(rank.getRedis(), desc, 0, topK - 1);
+        if (Objects.isNull(nodes)) {
+            throw new IllegalStateException("cannot load top " + topK + " of rank " + rank.getRankName());
+        }
+        return new Page(gen, new ArrayList<>(nodes));
+    }
+
+    private static final class Page {
+        final long generation;
+        final List<RankNode> nodes;
+
+        Page(long generation, List<RankNode> nodes) {
+            this.generation = generation;
+            this.nodes = nodes;
+        }
+    }
+}
@@ -1,30 +1,127 @@
 package com.yinrs.rank.redisrank;
 
-import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.cache.CachePipeline;
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisKeys;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.config.CC;
 import com.yinrs.rank.Rank;
+import com.yinrs.rank.RankBatch;
 import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankPage;
+import com.yinrs.rank.RankSnapshot;
 import org.springframework.util.CollectionUtils;
 import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 
+/**
+ * Rank stored in one redis sorted set.
+ * By default every call holds a JVM ReadWriteLock of the rank for the whole round trip.
+ * With mp.rank.lock-free=true the lock is skipped and the rank relies on redis alone: every
+ * method is a single command, and compound operations run as lua scripts.
+ * The sorted set lives in a {@link CacheManager}, {@link com.yinrs.cache.redis.RedisManager#I} unless the manager
+ * of the rank was given another one, e.g. an {@link com.yinrs.cache.memory.InMemoryCacheManager} in tests.
+ * The read-only methods go to {@link CacheManager#readReplicas()}, so with mp.redis.read-from-replicas
+ * they are served by the replicas and may lag behind the writes; reads made on behalf of a write stay on the master.
+ * With mp.rank.result-cache enabled, writes also increment a version key and reads are answered from a
+ * {@link ResultCache} while the version is unchanged.
+ */
 public class RedisRank extends Rank {
-    private RedisManager redis;
+    /**
+     * KEYS: zset, optionally the hash mapping nodeIds to zset members. ARGV: nodeId, "1" for desc, above, below.
+     * Returns {rank of the first node, {member, score, ...}}, or nil if the node is not in the rank.
+     */
+    static final RedisScript NEIGHBORHOOD_SCRIPT = new RedisScript(
+            "local member = ARGV[1]\n" +
+                    "if KEYS[2] then\n" +
+                    "    member = redis.call('HGET', KEYS[2], member)\n" +
+                    "    if not member then return false end\n" +
+                    "end\n" +
+                    "local desc = ARGV[2] == '1'\n" +
+                    "local rank\n" +
+                    "if desc then rank = redis.call('ZREVRANK', KEYS[1], member) else rank = redis.call('ZRANK', KEYS[1], member) end\n" +
+                    "if not rank then return false end\n" +
+                    "local start = math.max(rank - tonumber(ARGV[3]), 0)\n" +
+                    "local stop = rank + tonumber(ARGV[4])\n" +
+                    "if desc then return {start, redis.call('ZREVRANGE', KEYS[1], start, stop, 'WITHSCORES')} end\n" +
+                    "return {start, redis.call('ZRANGE', KEYS[1], start, stop, 'WITHSCORES')}",
+            RedisRank::neighborhood);
+    /**
+     * KEYS: zset, version. ARGV: a write command, its arguments after the key.
+     * Runs the command and increments the version of the {@link ResultCache}, returns the reply of the command.
+     */
+    static final RedisScript VERSIONED_WRITE_SCRIPT = new RedisScript(
+            "local reply = redis.call(ARGV[1], KEYS[1], unpack(ARGV, 2))\n" +
+                    "redis.call('INCR', KEYS[2])\n" +
+                    "return reply",
+            RedisRank::versionedWrite);
+    /**
+     * KEYS: restored zset, rank zset, optionally the version of the result cache.
+     * Renames the restored zset over the rank, or deletes the rank if nothing was restored, returns the new size.
+     */
+    static final RedisScript RESTORE_SCRIPT = new RedisScript(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('RENAME', KEYS[1], KEYS[2]) else redis.call('DEL', KEYS[2]) end\n" +
+                    "if KEYS[3] then redis.call('INCR', KEYS[3]) end\n" +
+                    "return redis.call('ZCARD', KEYS[2])",
+            (cache, keys, args) -> {
+                if (cache.exists(keys.get(0))) {
+                    cache.rename(keys.get(0), keys.get(1));
+                } else {
+                    cache.del(keys.get(1));
+                }
+                if (keys.size() > 2) {
+                    cache.incr(keys.get(2));
+                }
+                return cache.zcard(keys.get(1));
+            });
+    /**
+     * KEYS: zset, version of the result cache. Deletes the zset and increments the version, which is kept:
+     * restarting it would make answers cached by other JVMs before the remove valid again. Returns the size the rank had.
+     */
+    static final RedisScript REMOVE_ALL_SCRIPT = new RedisScript(
+            "local size = redis.call('ZCARD', KEYS[1])\n" +
+                    "redis.call('DEL', KEYS[1])\n" +
+                    "redis.call('INCR', KEYS[2])\n" +
+                    "return size",
+            (cache, keys, args) -> {
+                Long size = cache.zcard(keys.get(0));
+                cache.del(keys.get(0));
+                cache.incr(keys.get(1));
+                return size;
+            });
+    private static final int VERSIONED_WRITE_CHUNK = 1000;
+    private static final int RESTORE_BATCH = 1000;
+    private static final int RESTORE_BATCHES_PER_SYNC = 100;
+    private static final String READ_LOCK_WAIT = "rank.lock.read.wait";
+    private static final String WRITE_LOCK_WAIT = "rank.lock.write.wait";
+
+    private CacheManager redis;
+    private final boolean lockFree;
     private ReadWriteLock rwLock;
     private Lock rLock;
     private Lock wLock;
+    private volatile IncrCoalescer incrCoalescer;
+    private volatile NearCache nearCache;
+    private final ResultCache resultCache;
 
-    RedisRank(RedisManager redis, String rankName) {
+    RedisRank(CacheManager redis, String rankName) {
         super(rankName);
         this.redis = redis;
+        this.lockFree = CC.mp.rank.lock_free;
+        this.resultCache = CC.mp.rank.result_cache.enabled && supportsResultCache()
+                ? new ResultCache(this, CC.mp.rank.result_cache.max_entries, CC.mp.rank.result_cache.version_window) : null;
         initLock();
     }
 
-    static RedisRank getInstance(RedisManager redis, String rankName) {
+    static RedisRank getInstance(CacheManager redis, String rankName) {
         return new RedisRank(redis, rankName);
     }
 
@@ -38,8 +135,13 @@ public class RedisRank extends Rank {
     public void insertOrUpdate(String nodeId, double nodeScores) {
         wLock();
         try {
-            redis.zadd(getRankName(), nodeScores, nodeId);
+            if (Objects.nonNull(resultCache)) {
+                versionedWrite("ZADD", Double.toString(nodeScores), nodeId);
+            } else {
+                redis.zadd(getRankName(), nodeScores, nodeId);
+            }
         } finally {
+            invalidateCaches();
             wUnlock();
         }
     }
@@ -53,32 +155,57 @@ public class RedisRank extends Rank {
                 for (int i = 0; i < list.size(); i++) {
                     map.put(list.get(i).getNodeId(), list.get(i).getNodeScore());
                 }
+                if (Objects.nonNull(resultCache)) {
+                    List<String> args = new ArrayList<>(2 * map.size());
+                    for (Map.Entry<String, Double> entry : map.entrySet()) {
+                        args.add(Double.toString(entry.getValue()));
+                        args.add(entry.getKey());
+                    }
+                    return versionedWriteChunked("ZADD", args, 2);
+                }
                 return redis.zadd(getRankName(), map);
             }
         } finally {
+            invalidateCaches();
             wUnlock();
         }
         return null;
     }
 
+    /**
+     * With incr coalescing enabled the delta is only queued and null is returned,
+     * see {@link #enableIncrCoalescing(long, int)}.
+     */
     @Override
     public Double incr(String nodeId, double nodeScores) {
+        IncrCoalescer coalescer = incrCoalescer;
+        if (coalescer != null) {
+            coalescer.incr(nodeId, nodeScores);
+            return null;
+        }
         wLock();
         try {
+            if (Objects.nonNull(resultCache)) {
+                Object score = versionedWrite("ZINCRBY", Double.toString(nodeScores), nodeId);
+                return Objects.nonNull(score) ? parseScore((String) score) : null;
+            }
             return redis.zincrby(getRankName(), nodeScores, nodeId);
         } finally {
+            invalidateCaches();
             wUnlock();
         }
     }
 
     @Override
     public Double getNodeVal(String nodeId) {
-        rLock();
-        try {
-            return redis.zscore(getRankName(), nodeId);
-        } finally {
-            rUnlock();
-        }
+        return cached(Arrays.asList("val", nodeId), () -> {
+            rLock();
+            try {
+                return getReadRedis().zscore(getRankName(), nodeId);
+            } finally {
+                rUnlock();
+            }
+        });
     }
 
     protected Double getNodeValWithoutLock(String nodeId) {
@@ -89,8 +216,17 @@ public class RedisRank extends Rank {
     public long remove(String... nodeIds) {
         wLock();
         try {
+            IncrCoalescer coalescer = incrCoalescer;
+            if (coalescer != null) {
+                coalescer.discard(nodeIds);
+            }
+            if (Objects.nonNull(resultCache)) {
+                Long removed = versionedWriteChunked("ZREM", Arrays.asList(nodeIds), 1);
+                return Objects.nonNull(removed) ? removed : 0;
+            }
             return redis.zrem(getRankName(), nodeIds);
         } finally {
+            invalidateCaches();
             wUnlock();
         }
     }
@@ -99,8 +235,14 @@ public class RedisRank extends Rank {
     public long removeByRank(long start, long end) {
         wLock();
         try {
+            flushIncr();//the ranks and scores of pending deltas decide what is removed
+            if (Objects.nonNull(resultCache)) {
+                Object removed = versionedWrite("ZREMRANGEBYRANK", Long.toString(start), Long.toString(end));
+                return Objects.nonNull(removed) ? (Long) removed : 0;
+            }
             return redis.zremrangeByRank(getRankName(), start, end);
         } finally {
+            invalidateCaches();
             wUnlock();
         }
     }
@@ -109,43 +251,83 @@ public class RedisRank extends Rank {
     public long removeByScore(double minNodeScores, double maxNodeScores) {
         wLock();
         try {
+            flushIncr();//the ranks and scores of pending deltas decide what is removed
+            if (Objects.nonNull(resultCache)) {
+                Object removed = versionedWrite("ZREMRANGEBYSCORE", Double.toString(minNodeScores), Double.toString(maxNodeScores));
+                return Objects.nonNull(removed) ? (Long) removed : 0;
+            }
             return redis.zremrangeByScore(getRankName(), minNodeScores, maxNodeScores);
         } finally {
+            invalidateCaches();
             wUnlock();
         }
     }
 
     @Override
     public Long getASCRank(String nodeId) {
-        rLock();
-        try {
-            return redis.zrank(getRankName(), nodeId);
-        } finally {
-            rUnlock();
-        }
+        return cached(Arrays.asList("asc", nodeId), () -> {
+            rLock();
+            try {
+                return getReadRedis().zrank(getRankName(), nodeId);
+            } finally {
+                rUnlock();
+            }
+        });
     }
 
     @Override
     public Long getDESCRank(String nodeId) {
-        rLock();
-        try {
-            return redis.zrevrank(getRankName(), nodeId);
-        } finally {
-            rUnlock();
-        }
+        return cached(Arrays.asList("desc", nodeId), () -> {
+            rLock();
+            try {
+                return getReadRedis().zrevrank(getRankName(), nodeId);
+            } finally {
+                rUnlock();
+            }
+        });
     }
 
     @Override
     public List<RankNode> ascRangeByRankWithScores(long start, long end) {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            List<RankNode> cached = cache.range(false, start, end);
+            if (cached != null) return cached;
+        }
+        if (Objects.isNull(resultCache)) return fetchRange(false, start, end);
+        List<RankNode> nodes = resultCache.get(Arrays.asList("ascRange", start, end), () -> fetchRange(false, start, end));
+        return Objects.nonNull(nodes) ? new LinkedList<>(nodes) : null;
+    }
+
+    @Override
+    public List<RankNode> descRangeByRankWithScores(long start, long end) {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            List<RankNode> cached = cache.range(true, start, end);
+            if (cached != null) return cached;
+        }
+        if (Objects.isNull(resultCache)) return fetchRange(true, start, end);
+        List<RankNode> nodes = resultCache.get(Arrays.asList("descRange", start, end), () -> fetchRange(true, start, end));
+        return Objects.nonNull(nodes) ? new LinkedList<>(nodes) : null;
+    }
+
+    List<RankNode> fetchRange(boolean desc, long start, long end) {
+        return fetchRange(getReadRedis(), desc, start, end);
+    }
+
+    /**
+     * @param from the master for reads that must see the latest writes, e.g. to refill the near cache
+     */
+    List<RankNode> fetchRange(CacheManager from, boolean desc, long start, long end) {
         rLock();
         try {
-            Set<Tuple> tuples = redis.zrangeWithScores(getRankName(), start, end);
+            Set<Tuple> tuples = desc ? from.zrevrangeWithScores(getRankName(), start, end) : from.zrangeWithScores(getRankName(), start, end);
             if (Objects.nonNull(tuples)) {
                 Iterator<Tuple> iterator = tuples.iterator();
                 List<RankNode> list = new LinkedList<>();
                 while (iterator.hasNext()) {
                     Tuple next = iterator.next();
-                    list.add(new RankNode(next.getElement(), start++, next.getScore()));
+                    list.add(toRankNode(next.getElement(), start++, next.getScore()));
                 }
                 return list;
             }
@@ -155,79 +337,469 @@ public class RedisRank extends Rank {
         return null;
     }
 
+    /**
+     * Reads the rank of the node and its neighbors in one lua script, so they are consistent.
+     */
     @Override
-    public List<RankNode> descRangeByRankWithScores(long start, long end) {
+    public List<RankNode> ascNeighborhood(String nodeId, int above, int below) {
         rLock();
         try {
-            Set<Tuple> tuples = redis.zrevrangeWithScores(getRankName(), start, end);
-            if (Objects.nonNull(tuples)) {
-                Iterator<Tuple> iterator = tuples.iterator();
-                List<RankNode> list = new LinkedList<>();
-                while (iterator.hasNext()) {
-                    Tuple next = iterator.next();
-                    list.add(new RankNode(next.getElement(), start++, next.getScore()));
-                }
-                return list;
-            }
+            return neighborhood(Collections.singletonList(getRankName()), false, nodeId, above, below);
         } finally {
             rUnlock();
         }
-        return null;
     }
 
+    /**
+     * Reads the rank of the node and its neighbors in one lua script, so they are consistent.
+     */
     @Override
-    public Long countAll() {
+    public List<RankNode> descNeighborhood(String nodeId, int above, int below) {
         rLock();
         try {
-            return redis.zcard(getRankName());
+            return neighborhood(Collections.singletonList(getRankName()), true, nodeId, above, below);
         } finally {
             rUnlock();
         }
     }
 
+    List<RankNode> neighborhood(List<String> keys, boolean desc, String nodeId, int above, int below) {
+        checkNeighborhood(above, below);
+        List<?> reply = (List<?>) getReadRedis().eval(NEIGHBORHOOD_SCRIPT, keys,
+                Arrays.asList(nodeId, desc ? "1" : "0", Integer.toString(above), Integer.toString(below)));
+        if (Objects.isNull(reply)) return null;
+        long rank = (Long) reply.get(0);
+        List<?> members = (List<?>) reply.get(1);
+        List<RankNode> list = new ArrayList<>(members.size() / 2);
+        for (int i = 0; i < members.size(); i += 2) {
+            list.add(toRankNode((String) members.get(i), rank++, parseScore((String) members.get(i + 1))));
+        }
+        return list;
+    }
+
+    /**
+     * Maps a zset member to the node handed to callers.
+     */
+    RankNode toRankNode(String member, long rank, double score) {
+        return new RankNode(toNodeId(member), rank, toNodeScore(score));
+    }
+
+    /**
+     * Maps a zset member to the nodeId handed to callers.
+     */
+    String toNodeId(String member) {
+        return member;
+    }
+
+    /**
+     * Maps a zset score to the score handed to callers.
+     */
+    double toNodeScore(double score) {
+        return score;
+    }
+
     @Override
-    public Long countBy(double minNodeScores, double maxNodeScores) {
+    public RankPage ascRangePage(long start, long end) {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            List<RankNode> cached = cache.range(false, start, end);
+            if (cached != null) return RankPage.of(cached, start);
+        }
+        return cached(Arrays.asList("ascPage", start, end), () -> fetchPage(false, start, end));
+    }
+
+    @Override
+    public RankPage descRangePage(long start, long end) {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            List<RankNode> cached = cache.range(true, start, end);
+            if (cached != null) return RankPage.of(cached, start);
+        }
+        return cached(Arrays.asList("descPage", start, end), () -> fetchPage(true, start, end));
+    }
+
+    /**
+     * Copies the raw redis reply straight into the page arrays, a negative start first needs the size of the rank.
+     */
+    RankPage fetchPage(boolean desc, long start, long end) {
         rLock();
         try {
-            return redis.zcount(getRankName(), minNodeScores, maxNodeScores);
+            if (start < 0) {
+                Long size = getReadRedis().zcard(getRankName());
+                if (Objects.isNull(size)) return null;
+                start = Math.max(size + start, 0);
+            }
+            List<byte[]> reply = getReadRedis().zrangeWithScoresRaw(getRankName(), start, end, desc);
+            if (Objects.isNull(reply)) return null;
+            int size = reply.size() / 2;
+            String[] ids = new String[size];
+            double[] scores = new double[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = toNodeId(SafeEncoder.encode(reply.get(2 * i)));
+                scores[i] = toNodeScore(parseScore(reply.get(2 * i + 1)));
+            }
+            return new RankPage(ids, scores, start);
         } finally {
             rUnlock();
         }
     }
 
+    private static double parseScore(byte[] score) {
+        return parseScore(SafeEncoder.encode(score));
+    }
+
+    private static double parseScore(String value) {
+        switch (value) {
+            case "inf":
+            case "+inf":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                return Double.parseDouble(value);
+        }
+    }
+
+    @Override
+    public Long countAll() {
+        return cached(Collections.singletonList("count"), () -> {
+            rLock();
+            try {
+                return getReadRedis().zcard(getRankName());
+            } finally {
+                rUnlock();
+            }
+        });
+    }
+
+    @Override
+    public Long countBy(double minNodeScores, double maxNodeScores) {
+        return cached(Arrays.asList("countBy", minNodeScores, maxNodeScores), () -> {
+            rLock();
+            try {
+                return getReadRedis().zcount(getRankName(), minNodeScores, maxNodeScores);
+            } finally {
+                rUnlock();
+            }
+        });
+    }
+
     @Override
     public Long removeAll() {
         wLock();
         try {
-            return removeByRank(0, -1);
+            IncrCoalescer coalescer = incrCoalescer;
+            if (coalescer != null) {
+                coalescer.discardAll();
+            }
+            Object removed = redis.eval(REMOVE_ALL_SCRIPT, Arrays.asList(getRankName(), ResultCache.versionKey(getRankName())),
+                    Collections.<String>emptyList());
+            return removed instanceof Long ? (Long) removed : 0L;
         } finally {
+            invalidateCaches();
             wUnlock();
         }
     }
 
-    protected RedisManager getRedis() {
+    /**
+     * Loads the snapshot into a key next to the rank with pipelined ZADD batches of {@value #RESTORE_BATCH} nodes,
+     * then renames it over the rank in one script: readers see the old nodes until the rename, and a failed load
+     * leaves the rank untouched. Writes made meanwhile by other JVMs, or in lock-free mode, are lost.
+     *
+     * @throws IllegalStateException if the snapshot could not be written to redis
+     */
+    @Override
+    public void restore(RankSnapshot snapshot) {
+        if (!supportsRestoreByRename()) {
+            super.restore(snapshot);
+            return;
+        }
+        String restoreKey = RedisKeys.sameSlot(getRankName(), "-restore");
+        wLock();
+        try {
+            IncrCoalescer coalescer = incrCoalescer;
+            if (coalescer != null) {
+                coalescer.discardAll();
+            }
+            redis.del(restoreKey);
+            CachePipeline pipeline = redis.pipelined();
+            List<CompletableFuture<Long>> replies = new ArrayList<>();
+            Map<String, Double> batch = new HashMap<>();
+            while (snapshot.next()) {
+                batch.put(snapshot.getNodeId(), snapshot.getNodeScore());
+                if (batch.size() == RESTORE_BATCH) {
+                    replies.add(pipeline.zadd(restoreKey, batch));
+                    batch = new HashMap<>();
+                    if (replies.size() == RESTORE_BATCHES_PER_SYNC) {
+                        syncRestore(pipeline, replies, restoreKey);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                replies.add(pipeline.zadd(restoreKey, batch));
+            }
+            syncRestore(pipeline, replies, restoreKey);
+            List<String> keys = new ArrayList<>(Arrays.asList(restoreKey, getRankName()));
+            if (Objects.nonNull(resultCache)) {
+                keys.add(resultCache.getVersionKey());
+            }
+            if (Objects.isNull(redis.eval(RESTORE_SCRIPT, keys, Collections.<String>emptyList()))) {
+                redis.del(restoreKey);
+                throw new IllegalStateException("cannot rename " + restoreKey + " to " + getRankName());
+            }
+        } finally {
+            invalidateCaches();
+            wUnlock();
+        }
+    }
+
+    private void syncRestore(CachePipeline pipeline, List<CompletableFuture<Long>> replies, String restoreKey) {
+        pipeline.sync();
+        for (CompletableFuture<Long> reply : replies) {
+            if (reply.isCompletedExceptionally()) {
+                redis.del(restoreKey);
+                throw new IllegalStateException("cannot restore " + getRankName() + " into " + restoreKey);
+            }
+        }
+        replies.clear();
+    }
+
+    /**
+     * Turns on incr coalescing: incr() no longer calls redis but sums the deltas per nodeId in memory,
+     * they are written as one pipelined batch of ZINCRBY every flushIntervalMillis or as soon as
+     * maxPending nodeIds are waiting. incr() then returns null, and reads lag behind by up to one flush.
+     */
+    public synchronized void enableIncrCoalescing(long flushIntervalMillis, int maxPending) {
+        disableIncrCoalescing();
+        incrCoalescer = new IncrCoalescer(this, flushIntervalMillis, maxPending);
+    }
+
+    /**
+     * Writes the pending deltas and turns incr coalescing off.
+     */
+    public synchronized void disableIncrCoalescing() {
+        IncrCoalescer coalescer = incrCoalescer;
+        if (coalescer != null) {
+            incrCoalescer = null;
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Writes the pending deltas now instead of waiting for the next flush.
+     */
+    public void flushIncr() {
+        IncrCoalescer coalescer = incrCoalescer;
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+    }
+
+    /**
+     * Turns on the near cache: the first topK nodes of each direction are kept in this JVM, so range
+     * queries inside them need no redis call. Pages expire after ttlMillis and are dropped on every write
+     * through this rank and on keyspace notifications of the rank key, which need keyspace events
+     * enabled on the server (notify-keyspace-events "Kgz").
+     */
+    public synchronized void enableNearCache(int topK, long ttlMillis) {
+        disableNearCache();
+        NearCache cache = new NearCache(this, topK, ttlMillis);
+        cache.start();
+        nearCache = cache;
+    }
+
+    public synchronized void disableNearCache() {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            nearCache = null;
+            cache.stop();
+        }
+    }
+
+    /**
+     * Drops what this JVM cached of the rank, called after every write through it.
+     */
+    void invalidateCaches() {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+        if (resultCache != null) {
+            resultCache.invalidate();
+        }
+    }
+
+    /**
+     * Whether the rank can use the result cache of mp.rank.result-cache, i.e. all its writes go through
+     * {@link #versionedWrite(String, String...)} or otherwise increment the version.
+     */
+    boolean supportsResultCache() {
+        return true;
+    }
+
+    /**
+     * Whether {@link #restore(RankSnapshot)} can load the snapshot into one sorted set renamed over the rank key,
+     * i.e. the rank is that one sorted set holding the node scores.
+     */
+    boolean supportsRestoreByRename() {
+        return true;
+    }
+
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    <V> V cached(List<Object> query, Supplier<V> load) {
+        return Objects.nonNull(resultCache) ? resultCache.get(query, load) : load.get();
+    }
+
+    /**
+     * Runs the write command on the rank key and increments the version of the result cache in one script.
+     */
+    Object versionedWrite(String command, String... args) {
+        List<String> argv = new ArrayList<>(args.length + 1);
+        argv.add(command);
+        Collections.addAll(argv, args);
+        return redis.eval(VERSIONED_WRITE_SCRIPT, Arrays.asList(getRankName(), resultCache.getVersionKey()), argv);
+    }
+
+    /**
+     * Like {@link #versionedWrite(String, String...)} for a command taking many arguments, sent in chunks
+     * of whole groups of groupSize arguments, as lua unpack() is limited.
+     *
+     * @return the sum of the integer replies, null if a chunk failed
+     */
+    private Long versionedWriteChunked(String command, List<String> args, int groupSize) {
+        long sum = 0;
+        int chunk = VERSIONED_WRITE_CHUNK * groupSize;
+        for (int from = 0; from < args.size(); from += chunk) {
+            List<String> part = args.subList(from, Math.min(from + chunk, args.size()));
+            Object reply = versionedWrite(command, part.toArray(new String[0]));
+            if (Objects.isNull(reply)) return null;
+            sum += (Long) reply;
+        }
+        return sum;
+    }
+
+    /**
+     * Queues the version increment of the result cache on a pipeline of writes.
+     */
+    void queueVersionIncr(CachePipeline pipeline) {
+        if (resultCache != null) {
+            pipeline.incr(resultCache.getVersionKey());
+        }
+    }
+
+    /**
+     * Starts a batch whose operations are sent in one redis pipeline on execute().
+     */
+    @Override
+    public RankBatch batch() {
+        return new RedisRankBatch(this);
+    }
+
+    protected CacheManager getRedis() {
         return redis;
     }
 
+    /**
+     * @return where the read-only methods go, the replicas or the master
+     */
+    protected CacheManager getReadRedis() {
+        return redis.readReplicas();
+    }
+
+    /**
+     * {@link #NEIGHBORHOOD_SCRIPT} for caches without lua.
+     */
+    private static Object neighborhood(CacheManager cache, List<String> keys, List<String> args) {
+        String member = args.get(0);
+        if (keys.size() > 1) {
+            member = cache.hget(keys.get(1), member, String.class);
+            if (Objects.isNull(member)) return null;
+        }
+        boolean desc = "1".equals(args.get(1));
+        Long rank = desc ? cache.zrevrank(keys.get(0), member) : cache.zrank(keys.get(0), member);
+        if (Objects.isNull(rank)) return null;
+        long start = Math.max(rank - Long.parseLong(args.get(2)), 0);
+        long stop = rank + Long.parseLong(args.get(3));
+        List<String> members = new ArrayList<>();
+        for (byte[] item : cache.zrangeWithScoresRaw(keys.get(0), start, stop, desc)) {
+            members.add(SafeEncoder.encode(item));
+        }
+        return Arrays.asList(start, members);
+    }
+
+    /**
+     * {@link #VERSIONED_WRITE_SCRIPT} for caches without lua, knows the commands sent by {@link #versionedWrite(String, String...)}.
+     */
+    private static Object versionedWrite(CacheManager cache, List<String> keys, List<String> args) {
+        String key = keys.get(0);
+        Object reply;
+        switch (args.get(0)) {
+            case "ZADD":
+                Map<String, Double> members = new LinkedHashMap<>();
+                for (int i = 1; i + 1 < args.size(); i += 2) {
+                    members.put(args.get(i + 1), parseScore(args.get(i)));
+                }
+                reply = cache.zadd(key, members);
+                break;
+            case "ZINCRBY":
+                Double score = cache.zincrby(key, parseScore(args.get(1)), args.get(2));
+                reply = Objects.nonNull(score) ? RedisScript.Emulation.score(score) : null;
+                break;
+            case "ZREM":
+                reply = cache.zrem(key, args.subList(1, args.size()).toArray(new String[0]));
+                break;
+            case "ZREMRANGEBYRANK":
+                reply = cache.zremrangeByRank(key, Long.parseLong(args.get(1)), Long.parseLong(args.get(2)));
+                break;
+            case "ZREMRANGEBYSCORE":
+                reply = cache.zremrangeByScore(key, parseScore(args.get(1)), parseScore(args.get(2)));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + args.get(0));
+        }
+        cache.incr(keys.get(1));
+        return reply;
+    }
+
     @Override
     public boolean equals(Object o) {
         return super.equals(o);
     }
 
+    public boolean isLockFree() {
+        return lockFree;
+    }
+
     protected void wLock() {
-        wLock.lock();
+        if (!lockFree) lock(wLock, WRITE_LOCK_WAIT);
     }
 
     protected void wUnlock() {
-        wLock.unlock();
+        if (!lockFree) wLock.unlock();
     }
 
     protected void rLock() {
-        rLock.lock();
+        if (!lockFree) lock(rLock, READ_LOCK_WAIT);
+    }
+
+    /**
+     * Takes the lock, the time spent waiting for it is recorded as a latency of the redis metrics.
+     */
+    private void lock(Lock lock, String metric) {
+        if (lock.tryLock()) {
+            redis.getMetrics().recordLatency(metric, 0);
+            return;
+        }
+        long begin = System.nanoTime();
+        lock.lock();
+        redis.getMetrics().recordLatency(metric, System.nanoTime() - begin);
     }
 
     protected void rUnlock() {
-        rLock.unlock();
+        if (!lockFree) rLock.unlock();
     }
 }
 
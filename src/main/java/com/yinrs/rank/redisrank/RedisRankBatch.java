@@ -0,0 +1,52 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CachePipeline;
+import com.yinrs.rank.RankBatch;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Batch of a {@link RedisRank}, every queued operation is one command of a redis pipeline,
+ * so execute() costs one round trip however many operations were queued.
+ */
+class RedisRankBatch extends RankBatch {
+    private final RedisRank rank;
+    private final CachePipeline pipeline;
+
+    RedisRankBatch(RedisRank rank) {
+        this.rank = rank;
+        this.pipeline = rank.getRedis().pipelined();
+    }
+
+    @Override
+    public CompletableFuture<Void> insertOrUpdate(String nodeId, double nodeScores) {
+        return pipeline.zadd(rank.getRankName(), nodeScores, nodeId).thenApply(added -> null);
+    }
+
+    @Override
+    public CompletableFuture<Double> incr(String nodeId, double nodeScores) {
+        return pipeline.zincrby(rank.getRankName(), nodeScores, nodeId);
+    }
+
+    @Override
+    public CompletableFuture<Long> remove(String... nodeIds) {
+        return pipeline.zrem(rank.getRankName(), nodeIds);
+    }
+
+    @Override
+    public CompletableFuture<Double> getNodeVal(String nodeId) {
+        return pipeline.zscore(rank.getRankName(), nodeId);
+    }
+
+    @Override
+    public void execute() {
+        rank.queueVersionIncr(pipeline);
+        rank.wLock();
+        try {
+            pipeline.sync();
+        } finally {
+            rank.invalidateCaches();
+            rank.wUnlock();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.yinrs.rank.redisrank;
+
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.rank.RankBatch;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankSnapshot;
+
+import java.nio.file.Path;
+import java.util.*;
+
+
+/**
+ * Desc rank where equal scores are ordered by time, the earlier one first, like {@link RedisRankDESCWithTimestamp}.
+ * Instead of a composite member and a side hash, score and time are packed into the zset score by a
+ * {@link ScorePacker}, so members stay plain nodeIds and every read is a single command.
+ * Scores must be integers within the score bits of the packer.
+ */
+public class RedisRankDESCWithPackedTimestamp extends RedisRank {
+    /**
+     * KEYS: zset, optionally the version of the result cache. ARGV: nodeId, delta, inverted time, 2^timeBits, min score, max score.
+     * Adds the delta to the unpacked score, repacks it with the new time and returns the new score.
+     */
+    private static final RedisScript INCR_SCRIPT = new RedisScript(
+            "local factor = tonumber(ARGV[4])\n" +
+                    "local score = tonumber(ARGV[2])\n" +
+                    "local old = redis.call('ZSCORE', KEYS[1], ARGV[1])\n" +
+                    "if old then score = score + math.floor(tonumber(old) / factor) end\n" +
+                    "if score < tonumber(ARGV[5]) or score > tonumber(ARGV[6]) then\n" +
+                    "    return redis.error_reply('packed score ' .. score .. ' out of range')\n" +
+                    "end\n" +
+                    "redis.call('ZADD', KEYS[1], score * factor + tonumber(ARGV[3]), ARGV[1])\n" +
+                    "if KEYS[2] then redis.call('INCR', KEYS[2]) end\n" +
+                    "return score",
+            RedisRankDESCWithPackedTimestamp::incr);
+
+    private final ScorePacker packer;
+
+    RedisRankDESCWithPackedTimestamp(CacheManager redis, String rankName) {
+        super(redis, rankName);
+        this.packer = ScorePacker.fromConfig();
+    }
+
+    static RedisRankDESCWithPackedTimestamp getInstance(CacheManager redis, String rankName) {
+        return new RedisRankDESCWithPackedTimestamp(redis, rankName);
+    }
+
+    @Override
+    @Deprecated
+    public void insertOrUpdate(String nodeId, double nodeScores) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public Long insertOrUpdate(List<RankNode> list) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public Double incr(String nodeId, double nodeScores) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * A {@link RankSnapshot} holds no time, the order of equal scores could not be restored.
+     */
+    @Override
+    @Deprecated
+    public void snapshotTo(Path path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void restore(RankSnapshot snapshot) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the score or date does not fit the packer
+     */
+    public void insertOrUpdate(String nodeId, double nodeScores, Date date) {
+        long packed = packer.pack(nodeScores, date.getTime());
+        wLock();
+        try {
+            if (Objects.nonNull(getResultCache())) {
+                versionedWrite("ZADD", Long.toString(packed), nodeId);
+            } else {
+                getRedis().zadd(getRankName(), packed, nodeId);
+            }
+        } finally {
+            invalidateCaches();
+            wUnlock();
+        }
+    }
+
+    /**
+     * @return the new score, null if redis failed or the new score does not fit the packer
+     * @throws IllegalArgumentException if the date does not fit the packer
+     */
+    public Double incr(String nodeId, double nodeScores, Date date) {
+        long delta = packer.checkScore(nodeScores);
+        long invertedTime = packer.invertTime(date.getTime());
+        wLock();
+        try {
+            List<String> keys = Objects.nonNull(getResultCache())
+                    ? Arrays.asList(getRankName(), getResultCache().getVersionKey()) : Collections.singletonList(getRankName());
+            Object score = getRedis().eval(INCR_SCRIPT, keys, Arrays.asList(nodeId,
+                    Long.toString(delta), Long.toString(invertedTime), Long.toString(packer.getTimeFactor()),
+                    Long.toString(packer.getMinScore()), Long.toString(packer.getMaxScore())));
+            return Objects.nonNull(score) ? ((Long) score).doubleValue() : null;
+        } finally {
+            invalidateCaches();
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Double getNodeVal(String nodeId) {
+        Double packed = super.getNodeVal(nodeId);
+        return Objects.nonNull(packed) ? packer.score(packed) : null;
+    }
+
+    @Override
+    public long removeByScore(double minNodeScores, double maxNodeScores) {
+        return super.removeByScore(packer.lowest(minNodeScores), packer.highest(maxNodeScores));
+    }
+
+    @Override
+    public Long countBy(double minNodeScores, double maxNodeScores) {
+        return super.countBy(packer.lowest(minNodeScores), packer.highest(maxNodeScores));
+    }
+
+    public RankNodeWithTimestamp getDESCRankNode(String nodeId) {//start with 0
+        List<RankNode> nodes = descNeighborhood(nodeId, 0, 0);
+        if (Objects.isNull(nodes) || nodes.isEmpty()) return null;
+        return (RankNodeWithTimestamp) nodes.get(0);
+    }
+
+    @Override
+    double toNodeScore(double score) {
+        return packer.score(score);
+    }
+
+    @Override
+    RankNode toRankNode(String member, long rank, double score) {
+        return new RankNodeWithTimestamp(member, rank, packer.score(score), new Date(packer.timeMillis(score)));
+    }
+
+    @Override
+    @Deprecated
+    public synchronized void enableIncrCoalescing(long flushIntervalMillis, int maxPending) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public RankBatch batch() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@link #INCR_SCRIPT} for caches without lua.
+     */
+    private static Object incr(CacheManager cache, List<String> keys, List<String> args) {
+        double factor = Double.parseDouble(args.get(3));
+        double score = Double.parseDouble(args.get(1));
+        Double old = cache.zscore(keys.get(0), args.get(0));
+        if (Objects.nonNull(old)) score += Math.floor(old / factor);
+        if (score < Double.parseDouble(args.get(4)) || score > Double.parseDouble(args.get(5))) {
+            throw new IllegalStateException("packed score " + score + " out of range");
+        }
+        cache.zadd(keys.get(0), score * factor + Double.parseDouble(args.get(2)), args.get(0));
+        if (keys.size() > 1) cache.incr(keys.get(1));
+        return (long) score;
+    }
+
+    public ScorePacker getPacker() {
+        return packer;
+    }
+}
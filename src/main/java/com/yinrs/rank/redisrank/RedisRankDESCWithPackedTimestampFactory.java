@@ -0,0 +1,22 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.rank.RankFactory;
+
+public class RedisRankDESCWithPackedTimestampFactory implements RankFactory<RedisRankDESCWithPackedTimestamp> {
+    @Override
+    public Class<RedisRankDESCWithPackedTimestamp> rankType() {
+        return RedisRankDESCWithPackedTimestamp.class;
+    }
+
+    @Override
+    public RedisRankDESCWithPackedTimestamp create(String rankName) {
+        return create(rankName, RedisManager.I);
+    }
+
+    @Override
+    public RedisRankDESCWithPackedTimestamp create(String rankName, CacheManager cache) {
+        return RedisRankDESCWithPackedTimestamp.getInstance(cache, rankName);
+    }
+}
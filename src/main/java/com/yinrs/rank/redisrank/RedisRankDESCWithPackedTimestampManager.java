@@ -0,0 +1,41 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.rank.RankManager;
+
+public class RedisRankDESCWithPackedTimestampManager<T extends RedisRankDESCWithPackedTimestamp> extends RedisRankManager<T> implements RankManager<T> {
+    private static RedisRankDESCWithPackedTimestampManager singleton = null;
+    private final static String RANKNAME_PREFIX = "redisrankwithpackedtimestampp4c8k3d6_";
+    private final static String RankNameSet_Key = "RedisRankDESCWithPackedTimestamp_RankName_Set_Key";
+
+    public static RedisRankDESCWithPackedTimestampManager instance() {
+        if (singleton == null) {
+            synchronized (RedisRankDESCWithPackedTimestampManager.class) {
+                if (singleton == null) {
+                    singleton = new RedisRankDESCWithPackedTimestampManager(RANKNAME_PREFIX, RankNameSet_Key, RedisRankDESCWithPackedTimestamp.class);
+                }
+            }
+        }
+        return singleton;
+    }
+
+    RedisRankDESCWithPackedTimestampManager(String rankName_prefix, String rankNameSet_Key, Class<T> clazz) {
+        super(rankName_prefix, rankNameSet_Key, clazz);
+    }
+
+    public RedisRankDESCWithPackedTimestampManager(String rankName_prefix, String rankNameSet_Key, Class<T> clazz, CacheManager cache) {
+        super(rankName_prefix, rankNameSet_Key, clazz, cache);
+    }
+
+    /**
+     * The packed score moves with the node, so its time is kept. Only atomic when both ranks share a cluster slot,
+     * otherwise unsupported, as the score would have to be re-packed through insertOrUpdate.
+     */
+    @Override
+    public void move(T src, T tgt, String nodeId) {
+        if (!src.getRedis().isSameSlot(src.getRankName(), tgt.getRankName())) {
+            throw new UnsupportedOperationException("ranks " + src.getRankName() + " and " + tgt.getRankName() + " are in different cluster slots");
+        }
+        super.move(src, tgt, nodeId);
+    }
+}
@@ -0,0 +1,15 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.rank.RankManagerProvider;
+
+public class RedisRankDESCWithPackedTimestampManagerProvider implements RankManagerProvider<RedisRankDESCWithPackedTimestampManager> {
+    @Override
+    public Class<RedisRankDESCWithPackedTimestampManager> managerType() {
+        return RedisRankDESCWithPackedTimestampManager.class;
+    }
+
+    @Override
+    public RedisRankDESCWithPackedTimestampManager instance() {
+        return RedisRankDESCWithPackedTimestampManager.instance();
+    }
+}
@@ -1,23 +1,165 @@
 package com.yinrs.rank.redisrank;
 
 
-import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.cache.redis.RedisKeys;
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.rank.RankBatch;
 import com.yinrs.rank.RankNode;
-import org.apache.commons.lang3.StringUtils;
+import com.yinrs.rank.RankSnapshot;
+import com.yinrs.rank.RankPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.Tuple;
 
+import java.nio.file.Path;
 import java.util.*;
 
 
+/**
+ * Desc rank where equal scores are ordered by time, the earlier one first: the zset member is the composite
+ * "invertTime_nodeId", and a side hash maps each nodeId to its composite member.
+ * <p>
+ * Upgrading from a version whose side hash was the un-tagged "name-hash": each JVM moves that hash to
+ * "{name}-hash" on the first use of the rank, see {@link #migrateLegacyHash()}. Mappings a JVM of the old
+ * version writes after that stay in the legacy hash until migrateLegacyHash() is run again, so run it once
+ * more when the last old JVM is gone.
+ */
 public class RedisRankDESCWithTimestamp extends RedisRank {
+    private static final Logger log = LoggerFactory.getLogger(RedisRankDESCWithTimestamp.class);
+
+    /**
+     * KEYS: zset, hash. ARGV: nodeId, new composite nodeId, score, "1" to add the old score.
+     * Replaces the old composite member of nodeId and returns the final score.
+     */
+    private static final RedisScript UPSERT_SCRIPT = new RedisScript(
+            "local old = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+                    "local score = tonumber(ARGV[3])\n" +
+                    "if old then\n" +
+                    "    if ARGV[4] == '1' then\n" +
+                    "        local oldScore = redis.call('ZSCORE', KEYS[1], old)\n" +
+                    "        if oldScore then score = score + tonumber(oldScore) end\n" +
+                    "    end\n" +
+                    "    redis.call('ZREM', KEYS[1], old)\n" +
+                    "end\n" +
+                    "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])\n" +
+                    "redis.call('ZADD', KEYS[1], score, ARGV[2])\n" +
+                    "return redis.call('ZSCORE', KEYS[1], ARGV[2])",
+            RedisRankDESCWithTimestamp::upsert);
+
+    /**
+     * KEYS: zset, hash. ARGV: nodeIds. Returns the number of removed members.
+     */
+    private static final RedisScript REMOVE_SCRIPT = new RedisScript(
+            "local removed = 0\n" +
+                    "for i = 1, #ARGV do\n" +
+                    "    local old = redis.call('HGET', KEYS[2], ARGV[i])\n" +
+                    "    if old then\n" +
+                    "        redis.call('HDEL', KEYS[2], ARGV[i])\n" +
+                    "        removed = removed + redis.call('ZREM', KEYS[1], old)\n" +
+                    "    end\n" +
+                    "end\n" +
+                    "return removed",
+            RedisRankDESCWithTimestamp::remove);
+
+    /**
+     * KEYS: zset, hash.
+     */
+    private static final RedisScript REMOVE_ALL_SCRIPT = new RedisScript(
+            "redis.call('DEL', KEYS[2])\n" +
+                    "return redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -1)",
+            (cache, keys, args) -> {
+                cache.del(keys.get(1));
+                return cache.zremrangeByRank(keys.get(0), 0, -1);
+            });
+
+    /**
+     * KEYS: zset, hash. ARGV: nodeId.
+     */
+    private static final RedisScript GET_NODE_VAL_SCRIPT = new RedisScript(
+            "local comp = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+                    "if not comp then return false end\n" +
+                    "return redis.call('ZSCORE', KEYS[1], comp)",
+            (cache, keys, args) -> {
+                String comp = cache.hget(keys.get(1), args.get(0), String.class);
+                if (Objects.isNull(comp)) return null;
+                Double score = cache.zscore(keys.get(0), comp);
+                return Objects.nonNull(score) ? RedisScript.Emulation.score(score) : null;
+            });
+
+    /**
+     * KEYS: zset, hash. ARGV: nodeId.
+     */
+    private static final RedisScript GET_DESC_RANK_SCRIPT = new RedisScript(
+            "local comp = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+                    "if not comp then return false end\n" +
+                    "return redis.call('ZREVRANK', KEYS[1], comp)",
+            (cache, keys, args) -> {
+                String comp = cache.hget(keys.get(1), args.get(0), String.class);
+                return Objects.nonNull(comp) ? cache.zrevrank(keys.get(0), comp) : null;
+            });
+
+    /**
+     * KEYS: zset, hash. ARGV: nodeId. Returns {composite nodeId, desc rank, score}.
+     */
+    private static final RedisScript GET_DESC_RANK_NODE_SCRIPT = new RedisScript(
+            "local comp = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+                    "if not comp then return {} end\n" +
+                    "local rank = redis.call('ZREVRANK', KEYS[1], comp)\n" +
+                    "if not rank then return {} end\n" +
+                    "return {comp, rank, redis.call('ZSCORE', KEYS[1], comp)}",
+            (cache, keys, args) -> {
+                String comp = cache.hget(keys.get(1), args.get(0), String.class);
+                if (Objects.isNull(comp)) return Collections.emptyList();
+                Long rank = cache.zrevrank(keys.get(0), comp);
+                if (Objects.isNull(rank)) return Collections.emptyList();
+                return Arrays.asList(comp, rank, RedisScript.Emulation.score(cache.zscore(keys.get(0), comp)));
+            });
+
+    /**
+     * KEYS: zset, hash. ARGV: nodeId, composite nodeId, ... read from the legacy hash.
+     * Copies the mappings the hash lacks; a nodeId written since under the hash keeps its mapping, and the
+     * composite member of the legacy mapping is removed from the zset. Returns the number of mappings copied.
+     */
+    private static final RedisScript MIGRATE_SCRIPT = new RedisScript(
+            "local copied = 0\n" +
+                    "for i = 1, #ARGV, 2 do\n" +
+                    "    local current = redis.call('HGET', KEYS[2], ARGV[i])\n" +
+                    "    if not current then\n" +
+                    "        redis.call('HSET', KEYS[2], ARGV[i], ARGV[i + 1])\n" +
+                    "        copied = copied + 1\n" +
+                    "    elseif current ~= ARGV[i + 1] then\n" +
+                    "        redis.call('ZREM', KEYS[1], ARGV[i + 1])\n" +
+                    "    end\n" +
+                    "end\n" +
+                    "return copied",
+            (cache, keys, args) -> {
+                long copied = 0;
+                for (int i = 0; i + 1 < args.size(); i += 2) {
+                    String current = cache.hget(keys.get(1), args.get(i), String.class);
+                    if (Objects.isNull(current)) {
+                        cache.hset(keys.get(1), args.get(i), args.get(i + 1));
+                        copied++;
+                    } else if (!current.equals(args.get(i + 1))) {
+                        cache.zrem(keys.get(0), args.get(i + 1));
+                    }
+                }
+                return copied;
+            });
+
+    private static final int MIGRATE_CHUNK = 1000;
+
     private NodeIdAndDateManager nodeIdManager;
+    private volatile boolean legacyMigrated;
 
-    RedisRankDESCWithTimestamp(RedisManager redis, String rankName) {
+    RedisRankDESCWithTimestamp(CacheManager redis, String rankName) {
         super(redis, rankName);
-        nodeIdManager = new NodeIdAndDateManager(getRedis(), rankName);
+        nodeIdManager = new NodeIdAndDateManager(rankName);
     }
 
-    static RedisRankDESCWithTimestamp getInstance(RedisManager redis, String rankName) {
+    static RedisRankDESCWithTimestamp getInstance(CacheManager redis, String rankName) {
         return new RedisRankDESCWithTimestamp(redis, rankName);
     }
 
@@ -39,58 +181,38 @@ public class RedisRankDESCWithTimestamp extends RedisRank {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * A {@link RankSnapshot} holds no time, the order of equal scores could not be restored.
+     */
+    @Override
+    @Deprecated
+    public void snapshotTo(Path path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void restore(RankSnapshot snapshot) {
+        throw new UnsupportedOperationException();
+    }
+
     public void insertOrUpdate(String nodeId, double nodeScores, Date date) {
-        wLock();
-        try {
-            String[] compNodeIds = nodeIdManager.updateCompNodeId(nodeId, date);
-            if (!StringUtils.isEmpty(compNodeIds[0])) {
-                super.remove(compNodeIds[0]);
-            }
-            super.insertOrUpdate(compNodeIds[1], nodeScores);
-        } finally {
-            wUnlock();
-        }
+        upsert(nodeId, nodeScores, date, false);
     }
 
     public Double incr(String nodeId, double nodeScores, Date date) {
-        wLock();
-        try {
-            String[] compNodeIds = nodeIdManager.updateCompNodeId(nodeId, date);
-            Double oldVal = super.getNodeValWithoutLock(compNodeIds[0]);
-            if (!StringUtils.isEmpty(compNodeIds[0])) {
-                super.remove(compNodeIds[0]);
-            }
-            double finalVal = Objects.nonNull(oldVal) ? oldVal + nodeScores : nodeScores;
-            super.insertOrUpdate(compNodeIds[1], finalVal);
-            return finalVal;
-        } finally {
-            wUnlock();
-        }
+        return upsert(nodeId, nodeScores, date, true);
     }
 
     public Double getNodeVal(String nodeId) {
-        rLock();
-        try {
-            String oldCompNodeId = nodeIdManager.getOldCompNodeId(nodeId);
-            return super.getNodeVal(oldCompNodeId);
-        } finally {
-            rUnlock();
-        }
+        Object val = getReadRedis().eval(GET_NODE_VAL_SCRIPT, keys(), Collections.singletonList(nodeId));
+        return Objects.nonNull(val) ? Double.valueOf((String) val) : null;
     }
 
     public long remove(String... nodeIds) {
-        wLock();
-        try {
-            if (nodeIds == null || nodeIds.length == 0) return 0;
-            String[] oldCompNodeId = new String[nodeIds.length];
-            for (int i = 0; i < nodeIds.length; i++) {
-                oldCompNodeId[i] = nodeIdManager.getOldCompNodeId(nodeIds[i]);
-            }
-            nodeIdManager.remove(nodeIds);//redis manager memory
-            return super.remove(oldCompNodeId);
-        } finally {
-            wUnlock();
-        }
+        if (nodeIds == null || nodeIds.length == 0) return 0;
+        Object removed = getRedis().eval(REMOVE_SCRIPT, keys(), Arrays.asList(nodeIds));
+        return Objects.nonNull(removed) ? (Long) removed : 0;
     }
 
     @Deprecated
@@ -114,25 +236,14 @@ public class RedisRankDESCWithTimestamp extends RedisRank {
     }
 
     public Long getDESCRank(String nodeId) {//start with 0
-        rLock();
-        try {
-            String oldCompNodeId = nodeIdManager.getOldCompNodeId(nodeId);
-            return super.getDESCRank(oldCompNodeId);
-        } finally {
-            rUnlock();
-        }
+        return (Long) getReadRedis().eval(GET_DESC_RANK_SCRIPT, keys(), Collections.singletonList(nodeId));
     }
 
     public RankNodeWithTimestamp getDESCRankNode(String nodeId) {//start with 0
-        rLock();
-        try {
-            String oldCompNodeId = nodeIdManager.getOldCompNodeId(nodeId);
-            Long descRank = super.getDESCRank(oldCompNodeId);
-            Double scores = super.getNodeVal(oldCompNodeId);
-            return new RankNodeWithTimestamp(nodeId, descRank, scores, NodeIdAndDateManager.outputDate(oldCompNodeId));
-        } finally {
-            rUnlock();
-        }
+        List<?> reply = (List<?>) getReadRedis().eval(GET_DESC_RANK_NODE_SCRIPT, keys(), Collections.singletonList(nodeId));
+        if (Objects.isNull(reply) || reply.isEmpty()) return null;
+        String compNodeId = (String) reply.get(0);
+        return new RankNodeWithTimestamp(nodeId, (Long) reply.get(1), Double.valueOf((String) reply.get(2)), NodeIdAndDateManager.outputDate(compNodeId));
     }
 
     @Deprecated
@@ -141,103 +252,236 @@ public class RedisRankDESCWithTimestamp extends RedisRank {
     }
 
     public List<RankNode> descRangeByRankWithScores(long start, long end) {//start with 0
-        rLock();
-        try {
-            Set<Tuple> tuples = getRedis().zrevrangeWithScores(getRankName(), start, end);
-            if (Objects.nonNull(tuples)) {
-                Iterator<Tuple> iterator = tuples.iterator();
-                List<RankNode> list = new LinkedList<>();
-                while (iterator.hasNext()) {
-                    Tuple next = iterator.next();
-                    String compNodeId = next.getElement();
-                    list.add(new RankNodeWithTimestamp(NodeIdAndDateManager.outputNodeId(compNodeId), start++, next.getScore(), NodeIdAndDateManager.outputDate(compNodeId)));
-                }
-                return list;
+        Set<Tuple> tuples = getReadRedis().zrevrangeWithScores(getRankName(), start, end);
+        if (Objects.nonNull(tuples)) {
+            Iterator<Tuple> iterator = tuples.iterator();
+            List<RankNode> list = new LinkedList<>();
+            while (iterator.hasNext()) {
+                Tuple next = iterator.next();
+                String compNodeId = next.getElement();
+                list.add(new RankNodeWithTimestamp(NodeIdAndDateManager.outputNodeId(compNodeId), start++, next.getScore(), NodeIdAndDateManager.outputDate(compNodeId)));
             }
-        } finally {
-            rUnlock();
+            return list;
         }
         return null;
     }
 
+    @Override
+    @Deprecated
+    public List<RankNode> ascNeighborhood(String nodeId, int above, int below) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<RankNode> descNeighborhood(String nodeId, int above, int below) {
+        return neighborhood(keys(), true, nodeId, above, below);
+    }
+
+    @Override
+    @Deprecated
+    public RankPage ascRangePage(long start, long end) {//start with 0
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    String toNodeId(String member) {
+        return NodeIdAndDateManager.outputNodeId(member);
+    }
+
+    @Override
+    RankNode toRankNode(String member, long rank, double score) {
+        return new RankNodeWithTimestamp(NodeIdAndDateManager.outputNodeId(member), rank, score, NodeIdAndDateManager.outputDate(member));
+    }
+
     //public abstract Long countAll();
     //public abstract Long countBy(double minNodeScores, double maxNodeScores);
 
-    public Long removeAll() {
-        wLock();
-        try {
-            nodeIdManager.removeAll();
-            return getRedis().zremrangeByRank(getRankName(), 0, -1);
-        } finally {
-            wUnlock();
-        }
+    @Override
+    @Deprecated
+    public synchronized void enableIncrCoalescing(long flushIntervalMillis, int maxPending) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public synchronized void enableNearCache(int topK, long ttlMillis) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public RankBatch batch() {
+        throw new UnsupportedOperationException();
     }
 
     /**
-     * warning:this class is not thread safe!
-     * must be used in RedisRankWithTimestamp with ReadWriteLock.
+     * The scripts of this rank do not increment the version of the result cache.
      */
-    private static class NodeIdAndDateManager {
-        private RedisManager redis;
-        private String key;
+    @Override
+    boolean supportsResultCache() {
+        return false;
+    }
 
-        public NodeIdAndDateManager(RedisManager redis, String key) {
-            this.redis = redis;
-            this.key = key + "-hash";
+    /**
+     * Also deletes the legacy side hash, which is in another cluster slot.
+     */
+    public Long removeAll() {
+        Long removed = (Long) getRedis().eval(REMOVE_ALL_SCRIPT, keys(), Collections.<String>emptyList());
+        String legacy = NodeIdAndDateManager.legacyKey(getRankName());
+        if (!legacy.equals(nodeIdManager.getKey())) {
+            getRedis().del(legacy);
         }
+        return removed;
+    }
+
+    private Double upsert(String nodeId, double nodeScores, Date date, boolean incr) {
+        String newCompNodeId = NodeIdAndDateManager.compNodeId(nodeId, date);
+        Object finalVal = getRedis().eval(UPSERT_SCRIPT, keys(),
+                Arrays.asList(nodeId, newCompNodeId, Double.toString(nodeScores), incr ? "1" : "0"));
+        return Objects.nonNull(finalVal) ? Double.valueOf((String) finalVal) : null;
+    }
 
-        public String getOldCompNodeId(String orgNodeId) {
-            return redis.hget(key, orgNodeId);
+    /**
+     * {@link #UPSERT_SCRIPT} for caches without lua.
+     */
+    private static Object upsert(CacheManager cache, List<String> keys, List<String> args) {
+        String old = cache.hget(keys.get(1), args.get(0), String.class);
+        double score = Double.parseDouble(args.get(2));
+        if (Objects.nonNull(old)) {
+            if ("1".equals(args.get(3))) {
+                Double oldScore = cache.zscore(keys.get(0), old);
+                if (Objects.nonNull(oldScore)) score += oldScore;
+            }
+            cache.zrem(keys.get(0), old);
         }
+        cache.hset(keys.get(1), args.get(0), args.get(1));
+        cache.zadd(keys.get(0), score, args.get(1));
+        Double finalScore = cache.zscore(keys.get(0), args.get(1));
+        return Objects.nonNull(finalScore) ? RedisScript.Emulation.score(finalScore) : null;
+    }
 
-        public String[] getAllCompNodeId() {
-            Map<String, String> map = redis.hgetAll(key);
-            String[] nodeIds = new String[map.size()];
-            Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
-            int i = 0;
-            while (iterator.hasNext()) {
-                nodeIds[i] = iterator.next().getValue();
+    /**
+     * {@link #REMOVE_SCRIPT} for caches without lua.
+     */
+    private static Object remove(CacheManager cache, List<String> keys, List<String> args) {
+        long removed = 0;
+        for (String nodeId : args) {
+            String old = cache.hget(keys.get(1), nodeId, String.class);
+            if (Objects.nonNull(old)) {
+                cache.hdel(keys.get(1), nodeId);
+                removed += cache.zrem(keys.get(0), old);
             }
-            return nodeIds;
         }
+        return removed;
+    }
+
+    /**
+     * Reads migrate the legacy side hash first when this JVM has not done it yet.
+     */
+    @Override
+    protected CacheManager getReadRedis() {
+        migrateLegacyHashOnce();
+        return super.getReadRedis();
+    }
 
-        public String[] updateCompNodeId(String orgNodeId, Date date) {
-            String oldCompNodeId = getOldCompNodeId(orgNodeId);
-            String newCompNodeId = invertTime(date.getTime()) + "_" + orgNodeId;
-            if (!StringUtils.isEmpty(oldCompNodeId)) {
-                remove(orgNodeId);
+    private List<String> keys() {
+        migrateLegacyHashOnce();
+        return sideKeys();
+    }
+
+    private List<String> sideKeys() {
+        return Arrays.asList(getRankName(), nodeIdManager.getKey());
+    }
+
+    /**
+     * Without the write lock of the rank: it may be called by a reader holding the read lock.
+     * The script of each chunk is atomic and keeps the mappings written meanwhile, so none is needed.
+     * A failure is logged and the migration tried again on the next use.
+     */
+    private void migrateLegacyHashOnce() {
+        if (legacyMigrated) return;
+        synchronized (this) {
+            if (legacyMigrated) return;
+            try {
+                migrate();
+                legacyMigrated = true;
+            } catch (IllegalStateException e) {
+                log.error("migrate legacy hash of rank " + getRankName() + " ex", e);
             }
-            redis.hset(key, orgNodeId, newCompNodeId);
-            return new String[]{oldCompNodeId, newCompNodeId};
         }
+    }
 
-        public void remove(String... orgNodeId) {
-            if (Objects.nonNull(orgNodeId) && orgNodeId.length > 0) {
-                List<String> list = new LinkedList<>();
-                for (int i = 0; i < orgNodeId.length; i++) {
-                    if (!StringUtils.isEmpty(orgNodeId[i])) {
-                        list.add(orgNodeId[i]);
-                    }
-                }
-                if (list.size() > 0) {
-                    orgNodeId = new String[list.size()];
-                    for (int i = 0; i < list.size(); i++) {
-                        orgNodeId[i] = list.get(i);
-                    }
-                    redis.hdel(key, orgNodeId);
+    /**
+     * Moves the side table of a rank created before it was hash tagged, "name-hash", to its current key,
+     * {@value #MIGRATE_CHUNK} mappings per script, and deletes them from the legacy hash as they are moved.
+     * Every JVM does it on the first use of the rank; run it again once no JVM of the old version writes
+     * the legacy hash any more. It can be run any number of times and then only moves what is left.
+     *
+     * @return the number of mappings copied
+     * @throws IllegalStateException if redis failed, the mappings moved so far stay moved
+     */
+    public long migrateLegacyHash() {
+        wLock();
+        try {
+            return migrate();
+        } finally {
+            invalidateCaches();
+            wUnlock();
+        }
+    }
+
+    private long migrate() {
+        String legacy = NodeIdAndDateManager.legacyKey(getRankName());
+        if (legacy.equals(nodeIdManager.getKey())) return 0;
+        long copied = 0;
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<Map.Entry<String, String>> page = getRedis().hscan(legacy, cursor, MIGRATE_CHUNK);
+            if (Objects.isNull(page)) {
+                throw new IllegalStateException("cannot scan " + legacy);
+            }
+            List<String> args = new ArrayList<>(2 * page.getResult().size());
+            String[] nodeIds = new String[page.getResult().size()];
+            for (Map.Entry<String, String> entry : page.getResult()) {
+                nodeIds[args.size() / 2] = entry.getKey();
+                args.add(entry.getKey());
+                args.add(entry.getValue());
+            }
+            if (nodeIds.length > 0) {
+                Object reply = getRedis().eval(MIGRATE_SCRIPT, sideKeys(), args);
+                if (Objects.isNull(reply)) {
+                    throw new IllegalStateException("cannot migrate " + legacy + " to " + nodeIdManager.getKey());
                 }
+                copied += (Long) reply;
+                getRedis().hdel(legacy, nodeIds);
             }
+            cursor = page.getStringCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return copied;
+    }
+
+    /**
+     * Maps the original nodeId to the composite member "invertTime_nodeId" stored in the zset.
+     * The mapping lives in the "{name}-hash" side table, in the slot of the zset, and is only touched
+     * by the lua scripts above, which keep it consistent with the zset.
+     */
+    private static class NodeIdAndDateManager {
+        private String key;
+
+        public NodeIdAndDateManager(String key) {
+            this.key = RedisKeys.sameSlot(key, "-hash");
         }
 
-        public void removeAll() {
-            Map<String, String> map = redis.hgetAll(key);
-            String[] orgNodeIds = new String[map.size()];
-            Iterator<String> iterator = map.keySet().iterator();
-            int i = 0;
-            while (iterator.hasNext()) {
-                orgNodeIds[i] = iterator.next();
-            }
-            remove(orgNodeIds);
+        public static String legacyKey(String key) {
+            return key + "-hash";
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static String compNodeId(String orgNodeId, Date date) {
+            return invertTime(date.getTime()) + "_" + orgNodeId;
         }
 
         public static Date outputDate(String compNodeId) {
@@ -253,4 +497,3 @@ public class RedisRankDESCWithTimestamp extends RedisRank {
         }
     }
 }
-
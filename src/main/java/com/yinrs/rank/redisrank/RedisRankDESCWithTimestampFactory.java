@@ -0,0 +1,22 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.rank.RankFactory;
+
+public class RedisRankDESCWithTimestampFactory implements RankFactory<RedisRankDESCWithTimestamp> {
+    @Override
+    public Class<RedisRankDESCWithTimestamp> rankType() {
+        return RedisRankDESCWithTimestamp.class;
+    }
+
+    @Override
+    public RedisRankDESCWithTimestamp create(String rankName) {
+        return create(rankName, RedisManager.I);
+    }
+
+    @Override
+    public RedisRankDESCWithTimestamp create(String rankName, CacheManager cache) {
+        return RedisRankDESCWithTimestamp.getInstance(cache, rankName);
+    }
+}
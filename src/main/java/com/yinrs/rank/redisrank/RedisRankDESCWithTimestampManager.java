@@ -1,5 +1,6 @@
 package com.yinrs.rank.redisrank;
 
+import com.yinrs.cache.CacheManager;
 import com.yinrs.rank.RankManager;
 
 public class RedisRankDESCWithTimestampManager<T extends RedisRankDESCWithTimestamp> extends RedisRankManager<T> implements RankManager<T> {
@@ -22,6 +23,10 @@ public class RedisRankDESCWithTimestampManager<T extends RedisRankDESCWithTimest
         super(rankName_prefix, rankNameSet_Key, clazz);
     }
 
+    public RedisRankDESCWithTimestampManager(String rankName_prefix, String rankNameSet_Key, Class<T> clazz, CacheManager cache) {
+        super(rankName_prefix, rankNameSet_Key, clazz, cache);
+    }
+
     @Override
     @Deprecated
     public void move(T src, T tgt, String nodeId) {
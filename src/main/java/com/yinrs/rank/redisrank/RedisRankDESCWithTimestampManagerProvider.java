@@ -0,0 +1,15 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.rank.RankManagerProvider;
+
+public class RedisRankDESCWithTimestampManagerProvider implements RankManagerProvider<RedisRankDESCWithTimestampManager> {
+    @Override
+    public Class<RedisRankDESCWithTimestampManager> managerType() {
+        return RedisRankDESCWithTimestampManager.class;
+    }
+
+    @Override
+    public RedisRankDESCWithTimestampManager instance() {
+        return RedisRankDESCWithTimestampManager.instance();
+    }
+}
@@ -0,0 +1,22 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.rank.RankFactory;
+
+public class RedisRankFactory implements RankFactory<RedisRank> {
+    @Override
+    public Class<RedisRank> rankType() {
+        return RedisRank.class;
+    }
+
+    @Override
+    public RedisRank create(String rankName) {
+        return create(rankName, RedisManager.I);
+    }
+
+    @Override
+    public RedisRank create(String rankName, CacheManager cache) {
+        return RedisRank.getInstance(cache, rankName);
+    }
+}
@@ -1,13 +1,16 @@
 package com.yinrs.rank.redisrank;
 
 
+import com.yinrs.cache.CacheManager;
 import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.config.CC;
+import com.yinrs.rank.RankFactories;
+import com.yinrs.rank.RankFactory;
 import com.yinrs.rank.RankManager;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,10 +19,28 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
     private static RedisRankManager singleton = null;
     private final static String RANKNAME_PREFIX = "redisrankd8f9s0k1_";
     private final static String Java_Redis_RankORM_Key = "Java_Redis_RankORM_Key";
+    /**
+     * KEYS: src zset, tgt zset, then the result cache versions to increment. ARGV: nodeId.
+     */
+    private static final RedisScript MOVE_SCRIPT = new RedisScript(
+            "local score = redis.call('ZSCORE', KEYS[1], ARGV[1])\n" +
+                    "if not score then return 0 end\n" +
+                    "redis.call('ZADD', KEYS[2], score, ARGV[1])\n" +
+                    "for i = 3, #KEYS do redis.call('INCR', KEYS[i]) end\n" +
+                    "return redis.call('ZREM', KEYS[1], ARGV[1])",
+            (cache, keys, args) -> {
+                Double score = cache.zscore(keys.get(0), args.get(0));
+                if (Objects.isNull(score)) return 0L;
+                cache.zadd(keys.get(1), score, args.get(0));
+                for (int i = 2; i < keys.size(); i++) {
+                    cache.incr(keys.get(i));
+                }
+                return cache.zrem(keys.get(0), args.get(0));
+            });
     private String rankName_prefix;
-    private RedisManager redis;
+    private CacheManager redis;
     private JavaRedisRankORM orm;
-    private Class<T> rankClass;
+    private RankFactory<T> factory;
 
     public static RedisRankManager instance() {
         if (singleton == null) {
@@ -33,11 +54,19 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
     }
 
     RedisRankManager(String rankName_prefix, String javaRedisRankORM_Key, Class<T> rankClass) {
-        RedisManager.I.init();
-        redis = RedisManager.I;
+        this(rankName_prefix, javaRedisRankORM_Key, rankClass, RedisManager.I);
+    }
+
+    /**
+     * A manager whose ranks and registry live in the given cache instead of {@link RedisManager#I},
+     * e.g. an {@link com.yinrs.cache.memory.InMemoryCacheManager} to run without a redis server.
+     */
+    public RedisRankManager(String rankName_prefix, String javaRedisRankORM_Key, Class<T> rankClass, CacheManager cache) {
+        cache.init();
+        redis = cache;
         this.rankName_prefix = rankName_prefix;
-        this.rankClass = rankClass;
-        orm = new JavaRedisRankORM(javaRedisRankORM_Key);
+        this.factory = RankFactories.get(rankClass);
+        orm = new JavaRedisRankORM(javaRedisRankORM_Key, CC.mp.rank.persistent);
     }
 
     @Override
@@ -97,7 +126,9 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
 
         if (orm.contains(rankName)) {
             T redisRank = orm.get(rankName);
+            redisRank.disableIncrCoalescing();
             redisRank.removeAll();
+            redisRank.disableNearCache();
             orm.remove(rankName);
         } else {
             T redisRank = getRedisRank(rankName);
@@ -111,7 +142,9 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
         String rankName = rank.getRankName();
         if (orm.contains(rankName)) {
             T redisRank = orm.get(rankName);
+            redisRank.disableIncrCoalescing();
             redisRank.removeAll();
+            redisRank.disableNearCache();
             orm.remove(rankName);
         } else {
             T redisRank = getRedisRank(rankName);
@@ -138,12 +171,25 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
                 src.wLock();
             }
             try {
-                Double nodeVal = src.getNodeValWithoutLock(nodeId);
-                if (Objects.nonNull(nodeVal)) {
-                    tgt.insertOrUpdate(nodeId, nodeVal);
-                    src.remove(nodeId);
+                src.flushIncr();//a pending delta of the node would bring it back to src
+                if (canMoveAtomically(src, tgt)) {
+                    List<String> keys = new ArrayList<>(Arrays.asList(src.getRankName(), tgt.getRankName()));
+                    for (T rank : Arrays.asList(src, tgt)) {
+                        if (Objects.nonNull(rank.getResultCache())) {
+                            keys.add(rank.getResultCache().getVersionKey());
+                        }
+                    }
+                    redis.eval(MOVE_SCRIPT, keys, Collections.singletonList(nodeId));
+                } else {//different cluster slots, cannot be atomic across JVMs
+                    Double nodeVal = src.getNodeValWithoutLock(nodeId);
+                    if (Objects.nonNull(nodeVal)) {
+                        tgt.insertOrUpdate(nodeId, nodeVal);
+                        src.remove(nodeId);
+                    }
                 }
             } finally {
+                src.invalidateCaches();
+                tgt.invalidateCaches();
                 if (srcFirst) {
                     tgt.wUnlock();
                     src.wUnlock();
@@ -155,6 +201,13 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
         }
     }
 
+    /**
+     * @return true if the node can be moved by one script on the keys of both ranks
+     */
+    protected boolean canMoveAtomically(T src, T tgt) {
+        return redis.isSameSlot(src.getRankName(), tgt.getRankName());
+    }
+
     private String wrapRankName(String rankName) {
         rankName = rankName.trim();
         if (!rankName.contains(rankName_prefix)) {
@@ -164,29 +217,26 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
     }
 
     protected T getRedisRank(String rankName) {
-        try {
-            Method instance = rankClass.getDeclaredMethod("getInstance", RedisManager.class, String.class);
-            instance.setAccessible(true);
-            return (T) instance.invoke(null, redis, rankName);
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } finally {
-        }
-        return null;
+        return redis == RedisManager.I ? factory.create(rankName) : factory.create(rankName, redis);
     }
 
+    /**
+     * Registry of the ranks of this manager, backed by a redis set of their names.
+     * Not persistent: the ranks of the set are removed on start. Persistent: they are kept,
+     * and attached lazily the first time they are looked up or listed.
+     */
     private class JavaRedisRankORM {
         private Map<String, T> map;
         private String key;
+        private final boolean persistent;
 
-        JavaRedisRankORM(String key) {
+        JavaRedisRankORM(String key, boolean persistent) {
             this.map = new ConcurrentHashMap<>();
             this.key = key;
-            clearORM();
+            this.persistent = persistent;
+            if (!persistent) {
+                clearORM();
+            }
         }
 
         private void clearORM() {
@@ -201,6 +251,10 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
             }
         }
 
+        private T attach(String rankName) {
+            return map.computeIfAbsent(rankName, name -> getRedisRank(name));
+        }
+
         public void register(String rankName, T redisRank) {
             redis.sAdd(key, rankName);
             map.put(rankName, redisRank);
@@ -212,7 +266,7 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
         }
 
         public boolean contains(String rankName) {
-            return map.containsKey(rankName);
+            return Objects.nonNull(get(rankName));
         }
 
         public boolean contains(T rank) {
@@ -223,10 +277,22 @@ public class RedisRankManager<T extends RedisRank> implements RankManager<T> {
         }
 
         public T get(String rankName) {
-            return map.get(rankName);
+            T rank = map.get(rankName);
+            if (Objects.isNull(rank) && persistent && redis.sismember(key, rankName)) {
+                rank = attach(rankName);
+            }
+            return rank;
         }
 
         public Collection<T> all() {
+            if (persistent) {
+                Set<String> all = redis.smembers(key);
+                if (!CollectionUtils.isEmpty(all)) {
+                    for (String rankName : all) {
+                        attach(rankName);
+                    }
+                }
+            }
             return map.values();
         }
     }
@@ -0,0 +1,15 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.rank.RankManagerProvider;
+
+public class RedisRankManagerProvider implements RankManagerProvider<RedisRankManager> {
+    @Override
+    public Class<RedisRankManager> managerType() {
+        return RedisRankManager.class;
+    }
+
+    @Override
+    public RedisRankManager instance() {
+        return RedisRankManager.instance();
+    }
+}
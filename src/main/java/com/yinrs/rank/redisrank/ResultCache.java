@@ -0,0 +1,121 @@
+package com.yinrs.rank.redisrank;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.yinrs.cache.redis.RedisKeys;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Answers of the read queries of a {@link RedisRank}, reused as long as the version key of the rank,
+ * "{name}-version", is unchanged. Every write through a rank increments the version in the same round trip,
+ * so a reader only needs one GET of the version instead of the query. With a version window the version
+ * read is shared by all readers of this JVM for that long, and the answers may lag behind writes of other
+ * JVMs by up to the window; writes through this JVM are always seen.
+ * Removing the rank increments the version too and keeps its key, so a version is never reused for other data.
+ * A missing version, of a rank never written, or one that could not be read, is a miss: the query is answered
+ * by redis and the cached answers are dropped.
+ */
+class ResultCache {
+    private final RedisRank rank;
+    private final String versionKey;
+    private final long windowNanos;
+    private final Cache<List<Object>, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile SharedVersion shared;
+
+    ResultCache(RedisRank rank, long maxEntries, long windowMillis) {
+        if (maxEntries <= 0 || windowMillis < 0) {
+            throw new IllegalArgumentException("maxEntries must be positive and windowMillis not negative");
+        }
+        this.rank = rank;
+        this.versionKey = versionKey(rank.getRankName());
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.entries = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    static String versionKey(String rankName) {
+        return RedisKeys.sameSlot(rankName, "-version");
+    }
+
+    String getVersionKey() {
+        return versionKey;
+    }
+
+    /**
+     * @param query the query and its arguments
+     * @return the cached answer if it was loaded at the current version, else the answer of load,
+     * which is cached unless null or the version is unknown
+     */
+    @SuppressWarnings("unchecked")
+    <V> V get(List<Object> query, Supplier<V> load) {
+        Long version = version();//before the load, an answer newer than its version is only dropped early
+        if (version == null) {
+            entries.invalidateAll();
+            return load.get();
+        }
+        Entry entry = entries.getIfPresent(query);
+        if (entry != null && entry.version == version) {
+            return (V) entry.value;
+        }
+        V value = load.get();
+        if (value != null) {
+            entries.put(query, new Entry(version, value));
+        }
+        return value;
+    }
+
+    /**
+     * Called after a write through this JVM, so the next reader asks for the version again.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        shared = null;
+    }
+
+    /**
+     * @return the version, null if the rank has none or redis failed
+     */
+    private Long version() {
+        if (windowNanos == 0) return fetchVersion();
+        SharedVersion current = shared;
+        long now = System.nanoTime();
+        if (current != null && now - current.fetchedAt < windowNanos) {
+            return current.version;
+        }
+        long gen = generation.get();
+        Long version = fetchVersion();
+        if (version != null && generation.get() == gen) {//not fetched before a local write it may have missed
+            shared = new SharedVersion(version, now);
+        }
+        return version;
+    }
+
+    private Long fetchVersion() {
+        String version = rank.getReadRedis().get(versionKey, String.class);
+        return version != null ? Long.valueOf(version) : null;
+    }
+
+    private static final class Entry {
+        final long version;
+        final Object value;
+
+        Entry(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    private static final class SharedVersion {
+        final long version;
+        final long fetchedAt;
+
+        SharedVersion(long version, long fetchedAt) {
+            this.version = version;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.config.CC;
+
+/**
+ * Packs an integer score and an inverted timestamp into one zset score:
+ * packed = score * 2^timeBits + (maxTime - time), which stays exact as long as it fits the
+ * 53 bit mantissa of a double. Ordering by packed value orders by score first and, for equal
+ * scores, puts the earlier time higher.
+ */
+public final class ScorePacker {
+    private static final int MANTISSA_BITS = 53;
+
+    private final int scoreBits;
+    private final int timeBits;
+    private final long epochMillis;
+    private final long timeUnitMillis;
+    private final long timeFactor;
+    private final long maxTime;
+    private final long minScore;
+    private final long maxScore;
+
+    /**
+     * @param scoreBits      bits of the signed score, sign included
+     * @param timeBits       bits of the time, scoreBits + timeBits must not exceed 53
+     * @param epochMillis    first representable time
+     * @param timeUnitMillis precision of the time, times within one unit tie
+     */
+    public ScorePacker(int scoreBits, int timeBits, long epochMillis, long timeUnitMillis) {
+        if (scoreBits < 2 || timeBits < 1 || scoreBits + timeBits > MANTISSA_BITS) {
+            throw new IllegalArgumentException("scoreBits + timeBits must fit in " + MANTISSA_BITS + " bits, got " + scoreBits + " + " + timeBits);
+        }
+        if (timeUnitMillis <= 0) {
+            throw new IllegalArgumentException("timeUnitMillis must be positive");
+        }
+        this.scoreBits = scoreBits;
+        this.timeBits = timeBits;
+        this.epochMillis = epochMillis;
+        this.timeUnitMillis = timeUnitMillis;
+        this.timeFactor = 1L << timeBits;
+        this.maxTime = timeFactor - 1;
+        this.minScore = -(1L << (scoreBits - 1));
+        this.maxScore = (1L << (scoreBits - 1)) - 1;
+    }
+
+    /**
+     * The packer of the rank.packed-timestamp config.
+     */
+    public static ScorePacker fromConfig() {
+        return new ScorePacker(CC.mp.rank.packed_timestamp.score_bits, CC.mp.rank.packed_timestamp.time_bits,
+                CC.mp.rank.packed_timestamp.epoch, CC.mp.rank.packed_timestamp.time_unit);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the score is not an integer in range or the time is out of range
+     */
+    public long pack(double score, long timeMillis) {
+        return checkScore(score) * timeFactor + invertTime(timeMillis);
+    }
+
+    public double score(double packed) {
+        return Math.floorDiv((long) packed, timeFactor);
+    }
+
+    public long timeMillis(double packed) {
+        long inverted = Math.floorMod((long) packed, timeFactor);
+        return (maxTime - inverted) * timeUnitMillis + epochMillis;
+    }
+
+    /**
+     * @return the lowest packed value of the score, i.e. the score at the latest time
+     */
+    public double lowest(double score) {
+        return Math.ceil(score) * timeFactor;
+    }
+
+    /**
+     * @return the highest packed value of the score, i.e. the score at the epoch
+     */
+    public double highest(double score) {
+        return Math.floor(score) * timeFactor + maxTime;
+    }
+
+    long checkScore(double score) {
+        if (score != Math.rint(score) || score < minScore || score > maxScore) {
+            throw new IllegalArgumentException("score " + score + " is not an integer between " + minScore + " and " + maxScore);
+        }
+        return (long) score;
+    }
+
+    long invertTime(long timeMillis) {
+        long time = Math.floorDiv(timeMillis - epochMillis, timeUnitMillis);
+        if (time < 0 || time > maxTime) {
+            throw new IllegalArgumentException("time " + timeMillis + " is outside the " + timeBits + " bits after epoch " + epochMillis);
+        }
+        return maxTime - time;
+    }
+
+    long getTimeFactor() {
+        return timeFactor;
+    }
+
+    long getMinScore() {
+        return minScore;
+    }
+
+    long getMaxScore() {
+        return maxScore;
+    }
+
+    public int getScoreBits() {
+        return scoreBits;
+    }
+
+    public int getTimeBits() {
+        return timeBits;
+    }
+}
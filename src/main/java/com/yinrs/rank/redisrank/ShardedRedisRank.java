@@ -0,0 +1,486 @@
+package com.yinrs.rank.redisrank;
+
+import com.google.common.hash.Hashing;
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.config.CC;
+import com.yinrs.rank.RankBatch;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankPage;
+import org.springframework.util.CollectionUtils;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+/**
+ * Rank split over rank.shards sorted sets "rankName-shard-i", a node lives in the shard picked by the
+ * murmur3 hash of its nodeId. In a cluster the shard keys hash to different slots, so one rank is no
+ * longer bound to the memory and cpu of one node.
+ * Reads scatter to all shards in parallel on the rank.scatter-threads shared threads and gather: the rank
+ * of a node is the sum of the nodes ranked before it in every shard. A range ending within the first
+ * {@value #MERGE_DEPTH} ranks is a k-way merge of the top end+1 nodes of every shard; a deeper one first
+ * binary searches the score of its first node with ZCOUNT on every shard, then merges the nodes of every
+ * shard from that score on, so a page costs about the same at any depth. Equal scores are ordered by nodeId,
+ * byte wise, as redis does within one key. Multi shard writes are not atomic.
+ */
+public class ShardedRedisRank extends RedisRank {
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService SCATTER = Executors.newFixedThreadPool(CC.mp.rank.scatter_threads, r -> {
+        Thread thread = new Thread(r, "rank-shard-scatter-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Ranges ending before this rank merge the top of every shard instead of searching their first score.
+     */
+    static final int MERGE_DEPTH = 1000;
+
+    /**
+     * KEYS: shard. ARGV: score, nodeId, "1" for desc.
+     * Returns how many nodes of the shard are ranked before (score, nodeId), binary searching among equal scores.
+     */
+    private static final RedisScript COUNT_BEFORE_SCRIPT = new RedisScript(
+            "local function after(a, b)\n" +
+                    "    for i = 1, math.min(#a, #b) do\n" +
+                    "        local x, y = string.byte(a, i), string.byte(b, i)\n" +
+                    "        if x ~= y then return x > y end\n" +
+                    "    end\n" +
+                    "    return #a > #b\n" +
+                    "end\n" +
+                    "local desc = ARGV[3] == '1'\n" +
+                    "local before\n" +
+                    "if desc then before = redis.call('ZCOUNT', KEYS[1], '(' .. ARGV[1], '+inf')\n" +
+                    "else before = redis.call('ZCOUNT', KEYS[1], '-inf', '(' .. ARGV[1]) end\n" +
+                    "local lo, hi = 0, redis.call('ZCOUNT', KEYS[1], ARGV[1], ARGV[1])\n" +
+                    "while lo < hi do\n" +
+                    "    local mid = math.floor((lo + hi) / 2)\n" +
+                    "    local m\n" +
+                    "    if desc then m = redis.call('ZREVRANGE', KEYS[1], before + mid, before + mid)[1]\n" +
+                    "    else m = redis.call('ZRANGE', KEYS[1], before + mid, before + mid)[1] end\n" +
+                    "    local first\n" +
+                    "    if desc then first = after(m, ARGV[2]) else first = after(ARGV[2], m) end\n" +
+                    "    if first then lo = mid + 1 else hi = mid end\n" +
+                    "end\n" +
+                    "return before + lo",
+            ShardedRedisRank::countBefore);
+
+    private final String[] shardKeys;
+
+    ShardedRedisRank(CacheManager redis, String rankName) {
+        this(redis, rankName, CC.mp.rank.shards);
+    }
+
+    ShardedRedisRank(CacheManager redis, String rankName, int shards) {
+        super(redis, rankName);
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+        shardKeys = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            shardKeys[i] = rankName + "-shard-" + i;
+        }
+    }
+
+    static ShardedRedisRank getInstance(CacheManager redis, String rankName) {
+        return new ShardedRedisRank(redis, rankName);
+    }
+
+    @Override
+    public void insertOrUpdate(String nodeId, double nodeScores) {
+        wLock();
+        try {
+            getRedis().zadd(shardKey(nodeId), nodeScores, nodeId);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Long insertOrUpdate(List<RankNode> list) {
+        if (CollectionUtils.isEmpty(list)) return null;
+        Map<String, Map<String, Double>> byShard = new HashMap<>();
+        for (RankNode node : list) {
+            byShard.computeIfAbsent(shardKey(node.getNodeId()), k -> new HashMap<>()).put(node.getNodeId(), node.getNodeScore());
+        }
+        wLock();
+        try {
+            return sum(scatter(byShard.keySet(), key -> getRedis().zadd(key, byShard.get(key))));
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Double incr(String nodeId, double nodeScores) {
+        wLock();
+        try {
+            return getRedis().zincrby(shardKey(nodeId), nodeScores, nodeId);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Double getNodeVal(String nodeId) {
+        rLock();
+        try {
+            return getReadRedis().zscore(shardKey(nodeId), nodeId);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    protected Double getNodeValWithoutLock(String nodeId) {
+        return getRedis().zscore(shardKey(nodeId), nodeId);
+    }
+
+    @Override
+    public long remove(String... nodeIds) {
+        Map<String, List<String>> byShard = new HashMap<>();
+        for (String nodeId : nodeIds) {
+            byShard.computeIfAbsent(shardKey(nodeId), k -> new ArrayList<>()).add(nodeId);
+        }
+        wLock();
+        try {
+            Long removed = sum(scatter(byShard.keySet(), key -> getRedis().zrem(key, byShard.get(key).toArray(new String[0]))));
+            return Objects.nonNull(removed) ? removed : 0;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    /**
+     * Reads the nodes of the range and removes them shard by shard.
+     */
+    @Override
+    public long removeByRank(long start, long end) {
+        wLock();
+        try {
+            List<RankNode> nodes = fetchRange(getRedis(), false, start, end);
+            if (CollectionUtils.isEmpty(nodes)) return 0;
+            String[] nodeIds = new String[nodes.size()];
+            for (int i = 0; i < nodeIds.length; i++) {
+                nodeIds[i] = nodes.get(i).getNodeId();
+            }
+            return remove(nodeIds);
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public long removeByScore(double minNodeScores, double maxNodeScores) {
+        wLock();
+        try {
+            Long removed = sum(scatter(shards(), key -> getRedis().zremrangeByScore(key, minNodeScores, maxNodeScores)));
+            return Objects.nonNull(removed) ? removed : 0;
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    public Long getASCRank(String nodeId) {
+        rLock();
+        try {
+            return rank(false, nodeId);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long getDESCRank(String nodeId) {
+        rLock();
+        try {
+            return rank(true, nodeId);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    private Long rank(boolean desc, String nodeId) {
+        CacheManager from = getReadRedis();
+        Double score = from.zscore(shardKey(nodeId), nodeId);
+        if (Objects.isNull(score)) return null;
+        List<String> args = Arrays.asList(Double.toString(score), nodeId, desc ? "1" : "0");
+        return sum(scatter(shards(), key -> (Long) from.eval(COUNT_BEFORE_SCRIPT, Collections.singletonList(key), args)));
+    }
+
+    /**
+     * Negative indexes first need the size of the whole rank, see the class comment for the rest.
+     */
+    @Override
+    List<RankNode> fetchRange(CacheManager from, boolean desc, long start, long end) {
+        rLock();
+        try {
+            if (start < 0 || end < 0) {
+                Long size = sum(scatter(shards(), key -> from.zcard(key)));
+                if (Objects.isNull(size)) return null;
+                if (start < 0) start = Math.max(size + start, 0);
+                if (end < 0) end = size + end;
+            }
+            if (start > end) return new ArrayList<>(0);
+            if (end < MERGE_DEPTH) {
+                long last = end;
+                List<Set<Tuple>> tops = scatter(shards(), key -> range(from, desc, key, 0, last));
+                if (tops.contains(null)) return null;
+                return merge(tops, desc, 0, start, end);
+            }
+            return fetchDeepRange(from, desc, start, end);
+        } finally {
+            rUnlock();
+        }
+    }
+
+    /**
+     * Finds the score of the node at start, then merges, from every shard, the nodes from that score on:
+     * at most the range plus the nodes of that score ranked before start.
+     */
+    private List<RankNode> fetchDeepRange(CacheManager from, boolean desc, long start, long end) {
+        List<Set<Tuple>> firsts = scatter(shards(), key -> range(from, desc, key, 0, 0));
+        List<Set<Tuple>> lasts = scatter(shards(), key -> range(from, desc, key, -1, -1));
+        if (firsts.contains(null) || lasts.contains(null)) return null;
+        long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+        for (int i = 0; i < firsts.size(); i++) {
+            if (firsts.get(i).isEmpty() || lasts.get(i).isEmpty()) continue;
+            lo = Math.min(lo, order(desc, firsts.get(i).iterator().next().getScore()));
+            hi = Math.max(hi, order(desc, lasts.get(i).iterator().next().getScore()));
+        }
+        if (lo > hi) return new ArrayList<>(0);
+        // the first score in rank order with more than start nodes up to it, the score of the node at start
+        while (lo < hi) {
+            long mid = lo + (hi - lo) / 2;
+            double score = score(desc, mid);
+            Long upTo = sum(scatter(shards(), key -> desc ? from.zcount(key, score, Double.POSITIVE_INFINITY)
+                    : from.zcount(key, Double.NEGATIVE_INFINITY, score)));
+            if (Objects.isNull(upTo)) return null;
+            if (upTo > start) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        double first = score(desc, lo);
+        List<Long> before = scatter(shards(), key -> desc ? from.zcount(key, Math.nextUp(first), Double.POSITIVE_INFINITY)
+                : from.zcount(key, Double.NEGATIVE_INFINITY, Math.nextDown(first)));
+        Long ranked = sum(before);
+        if (Objects.isNull(ranked)) return null;
+        long count = end - ranked;
+        List<String> shards = shards();
+        List<Set<Tuple>> tops = scatter(indexes(shards.size()), i -> range(from, desc, shards.get(i), before.get(i), before.get(i) + count));
+        if (tops.contains(null)) return null;
+        return merge(tops, desc, ranked, start, end);
+    }
+
+    @Override
+    RankPage fetchPage(boolean desc, long start, long end) {
+        return RankPage.of(fetchRange(desc, start, end), start);
+    }
+
+    /**
+     * @param first the rank of the first node of the tops
+     */
+    private List<RankNode> merge(List<Set<Tuple>> tops, boolean desc, long first, long start, long end) {
+        Comparator<Tuple> order = Comparator.comparingDouble(Tuple::getScore).thenComparing(Tuple::getBinaryElement, ShardedRedisRank::compareBytes);
+        if (desc) order = order.reversed();
+        Comparator<Map.Entry<Tuple, Iterator<Tuple>>> headOrder = Map.Entry.comparingByKey(order);
+        PriorityQueue<Map.Entry<Tuple, Iterator<Tuple>>> heads = new PriorityQueue<>(Math.max(tops.size(), 1), headOrder);
+        for (Set<Tuple> top : tops) {
+            Iterator<Tuple> iterator = top.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new AbstractMap.SimpleEntry<>(iterator.next(), iterator));
+            }
+        }
+        List<RankNode> list = new ArrayList<>((int) Math.min(end - start + 1, 1024));
+        for (long rank = first; rank <= end && !heads.isEmpty(); rank++) {
+            Map.Entry<Tuple, Iterator<Tuple>> head = heads.poll();
+            Tuple tuple = head.getKey();
+            if (rank >= start) {
+                list.add(toRankNode(tuple.getElement(), rank, tuple.getScore()));
+            }
+            if (head.getValue().hasNext()) {
+                heads.add(new AbstractMap.SimpleEntry<>(head.getValue().next(), head.getValue()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    List<RankNode> neighborhood(List<String> keys, boolean desc, String nodeId, int above, int below) {
+        checkNeighborhood(above, below);
+        Long rank = rank(desc, nodeId);
+        if (Objects.isNull(rank)) return null;
+        return fetchRange(desc, Math.max(rank - above, 0), rank + below);
+    }
+
+    @Override
+    public Long countAll() {
+        rLock();
+        try {
+            return sum(scatter(shards(), key -> getReadRedis().zcard(key)));
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long countBy(double minNodeScores, double maxNodeScores) {
+        rLock();
+        try {
+            return sum(scatter(shards(), key -> getReadRedis().zcount(key, minNodeScores, maxNodeScores)));
+        } finally {
+            rUnlock();
+        }
+    }
+
+    @Override
+    public Long removeAll() {
+        wLock();
+        try {
+            return sum(scatter(shards(), key -> getRedis().zremrangeByRank(key, 0, -1)));
+        } finally {
+            wUnlock();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public synchronized void enableIncrCoalescing(long flushIntervalMillis, int maxPending) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public synchronized void enableNearCache(int topK, long ttlMillis) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public RankBatch batch() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The shards live in different slots, a write cannot increment a version in the same script.
+     */
+    @Override
+    boolean supportsResultCache() {
+        return false;
+    }
+
+    /**
+     * The nodes are spread over the shard keys, a snapshot is restored by removing and inserting them.
+     */
+    @Override
+    boolean supportsRestoreByRename() {
+        return false;
+    }
+
+    public int getShards() {
+        return shardKeys.length;
+    }
+
+    String shardKey(String nodeId) {
+        int hash = Hashing.murmur3_32().hashString(nodeId, StandardCharsets.UTF_8).asInt();
+        return shardKeys[Math.floorMod(hash, shardKeys.length)];
+    }
+
+    private List<String> shards() {
+        return Arrays.asList(shardKeys);
+    }
+
+    private static Set<Tuple> range(CacheManager from, boolean desc, String key, long start, long end) {
+        return desc ? from.zrevrangeWithScores(key, start, end) : from.zrangeWithScores(key, start, end);
+    }
+
+    /**
+     * @return a long ordered as the scores in rank order, see {@link #score(boolean, long)}
+     */
+    private static long order(boolean desc, double score) {
+        long bits = Double.doubleToLongBits(desc ? -score : score);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static double score(boolean desc, long order) {
+        double value = Double.longBitsToDouble(order ^ ((order >> 63) & Long.MAX_VALUE));
+        return desc ? -value : value;
+    }
+
+    private static List<Integer> indexes(int size) {
+        List<Integer> indexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    /**
+     * Runs the call on every key in parallel and returns the results in key order.
+     */
+    private static <K, R> List<R> scatter(Collection<K> keys, Function<K, R> call) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            futures.add(CompletableFuture.supplyAsync(() -> call.apply(key), SCATTER));
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<R> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * @return the sum, null if any shard failed
+     */
+    private static Long sum(List<Long> counts) {
+        long sum = 0;
+        for (Long count : counts) {
+            if (Objects.isNull(count)) return null;
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * {@link #COUNT_BEFORE_SCRIPT} for caches without lua.
+     */
+    private static Object countBefore(CacheManager cache, List<String> keys, List<String> args) {
+        String key = keys.get(0);
+        double score = Double.parseDouble(args.get(0));
+        byte[] nodeId = SafeEncoder.encode(args.get(1));
+        boolean desc = "1".equals(args.get(2));
+        long before = desc ? cache.zcount(key, Math.nextUp(score), Double.POSITIVE_INFINITY)
+                : cache.zcount(key, Double.NEGATIVE_INFINITY, Math.nextDown(score));
+        long lo = 0, hi = cache.zcount(key, score, score);
+        while (lo < hi) {
+            long mid = (lo + hi) / 2;
+            byte[] m = cache.zrangeWithScoresRaw(key, before + mid, before + mid, desc).get(0);
+            boolean first = desc ? compareBytes(m, nodeId) > 0 : compareBytes(nodeId, m) > 0;
+            if (first) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return before + lo;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int x = a[i] & 0xff, y = b[i] & 0xff;
+            if (x != y) return x - y;
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,22 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.rank.RankFactory;
+
+public class ShardedRedisRankFactory implements RankFactory<ShardedRedisRank> {
+    @Override
+    public Class<ShardedRedisRank> rankType() {
+        return ShardedRedisRank.class;
+    }
+
+    @Override
+    public ShardedRedisRank create(String rankName) {
+        return create(rankName, RedisManager.I);
+    }
+
+    @Override
+    public ShardedRedisRank create(String rankName, CacheManager cache) {
+        return ShardedRedisRank.getInstance(cache, rankName);
+    }
+}
@@ -0,0 +1,37 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.rank.RankManager;
+
+public class ShardedRedisRankManager<T extends ShardedRedisRank> extends RedisRankManager<T> implements RankManager<T> {
+    private static ShardedRedisRankManager singleton = null;
+    private final static String RANKNAME_PREFIX = "shardedredisrankq7m2v5x1_";
+    private final static String RankNameSet_Key = "ShardedRedisRank_RankName_Set_Key";
+
+    public static ShardedRedisRankManager instance() {
+        if (singleton == null) {
+            synchronized (ShardedRedisRankManager.class) {
+                if (singleton == null) {
+                    singleton = new ShardedRedisRankManager(RANKNAME_PREFIX, RankNameSet_Key, ShardedRedisRank.class);
+                }
+            }
+        }
+        return singleton;
+    }
+
+    ShardedRedisRankManager(String rankName_prefix, String rankNameSet_Key, Class<T> clazz) {
+        super(rankName_prefix, rankNameSet_Key, clazz);
+    }
+
+    public ShardedRedisRankManager(String rankName_prefix, String rankNameSet_Key, Class<T> clazz, CacheManager cache) {
+        super(rankName_prefix, rankNameSet_Key, clazz, cache);
+    }
+
+    /**
+     * The node lives in a shard key of each rank, the move reads it from src, writes it to tgt and then removes it from src.
+     */
+    @Override
+    protected boolean canMoveAtomically(T src, T tgt) {
+        return false;
+    }
+}
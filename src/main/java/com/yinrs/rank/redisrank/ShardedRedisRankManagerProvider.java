@@ -0,0 +1,15 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.rank.RankManagerProvider;
+
+public class ShardedRedisRankManagerProvider implements RankManagerProvider<ShardedRedisRankManager> {
+    @Override
+    public Class<ShardedRedisRankManager> managerType() {
+        return ShardedRedisRankManager.class;
+    }
+
+    @Override
+    public ShardedRedisRankManager instance() {
+        return ShardedRedisRankManager.instance();
+    }
+}
@@ -0,0 +1,345 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisKeys;
+import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.rank.RankBatch;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankSnapshot;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rank whose scores are the sums of the increments of a sliding window, e.g. the last 24 hours, to
+ * a sub-bucket of windowMillis / buckets. Every incr goes to the sorted set of the current sub-bucket and,
+ * in the same script, to the rank key itself, which therefore always holds the sum of the window and is
+ * read like any {@link RedisRank}.
+ * <p>
+ * When the window slides, the sub-buckets leaving it are subtracted from the rank key with a weighted
+ * ZUNIONSTORE, instead of adding up the whole window again. A cursor key holds the last sub-bucket the rank
+ * key was slid to; the slide is a compare-and-set on it, so among JVMs sliding at once only one applies it.
+ * A missing cursor, or one a whole window behind, rebuilds the rank key from the sub-buckets.
+ * Members whose sum drops to exactly 0 leave the rank.
+ */
+public class SlidingWindowRank extends RedisRank {
+    /**
+     * KEYS: sub-bucket zset, rank zset, cursor. ARGV: delta, nodeId, ttl seconds, sub-bucket, buckets.
+     * Increments the node in the sub-bucket, and in the rank unless the cursor is missing or already past the
+     * sub-bucket, so the slide or the rebuild accounts for it. Returns the score in the rank, nil if not written.
+     */
+    static final RedisScript INCR_SCRIPT = new RedisScript(
+            "redis.call('ZINCRBY', KEYS[1], ARGV[1], ARGV[2])\n" +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+                    "local cursor = redis.call('GET', KEYS[3])\n" +
+                    "if cursor and tonumber(ARGV[4]) > tonumber(cursor) - tonumber(ARGV[5]) then\n" +
+                    "    return redis.call('ZINCRBY', KEYS[2], ARGV[1], ARGV[2])\n" +
+                    "end\n" +
+                    "return false",
+            SlidingWindowRank::incr);
+    /**
+     * KEYS: rank zset, cursor, then the sub-buckets to subtract, or to add up with ARGV[3] = "rebuild".
+     * ARGV: the expected cursor, "" if missing, the new cursor, the mode.
+     * Returns 0 without doing anything if the cursor is not the expected one, 1 once slid.
+     */
+    static final RedisScript SLIDE_SCRIPT = new RedisScript(
+            "local cursor = redis.call('GET', KEYS[2]) or ''\n" +
+                    "if cursor ~= ARGV[1] then return 0 end\n" +
+                    "if ARGV[3] == 'rebuild' then\n" +
+                    "    redis.call('DEL', KEYS[1])\n" +
+                    "    redis.call('ZUNIONSTORE', KEYS[1], #KEYS - 2, unpack(KEYS, 3))\n" +
+                    "else\n" +
+                    "    for i = 3, #KEYS do\n" +
+                    "        redis.call('ZUNIONSTORE', KEYS[1], 2, KEYS[1], KEYS[i], 'WEIGHTS', 1, -1)\n" +
+                    "    end\n" +
+                    "    redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, 0)\n" +
+                    "end\n" +
+                    "redis.call('SET', KEYS[2], ARGV[2])\n" +
+                    "return 1",
+            SlidingWindowRank::slide);
+    /**
+     * KEYS: rank zset, then the sub-buckets. ARGV: the nodeIds.
+     * Removes the nodes from all of them, returns the number removed from the rank.
+     */
+    static final RedisScript REMOVE_SCRIPT = new RedisScript(
+            "local removed = redis.call('ZREM', KEYS[1], unpack(ARGV))\n" +
+                    "for i = 2, #KEYS do redis.call('ZREM', KEYS[i], unpack(ARGV)) end\n" +
+                    "return removed",
+            (cache, keys, args) -> {
+                String[] nodeIds = args.toArray(new String[0]);
+                Long removed = cache.zrem(keys.get(0), nodeIds);
+                for (int i = 1; i < keys.size(); i++) {
+                    cache.zrem(keys.get(i), nodeIds);
+                }
+                return removed;
+            });
+    /**
+     * KEYS: rank zset, cursor, then the sub-buckets. Deletes them all, returns the size the rank had.
+     */
+    static final RedisScript REMOVE_ALL_SCRIPT = new RedisScript(
+            "local size = redis.call('ZCARD', KEYS[1])\n" +
+                    "for i = 1, #KEYS do redis.call('DEL', KEYS[i]) end\n" +
+                    "return size",
+            (cache, keys, args) -> {
+                Long size = cache.zcard(keys.get(0));
+                for (String key : keys) {
+                    cache.del(key);
+                }
+                return size;
+            });
+    private static final String REBUILD = "rebuild";
+    private static final String SUBTRACT = "subtract";
+    private static final int SLIDE_ATTEMPTS = 3;
+
+    private final int buckets;
+    private final long bucketMillis;
+    private final String cursorKey;
+    private volatile long slidTo = Long.MIN_VALUE;
+    private volatile LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * A rank on {@link RedisManager#I}.
+     */
+    public SlidingWindowRank(String rankName, long windowMillis, int buckets) {
+        this(RedisManager.I, rankName, windowMillis, buckets);
+    }
+
+    /**
+     * @param windowMillis the length of the window, a multiple of buckets
+     * @param buckets      the number of sub-buckets of the window, the current one included
+     */
+    public SlidingWindowRank(CacheManager cache, String rankName, long windowMillis, int buckets) {
+        super(cache, rankName);
+        if (buckets <= 0 || windowMillis <= 0 || windowMillis % buckets != 0) {
+            throw new IllegalArgumentException("windowMillis must be a positive multiple of buckets");
+        }
+        this.buckets = buckets;
+        this.bucketMillis = windowMillis / buckets;
+        this.cursorKey = RedisKeys.sameSlot(rankName, ":cursor");
+    }
+
+    /**
+     * Adds the delta to the node in the current sub-bucket.
+     *
+     * @return the score of the node in the window, null if redis failed or the rank is being rebuilt
+     */
+    @Override
+    public Double incr(String nodeId, double nodeScores) {
+        long current = slideIfNeeded();
+        Object reply = getRedis().eval(INCR_SCRIPT, Arrays.asList(bucketKey(current), getRankName(), cursorKey),
+                Arrays.asList(Double.toString(nodeScores), nodeId, Long.toString(bucketTtlSeconds()),
+                        Long.toString(current), Integer.toString(buckets)));
+        invalidateCaches();
+        return Objects.nonNull(reply) ? Double.parseDouble(reply.toString()) : null;
+    }
+
+    /**
+     * Removes the nodes from the window and from every sub-bucket that may still be alive, so that none of
+     * them is subtracted later.
+     */
+    @Override
+    public long remove(String... nodeIds) {
+        if (Objects.isNull(nodeIds) || nodeIds.length == 0) return 0;
+        long current = slideIfNeeded();
+        List<String> keys = new ArrayList<>(2 * buckets + 2);
+        keys.add(getRankName());
+        for (long bucket = current - 2 * buckets; bucket <= current; bucket++) {
+            keys.add(bucketKey(bucket));
+        }
+        Object removed = getRedis().eval(REMOVE_SCRIPT, keys, Arrays.asList(nodeIds));
+        invalidateCaches();
+        return removed instanceof Long ? (Long) removed : 0;
+    }
+
+    /**
+     * Deletes the rank, its cursor and every sub-bucket that may still be alive.
+     */
+    @Override
+    public Long removeAll() {
+        long current = currentBucket();
+        List<String> keys = new ArrayList<>(2 * buckets + 3);
+        keys.add(getRankName());
+        keys.add(cursorKey);
+        for (long bucket = current - 2 * buckets; bucket <= current; bucket++) {
+            keys.add(bucketKey(bucket));
+        }
+        Object removed = getRedis().eval(REMOVE_ALL_SCRIPT, keys, Collections.<String>emptyList());
+        slidTo = Long.MIN_VALUE;
+        invalidateCaches();
+        return removed instanceof Long ? (Long) removed : null;
+    }
+
+    /**
+     * Slides the rank key to the current sub-bucket now.
+     *
+     * @return false if redis failed or other writers kept moving the cursor
+     */
+    public boolean slide() {
+        long target = currentBucket();
+        for (int attempt = 0; attempt < SLIDE_ATTEMPTS; attempt++) {
+            String cursor = getRedis().get(cursorKey, String.class);
+            if (Objects.nonNull(cursor) && Long.parseLong(cursor) >= target) {
+                slidTo = Long.parseLong(cursor);
+                return true;
+            }
+            List<String> keys = new ArrayList<>(buckets + 2);
+            keys.add(getRankName());
+            keys.add(cursorKey);
+            String mode;
+            if (Objects.nonNull(cursor) && target - Long.parseLong(cursor) < buckets) {
+                mode = SUBTRACT;
+                for (long bucket = Long.parseLong(cursor) - buckets + 1; bucket <= target - buckets; bucket++) {
+                    keys.add(bucketKey(bucket));
+                }
+            } else {
+                mode = REBUILD;
+                for (long bucket = target - buckets + 1; bucket <= target; bucket++) {
+                    keys.add(bucketKey(bucket));
+                }
+            }
+            Object reply = getRedis().eval(SLIDE_SCRIPT, keys,
+                    Arrays.asList(Objects.nonNull(cursor) ? cursor : "", Long.toString(target), mode));
+            if (Objects.isNull(reply)) return false;
+            if ((Long) reply == 1) {
+                slidTo = target;
+                invalidateCaches();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * Reads slide the rank key first when this JVM has not seen it at the current sub-bucket.
+     */
+    @Override
+    protected CacheManager getReadRedis() {
+        slideIfNeeded();
+        return super.getReadRedis();
+    }
+
+    /**
+     * The scripts do not increment the version of the result cache.
+     */
+    @Override
+    boolean supportsResultCache() {
+        return false;
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    long currentBucket() {
+        return Math.floorDiv(clock.getAsLong(), bucketMillis);
+    }
+
+    String bucketKey(long bucket) {
+        return RedisKeys.sameSlot(getRankName(), ":" + bucket);
+    }
+
+    /**
+     * @return the current sub-bucket
+     */
+    private long slideIfNeeded() {
+        long current = currentBucket();
+        if (slidTo < current) {
+            slide();
+        }
+        return current;
+    }
+
+    /**
+     * A sub-bucket may wait up to a window to be subtracted after it left the window, when nothing
+     * slid the rank meanwhile, so it is kept for two windows.
+     */
+    private long bucketTtlSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(bucketMillis * (2L * buckets + 1)) + 1;
+    }
+
+    /**
+     * {@link #INCR_SCRIPT} for caches without lua.
+     */
+    private static Object incr(CacheManager cache, List<String> keys, List<String> args) {
+        double delta = Double.parseDouble(args.get(0));
+        cache.zincrby(keys.get(0), delta, args.get(1));
+        cache.expire(keys.get(0), Integer.parseInt(args.get(2)));
+        String cursor = cache.get(keys.get(2), String.class);
+        if (cursor != null && Long.parseLong(args.get(3)) > Long.parseLong(cursor) - Long.parseLong(args.get(4))) {
+            return RedisScript.Emulation.score(cache.zincrby(keys.get(1), delta, args.get(1)));
+        }
+        return null;
+    }
+
+    /**
+     * {@link #SLIDE_SCRIPT} for caches without lua.
+     */
+    private static Object slide(CacheManager cache, List<String> keys, List<String> args) {
+        String cursor = cache.get(keys.get(1), String.class);
+        if (!args.get(0).equals(cursor != null ? cursor : "")) return 0L;
+        String rank = keys.get(0);
+        if (REBUILD.equals(args.get(2))) {
+            cache.del(rank);
+            cache.zunionstore(rank, keys.subList(2, keys.size()).toArray(new String[0]));
+        } else {
+            for (String bucket : keys.subList(2, keys.size())) {
+                cache.zunionstore(rank, new String[]{rank, bucket}, new double[]{1, -1});
+            }
+            cache.zremrangeByScore(rank, 0, 0);
+        }
+        cache.set(keys.get(1), args.get(1));
+        return 1L;
+    }
+
+    @Override
+    @Deprecated
+    public void insertOrUpdate(String nodeId, double nodeScores) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public Long insertOrUpdate(List<RankNode> list) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public long removeByRank(long start, long end) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public long removeByScore(double minNodeScores, double maxNodeScores) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void restore(RankSnapshot snapshot) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public synchronized void enableIncrCoalescing(long flushIntervalMillis, int maxPending) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public RankBatch batch() {
+        throw new UnsupportedOperationException();
+    }
+}
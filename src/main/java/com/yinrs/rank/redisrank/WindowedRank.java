@@ -0,0 +1,347 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.redis.RedisKeys;
+import com.yinrs.cache.redis.RedisManager;
+import com.yinrs.cache.redis.RedisScript;
+import com.yinrs.rank.RankBatch;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankSnapshot;
+
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rank over rolling time windows, e.g. the last day, 7 days and 30 days. Every incr goes to the sorted set
+ * of the current bucket, an hour or a day, which expires once no window needs it anymore; nothing is
+ * written twice. {@link #window(int)} views the sum of the last n buckets, the current one included.
+ * <p>
+ * A view is an aggregate sorted set, refreshed on read at most every refreshMillis: the closed buckets of
+ * the window no longer change, so their union is computed once per bucket and kept, and a refresh is one
+ * ZUNIONSTORE of that union and the current bucket. All keys share the hash tag of the rank name.
+ * Buckets are aligned to the given zone offset, UTC by default.
+ */
+public class WindowedRank {
+    /**
+     * KEYS: bucket zset. ARGV: delta, nodeId, ttl seconds.
+     * Increments the node in the bucket and renews the ttl of the bucket, returns the new score.
+     */
+    static final RedisScript INCR_SCRIPT = new RedisScript(
+            "local score = redis.call('ZINCRBY', KEYS[1], ARGV[1], ARGV[2])\n" +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+                    "return score",
+            (cache, keys, args) -> {
+                Double score = cache.zincrby(keys.get(0), Double.parseDouble(args.get(0)), args.get(1));
+                cache.expire(keys.get(0), Integer.parseInt(args.get(2)));
+                return Objects.nonNull(score) ? RedisScript.Emulation.score(score) : null;
+            });
+    /**
+     * KEYS: view zset, union of the closed buckets, the closed buckets, the current bucket. ARGV: ttl seconds.
+     * Computes the union of the closed buckets if it does not exist yet, then stores it plus the current bucket
+     * in the view; both expire after ttl. Returns the size of the view.
+     */
+    static final RedisScript REFRESH_SCRIPT = new RedisScript(
+            "local current = KEYS[#KEYS]\n" +
+                    "if #KEYS > 3 and redis.call('EXISTS', KEYS[2]) == 0 then\n" +
+                    "    redis.call('ZUNIONSTORE', KEYS[2], #KEYS - 3, unpack(KEYS, 3, #KEYS - 1))\n" +
+                    "    redis.call('EXPIRE', KEYS[2], ARGV[1])\n" +
+                    "end\n" +
+                    "local size = redis.call('ZUNIONSTORE', KEYS[1], 2, KEYS[2], current)\n" +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+                    "return size",
+            WindowedRank::refresh);
+    /**
+     * KEYS: every sorted set of the rank. ARGV: nodeId.
+     * Removes the node from all of them, returns the number of sets it was removed from.
+     */
+    static final RedisScript REMOVE_SCRIPT = new RedisScript(
+            "local removed = 0\n" +
+                    "for i = 1, #KEYS do removed = removed + redis.call('ZREM', KEYS[i], ARGV[1]) end\n" +
+                    "return removed",
+            (cache, keys, args) -> {
+                long removed = 0;
+                for (String key : keys) {
+                    removed += cache.zrem(key, args.get(0));
+                }
+                return removed;
+            });
+
+    public enum Granularity {
+        HOUR(TimeUnit.HOURS.toMillis(1)), DAY(TimeUnit.DAYS.toMillis(1));
+
+        private final long millis;
+
+        Granularity(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    private final CacheManager redis;
+    private final String rankName;
+    private final Granularity granularity;
+    private final int retainedBuckets;
+    private final long offsetMillis;
+    private final long refreshMillis;
+    private final Map<Integer, View> views = new ConcurrentHashMap<>();
+    private volatile LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * A rank on {@link RedisManager#I} with buckets aligned to UTC, whose views are refreshed at most every second.
+     */
+    public WindowedRank(String rankName, Granularity granularity, int retainedBuckets) {
+        this(RedisManager.I, rankName, granularity, retainedBuckets, ZoneOffset.UTC, 1000);
+    }
+
+    /**
+     * @param retainedBuckets how many buckets are kept, the largest window
+     * @param zone            the offset the buckets are aligned to, e.g. days start at midnight of that offset
+     * @param refreshMillis   how long a view is read without being refreshed, 0 to refresh on every read
+     */
+    public WindowedRank(CacheManager cache, String rankName, Granularity granularity, int retainedBuckets, ZoneOffset zone, long refreshMillis) {
+        if (retainedBuckets <= 0 || refreshMillis < 0) {
+            throw new IllegalArgumentException("retainedBuckets must be positive and refreshMillis not negative");
+        }
+        this.redis = cache;
+        this.rankName = rankName;
+        this.granularity = granularity;
+        this.retainedBuckets = retainedBuckets;
+        this.offsetMillis = TimeUnit.SECONDS.toMillis(zone.getTotalSeconds());
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Adds the delta to the node in the current bucket.
+     *
+     * @return the score of the node in the current bucket, null if redis failed
+     */
+    public Double incr(String nodeId, double nodeScores) {
+        String bucket = bucketKey(currentBucket());
+        Object reply = redis.eval(INCR_SCRIPT, Collections.singletonList(bucket),
+                Arrays.asList(Double.toString(nodeScores), nodeId, Long.toString(bucketTtlSeconds())));
+        return Objects.nonNull(reply) ? Double.parseDouble(reply.toString()) : null;
+    }
+
+    /**
+     * Removes the node from every retained bucket and every view.
+     *
+     * @return false if the node was in none of them
+     */
+    public boolean remove(String nodeId) {
+        long current = currentBucket();
+        List<String> keys = new ArrayList<>(3 * retainedBuckets);
+        for (int i = 0; i < retainedBuckets; i++) {
+            keys.add(bucketKey(current - i));
+        }
+        for (int buckets = 1; buckets <= retainedBuckets; buckets++) {
+            keys.add(viewKey(buckets));
+            keys.add(closedKey(buckets, current));
+        }
+        Object removed = redis.eval(REMOVE_SCRIPT, keys, Collections.singletonList(nodeId));
+        return removed instanceof Long && (Long) removed > 0;
+    }
+
+    /**
+     * The read-only rank of the sum of the last buckets, the current one included: with DAY buckets,
+     * window(1) is today and window(7) the last 7 days. The view is refreshed when read, see the class comment.
+     *
+     * @throws IllegalArgumentException if buckets is not between 1 and the retained buckets
+     */
+    public View window(int buckets) {
+        if (buckets <= 0 || buckets > retainedBuckets) {
+            throw new IllegalArgumentException("window must be 1 to " + retainedBuckets + " buckets, not " + buckets);
+        }
+        return views.computeIfAbsent(buckets, View::new);
+    }
+
+    public String getRankName() {
+        return rankName;
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    public int getRetainedBuckets() {
+        return retainedBuckets;
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    long currentBucket() {
+        return Math.floorDiv(clock.getAsLong() + offsetMillis, granularity.millis);
+    }
+
+    String bucketKey(long bucket) {
+        return RedisKeys.sameSlot(rankName, ":" + bucket);
+    }
+
+    private String viewKey(int buckets) {
+        return RedisKeys.sameSlot(rankName, ":w" + buckets);
+    }
+
+    private String closedKey(int buckets, long current) {
+        return RedisKeys.sameSlot(rankName, ":w" + buckets + ":" + current);
+    }
+
+    /**
+     * A bucket is kept until the last window holding it is over.
+     */
+    private long bucketTtlSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(granularity.millis * (retainedBuckets + 1));
+    }
+
+    /**
+     * {@link #REFRESH_SCRIPT} for caches without lua.
+     */
+    private static Object refresh(CacheManager cache, List<String> keys, List<String> args) {
+        String current = keys.get(keys.size() - 1);
+        int ttl = Integer.parseInt(args.get(0));
+        if (keys.size() > 3 && !cache.exists(keys.get(1))) {
+            cache.zunionstore(keys.get(1), keys.subList(2, keys.size() - 1).toArray(new String[0]));
+            cache.expire(keys.get(1), ttl);
+        }
+        Long size = cache.zunionstore(keys.get(0), keys.get(1), current);
+        cache.expire(keys.get(0), ttl);
+        return size;
+    }
+
+    /**
+     * Read-only rank of a window of a {@link WindowedRank}, its reads refresh the aggregate first when it is
+     * older than refreshMillis or the current bucket changed. Reads go to the master, which holds the aggregate
+     * as just refreshed, and are not answered by the result cache, as the aggregate changes without its version.
+     */
+    public final class View extends RedisRank {
+        private final int buckets;
+        private volatile long refreshedBucket = Long.MIN_VALUE;
+        private volatile long refreshedAt;
+
+        View(int buckets) {
+            super(redis, viewKey(buckets));
+            this.buckets = buckets;
+        }
+
+        public int getBuckets() {
+            return buckets;
+        }
+
+        /**
+         * Refreshes the aggregate now.
+         */
+        public void refresh() {
+            synchronized (this) {
+                refreshLocked();
+            }
+        }
+
+        private void refreshLocked() {
+            long current = currentBucket();
+            List<String> keys = new ArrayList<>(buckets + 2);
+            keys.add(getRankName());
+            keys.add(closedKey(buckets, current));
+            for (long bucket = current - buckets + 1; bucket < current; bucket++) {
+                keys.add(bucketKey(bucket));
+            }
+            keys.add(bucketKey(current));
+            long ttl = TimeUnit.MILLISECONDS.toSeconds(granularity.millis);
+            if (Objects.nonNull(redis.eval(REFRESH_SCRIPT, keys, Collections.singletonList(Long.toString(ttl))))) {
+                refreshedBucket = current;
+                refreshedAt = clock.getAsLong();
+                invalidateCaches();
+            }
+        }
+
+        /**
+         * Readers finding the aggregate stale queue on the view, the first one refreshes it and the others
+         * find it fresh once they get the lock.
+         */
+        @Override
+        protected CacheManager getReadRedis() {
+            if (isStale()) {
+                synchronized (this) {
+                    if (isStale()) {
+                        refreshLocked();
+                    }
+                }
+            }
+            return getRedis();
+        }
+
+        private boolean isStale() {
+            return refreshedBucket != currentBucket() || clock.getAsLong() - refreshedAt >= refreshMillis;
+        }
+
+        @Override
+        boolean supportsResultCache() {
+            return false;
+        }
+
+        @Override
+        @Deprecated
+        public void insertOrUpdate(String nodeId, double nodeScores) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public Long insertOrUpdate(List<RankNode> list) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public Double incr(String nodeId, double nodeScores) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public long remove(String... nodeIds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public long removeByRank(long start, long end) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public long removeByScore(double minNodeScores, double maxNodeScores) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public Long removeAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public void restore(RankSnapshot snapshot) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public synchronized void enableIncrCoalescing(long flushIntervalMillis, int maxPending) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        public RankBatch batch() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.yinrs.cache.memory;
+
+import com.yinrs.cache.CachePipeline;
+import org.junit.Test;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class InMemoryCacheManagerTest {
+    @Test
+    public void commands() throws Exception {
+        InMemoryCacheManager cache = new InMemoryCacheManager();
+
+        cache.zadd("z", 2, "b");
+        cache.zadd("z", 1, "c");
+        cache.zadd("z", 2, "a");
+        assertTrue("zadd update is not new", cache.zadd("z", Collections.singletonMap("a", 3.0)) == 0);
+        assertTrue("asc order", order(cache.zrangeWithScores("z", 0, -1)).equals(Arrays.asList("c", "b", "a")));
+        cache.zadd("z", 2, "a");
+        assertTrue("equal scores by member", order(cache.zrangeWithScores("z", 0, -1)).equals(Arrays.asList("c", "a", "b")));
+        assertTrue("desc first", order(cache.zrevrangeWithScores("z", 0, 0)).equals(Collections.singletonList("b")));
+        assertTrue("negative start", order(cache.zrangeWithScores("z", -2, 99)).equals(Arrays.asList("a", "b")));
+        assertTrue("empty range", cache.zrangeWithScores("z", 2, 1).isEmpty());
+        assertTrue("rank", cache.zrank("z", "a") == 1 && cache.zrevrank("z", "a") == 1 && cache.zrank("z", "x") == null);
+        assertTrue("zcount", cache.zcount("z", 1, 2) == 3 && cache.zcount("z", 2, 1) == 0);
+        assertTrue("zincrby", cache.zincrby("z", 1.5, "c") == 2.5);
+        List<byte[]> raw = cache.zrangeWithScoresRaw("z", 0, -1, true);
+        assertTrue("raw reply", "c".equals(SafeEncoder.encode(raw.get(0))) && "2.5".equals(SafeEncoder.encode(raw.get(1))));
+        assertTrue("integral score", "2".equals(SafeEncoder.encode(raw.get(3))));
+        assertTrue("zremrangeByScore", cache.zremrangeByScore("z", 2, 2) == 2 && cache.zcard("z") == 1);
+        assertTrue("empty zset deleted", cache.zrem("z", "c", "x") == 1 && !cache.exists("z"));
+        assertTrue("missing zset", cache.zcard("z") == 0 && cache.zscore("z", "c") == null);
+
+        cache.set("s", "v");
+        assertTrue("wrong type answers the default", cache.zcard("s") == 0 && cache.zadd("s", Collections.singletonMap("m", 1.0)) == 0);
+        assertTrue("wrong type leaves the value", cache.get("s", String.class).equals("v"));
+        cache.set("t", "v", 1);
+        assertTrue("ttl", cache.exists("t"));
+        Thread.sleep(1100);
+        assertTrue("expired", !cache.exists("t") && cache.get("t", String.class) == null);
+        assertTrue("incr", cache.incr("n") == 1 && cache.incr("n") == 2 && cache.getNumber("n", Long.class) == 2);
+        assertTrue("absent number", cache.getNumber("absent", Long.class) == 0);
+
+        cache.hset("h", "f", "1");
+        assertTrue("hincrBy", cache.hincrBy("h", "f", 2) == 3 && "3".equals(cache.hget("h", "f", String.class)));
+        cache.hdel("h", "f");
+        assertTrue("empty hash deleted", !cache.exists("h") && cache.hgetAll("h").isEmpty());
+        for (int i = 0; i < 5; i++) {
+            cache.hset("scan", "f" + i, String.valueOf(i));
+        }
+        List<String> scanned = new ArrayList<>();
+        String cursor = "0";
+        do {
+            ScanResult<Map.Entry<String, String>> page = cache.hscan("scan", cursor, 2);
+            assertTrue("hscan page", page.getResult().size() <= 2);
+            for (Map.Entry<String, String> entry : page.getResult()) {
+                scanned.add(entry.getKey());
+            }
+            cache.hdel("scan", "f2");
+            cursor = page.getStringCursor();
+        } while (!"0".equals(cursor));
+        assertTrue("hscan sees every field kept", scanned.equals(Arrays.asList("f0", "f1", "f3", "f4")));
+        assertTrue("hscan of a missing hash", cache.hscan("absent", "0", 2).getResult().isEmpty() && "0".equals(cache.hscan("absent", "0", 2).getStringCursor()));
+        assertTrue("hscan count below 1 fails", cache.hscan("scan", "0", 0) == null && cache.hscan("scan", "0", -1) == null);
+        cache.sAdd("set", "a");
+        cache.sAdd("set", "b");
+        assertTrue("set", cache.sismember("set", "a") && cache.sCard("set") == 2 && cache.smembers("set").size() == 2);
+        cache.sRem("set", "a");
+        cache.sRem("set", "b");
+        assertTrue("empty set deleted", !cache.exists("set"));
+        cache.lpush("l", "1");
+        cache.lpush("l", "2");
+        assertTrue("lrange", cache.lrange("l", 0, -1, Integer.class).equals(Arrays.asList(2, 1)));
+        cache.zadd("from", 1, "a");
+        cache.rename("from", "l");
+        assertTrue("rename replaces the target", !cache.exists("from") && cache.zscore("l", "a") == 1);
+
+        AtomicInteger notified = new AtomicInteger();
+        Runnable listener = notified::incrementAndGet;
+        cache.subscribeKeyspace("p", listener);
+        CachePipeline pipeline = cache.pipelined();
+        CompletableFuture<Long> added = pipeline.zadd("p", 1, "a");
+        CompletableFuture<Double> incr = pipeline.zincrby("p", 2, "a");
+        CompletableFuture<Long> version = pipeline.incr("s");
+        assertTrue("queued until sync", !added.isDone());
+        pipeline.sync();
+        assertTrue("pipeline replies", added.join() == 1 && incr.join() == 3);
+        assertTrue("pipeline error", version.isCompletedExceptionally());
+        assertTrue("one notification per key and sync", notified.get() == 1);
+        cache.zrem("p", "a");
+        assertTrue("notified on write", notified.get() == 2);
+        cache.unsubscribeKeyspace("p", listener);
+        cache.zadd("p", 1, "a");
+        assertTrue("unsubscribed", notified.get() == 2);
+        cache.destroy();
+        assertTrue("destroy drops the data", !cache.exists("p"));
+    }
+
+    private static List<String> order(Set<Tuple> tuples) {
+        List<String> members = new ArrayList<>();
+        for (Tuple tuple : tuples) {
+            members.add(tuple.getElement());
+        }
+        return members;
+    }
+}
@@ -0,0 +1,27 @@
+package com.yinrs.cache.redis;
+
+import org.junit.Test;
+import redis.clients.util.JedisClusterCRC16;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class RedisKeysTest {
+    @Test
+    public void sameSlot() {
+        assertTrue("no tag", RedisKeys.hashTag("rank") == null);
+        assertTrue("empty tag", RedisKeys.hashTag("{}rank") == null);
+        assertTrue("tag", "user1".equals(RedisKeys.hashTag("rank{user1}")));
+
+        for (String key : new String[]{"redisrankwithtimestampk2h5s9e7_weekly", "rank{user1}", "a{b", "a}b"}) {
+            String hash = RedisKeys.sameSlot(key, "-hash");
+            assertTrue("suffix " + hash, hash.endsWith("-hash"));
+            if (key.indexOf('}') < 0 || RedisKeys.hashTag(key) != null) {
+                assertTrue("same slot " + key, JedisClusterCRC16.getSlot(key) == JedisClusterCRC16.getSlot(hash));
+            }
+        }
+        assertTrue("tagged", "{rank}-hash".equals(RedisKeys.sameSlot("rank", "-hash")));
+        assertTrue("tag kept", "rank{user1}-hash".equals(RedisKeys.sameSlot("rank{user1}", "-hash")));
+        assertTrue("untaggable", "a}b-hash".equals(RedisKeys.sameSlot("a}b", "-hash")));
+    }
+}
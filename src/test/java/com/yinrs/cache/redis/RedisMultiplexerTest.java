@@ -0,0 +1,50 @@
+package com.yinrs.cache.redis;
+
+import com.yinrs.cache.redis.connection.RedisConnectionFactory;
+import com.yinrs.config.CC;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Needs the redis of reference.conf.
+ */
+public class RedisMultiplexerTest {
+    public static void main(String[] args) throws Exception {
+        RedisConnectionFactory factory = new RedisConnectionFactory();
+        factory.setPassword(CC.mp.redis.password);
+        factory.setPoolConfig(CC.mp.redis.getPoolConfig(JedisPoolConfig.class));
+        factory.setRedisServers(CC.mp.redis.nodes());
+        factory.init();
+        RedisMultiplexer mux = new RedisMultiplexer(factory, 2, 64);
+        String key = "multiplexer-test";
+        mux.execute(p -> p.del(key));
+
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+            String member = "node" + t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    mux.execute(p -> p.zincrby(key, 1, member));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        assertTrue("zcard", mux.execute(p -> p.zcard(key)) == 32);
+        assertTrue("zscore", mux.execute(p -> p.zscore(key, "node7")) == 1000);
+        mux.execute(p -> p.del(key));
+
+        mux.close();
+        factory.destroy();
+    }
+}
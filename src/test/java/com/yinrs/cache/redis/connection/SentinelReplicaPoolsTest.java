@@ -0,0 +1,37 @@
+package com.yinrs.cache.redis.connection;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class SentinelReplicaPoolsTest {
+    @Test
+    public void pools() {
+        assertTrue("healthy replica", SentinelReplicaPools.isHealthy(replica("slave", "ok")));
+        assertTrue("subjectively down", !SentinelReplicaPools.isHealthy(replica("slave,s_down", "ok")));
+        assertTrue("objectively down", !SentinelReplicaPools.isHealthy(replica("slave,o_down", "ok")));
+        assertTrue("disconnected", !SentinelReplicaPools.isHealthy(replica("slave,disconnected", "ok")));
+        assertTrue("link to master down", !SentinelReplicaPools.isHealthy(replica("slave", "err")));
+        Map<String, String> noAddress = replica("slave", "ok");
+        noAddress.remove("port");
+        assertTrue("no address", !SentinelReplicaPools.isHealthy(noAddress));
+
+        SentinelReplicaPools pools = new SentinelReplicaPools("mymaster", new HashSet<>(), null, 100, null, 0);
+        assertTrue("no replica known", pools.getResource() == null);
+        pools.destroy();
+    }
+
+    private static Map<String, String> replica(String flags, String linkStatus) {
+        Map<String, String> replica = new HashMap<>();
+        replica.put("ip", "10.0.0.2");
+        replica.put("port", "6379");
+        replica.put("flags", flags);
+        replica.put("master-link-status", linkStatus);
+        return replica;
+    }
+}
@@ -0,0 +1,42 @@
+package com.yinrs.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertClose(histogram.p50(), 50000000L, "p50");
+        assertClose(histogram.p99(), 99000000L, "p99");
+        assertClose(histogram.p999(), 99900000L, "p999");
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() & Long.MAX_VALUE;
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue("upper bound " + value, LatencyHistogram.upperBound(bucket) >= value);
+            assertTrue("lower bound " + value, bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < value);
+        }
+
+        HistogramMetricsRegistry registry = new HistogramMetricsRegistry();
+        registry.recordLatency("redis.cmd.zadd", 1000);
+        registry.incrementCounter("redis.errors");
+        registry.registerGauge("redis.pool.active", () -> 3);
+        assertTrue("histogram", registry.histogram("redis.cmd.zadd").count() == 1);
+        assertTrue("counter", registry.counter("redis.errors") == 1);
+        assertTrue("gauge", registry.gauge("redis.pool.active") == 3);
+        System.out.print(registry.report());
+    }
+
+    private static void assertClose(long actual, long expected, String message) {
+        assertTrue(message + " " + actual, actual >= expected && actual <= expected * 1.125);
+    }
+}
@@ -0,0 +1,136 @@
+package com.yinrs.rank;
+
+import com.yinrs.cache.memory.InMemoryCacheManager;
+import com.yinrs.rank.localrank.LocalRank;
+import com.yinrs.rank.localrank.LocalRankManager;
+import com.yinrs.rank.offheaprank.OffHeapRank;
+import com.yinrs.rank.offheaprank.OffHeapRankManager;
+import com.yinrs.rank.redisrank.RedisRank;
+import com.yinrs.rank.redisrank.RedisRankManager;
+import com.yinrs.rank.redisrank.ShardedRedisRank;
+import com.yinrs.rank.redisrank.ShardedRedisRankManager;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RankSnapshotTest {
+    @Test
+    public void snapshot() throws Exception {
+        Path dir = Files.createTempDirectory("rank-snapshot");
+        try {
+            LocalRankManager localManager = RankManagerFactory.getInstance(LocalRankManager.class);
+            LocalRank local = localManager.register("snapshot");
+            Random random = new Random(1);
+            for (int i = 0; i < 25000; i++) {
+                local.insertOrUpdate(String.valueOf(random.nextInt(20000)), random.nextInt(100));
+            }
+            local.insertOrUpdate("榜单-" + 1, 50);
+            Path path = dir.resolve("local.snapshot");
+            local.snapshotTo(path);
+            try (RankSnapshot snapshot = RankSnapshot.open(path)) {
+                assertTrue("header", "snapshot".equals(snapshot.getRankName()) && !snapshot.hasNumericIds() && snapshot.size() == local.countAll());
+                RankPage page = snapshot.nextPage(10);
+                assertTrue("sorted from the lowest score", ids(page.toRankNodes()).equals(ids(local.ascRangeByRankWithScores(0, 9))));
+            }
+
+            local.insertOrUpdate("after", 1);
+            assertTrue("local restore replaces the nodes", localManager.restoreFrom(path) == local && local.getNodeVal("after") == null);
+            assertTrue("utf-8 ids", local.getNodeVal("榜单-1") == 50);
+
+            InMemoryCacheManager cache = new InMemoryCacheManager();
+            RedisRankManager<RedisRank> redisManager = new RedisRankManager<>("snaprank_", "snaprank_set", RedisRank.class, cache);
+            RedisRank redisRank = redisManager.restoreFrom(path);
+            assertTrue("restored under the manager's name", "snaprank_snapshot".equals(redisRank.getRankName()));
+            sameNodes(redisRank, local, "redis restore");
+            assertTrue("restore key renamed", !cache.exists("{snaprank_snapshot}-restore"));
+            redisRank.insertOrUpdate("extra", 3);
+            Path redisPath = dir.resolve("redis.snapshot");
+            redisRank.snapshotTo(redisPath);
+            redisRank.removeAll();
+            redisManager.restoreFrom(redisPath);
+            assertTrue("redis snapshot", redisRank.getNodeVal("extra") == 3 && redisRank.countAll() == local.countAll() + 1);
+
+            ShardedRedisRankManager<ShardedRedisRank> shardedManager = new ShardedRedisRankManager<>("snapshard_", "snapshard_set", ShardedRedisRank.class, cache);
+            sameNodes(shardedManager.restoreFrom(path), local, "sharded restore");
+
+            local.remove("榜单-1");
+            local.snapshotTo(path);
+            OffHeapRankManager offHeapManager = RankManagerFactory.getInstance(OffHeapRankManager.class);
+            OffHeapRank offHeap = offHeapManager.restoreFrom(path);
+            sameNodes(offHeap, local, "off heap restore of string ids");
+            Path offHeapPath = dir.resolve("offheap.snapshot");
+            offHeap.snapshotTo(offHeapPath);
+            try (RankSnapshot snapshot = RankSnapshot.open(offHeapPath)) {
+                assertTrue("16 bytes a numeric node", snapshot.hasNumericIds() && Files.size(offHeapPath) == 16 + 4 + 8 + 16 * snapshot.size());
+            }
+            offHeap.removeAll();
+            offHeapManager.restoreFrom(offHeapPath);
+            sameNodes(offHeap, local, "off heap restore of numeric ids");
+            sameNodes(localManager.restoreFrom(offHeapPath), local, "local restore of numeric ids");
+
+            local.removeAll();
+            local.snapshotTo(path);
+            redisManager.restoreFrom(path);
+            assertTrue("empty restore", redisRank.countAll() == 0 && !cache.exists(redisRank.getRankName()));
+
+            Files.write(path, new byte[]{1, 2, 3});
+            try {
+                RankSnapshot.open(path);
+                fail("not a snapshot");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertTrue("no temporary file left", !Files.exists(dir.resolve("local.snapshot.tmp")));
+        } finally {
+            for (Path file : Files.list(dir).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void failedCommitDeletesTheTemporaryFile() throws Exception {
+        Path dir = Files.createTempDirectory("rank-snapshot");
+        Path taken = Files.createDirectory(dir.resolve("taken"));
+        Path inside = Files.createFile(taken.resolve("file"));
+        try {
+            RankSnapshot.Writer writer = RankSnapshot.create(taken, "taken", true);
+            writer.add(1L, 1);
+            try {
+                writer.commit();
+                fail("moved over a directory that is not empty");
+            } catch (UncheckedIOException e) {
+                // expected
+            }
+            assertTrue("no temporary file left", !Files.exists(dir.resolve("taken.tmp")));
+        } finally {
+            Files.delete(inside);
+            Files.delete(taken);
+            Files.deleteIfExists(dir.resolve("taken.tmp"));
+            Files.delete(dir);
+        }
+    }
+
+    private static void sameNodes(Rank rank, Rank expected, String message) {
+        assertTrue(message + " count", rank.countAll().equals(expected.countAll()));
+        List<RankNode> nodes = expected.descRangeByRankWithScores(0, -1);
+        for (int i = 0; i < nodes.size(); i += 97) {
+            RankNode node = nodes.get(i);
+            assertTrue(message + " " + node, Double.valueOf(node.getNodeScore()).equals(rank.getNodeVal(node.getNodeId())));
+        }
+    }
+
+    private static List<String> ids(List<RankNode> nodes) {
+        return nodes.stream().map(RankNode::getNodeId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,106 @@
+package com.yinrs.rank.localrank;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.RankPage;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class LocalRankTest {
+    @Test
+    public void randomOperations() throws Exception {
+        LocalRankManager rankManager = RankManagerFactory.getInstance(LocalRankManager.class);
+        for (int i = 0; i < 99; i++) {
+            test(rankManager, i);
+        }
+    }
+
+    private static void test(LocalRankManager rankManager, int k) {
+        LocalRank rank = rankManager.register("rank-" + k);
+        Random random = new Random(k);
+        Map<String, Double> expected = new HashMap<>();
+        for (int i = 0; i < 999; i++) {
+            String nodeId = "nodeId" + random.nextInt(300);
+            double score = random.nextInt(50);
+            if (random.nextBoolean()) {
+                rank.insertOrUpdate(nodeId, score);
+                expected.put(nodeId, score);
+            } else if (random.nextBoolean()) {
+                Double finalVal = rank.incr(nodeId, score);
+                expected.put(nodeId, finalVal);
+            } else {
+                rank.remove(nodeId);
+                expected.remove(nodeId);
+            }
+        }
+        rank.removeByScore(10, 12);
+        expected.values().removeIf(score -> score >= 10 && score <= 12);
+
+        List<RankNode> asc = rank.ascRangeByRankWithScores(0, -1);
+        List<RankNode> desc = rank.descRangeByRankWithScores(0, -1);
+        assertTrue("size " + k, asc.size() == expected.size() && desc.size() == expected.size());
+        for (int i = 0; i < asc.size(); i++) {
+            RankNode node = asc.get(i);
+            assertTrue("score " + node, node.getNodeScore() == expected.get(node.getNodeId()));
+            assertTrue("asc rank " + node, rank.getASCRank(node.getNodeId()) == i);
+            assertTrue("desc rank " + node, rank.getDESCRank(node.getNodeId()) == asc.size() - 1 - i);
+            assertTrue("desc order " + node, desc.get(asc.size() - 1 - i).getNodeId().equals(node.getNodeId()));
+            if (i > 0) {
+                RankNode prev = asc.get(i - 1);
+                assertTrue("asc order " + node, prev.getNodeScore() < node.getNodeScore()
+                        || (prev.getNodeScore() == node.getNodeScore() && prev.getNodeId().compareTo(node.getNodeId()) < 0));
+            }
+        }
+        long count = 0;
+        for (Double score : expected.values()) {
+            if (score >= 5 && score <= 30) count++;
+        }
+        assertTrue("countBy " + k, rank.countBy(5, 30) == count);
+        assertTrue("negative range " + k, rank.descRangeByRankWithScores(-3, -1).size() == Math.min(3, expected.size()));
+        assertTrue("streamDesc " + k, rank.streamDesc(7).map(RankNode::getNodeId).collect(Collectors.toList())
+                .equals(desc.stream().map(RankNode::getNodeId).collect(Collectors.toList())));
+        assertTrue("streamAsc " + k, rank.streamAsc(expected.size() + 1).count() == expected.size());
+
+        if (!desc.isEmpty()) {
+            int at = desc.size() / 2;
+            List<RankNode> around = rank.descNeighborhood(desc.get(at).getNodeId(), 2, 3);
+            List<RankNode> expectedAround = desc.subList(Math.max(at - 2, 0), Math.min(at + 4, desc.size()));
+            assertTrue("descNeighborhood " + k, around.stream().map(RankNode::getNodeId).collect(Collectors.toList())
+                    .equals(expectedAround.stream().map(RankNode::getNodeId).collect(Collectors.toList())));
+            assertTrue("descNeighborhood rank " + k, around.get(0).getRank() == Math.max(at - 2, 0));
+            assertTrue("ascNeighborhood " + k, rank.ascNeighborhood(asc.get(0).getNodeId(), 5, 0).size() == 1);
+        }
+        assertTrue("absent neighborhood " + k, rank.descNeighborhood("absent", 1, 1) == null);
+        assertTrue("async countAll " + k, rank.async().countAll().join() == expected.size());
+        RankPage page = rank.descRangePage(-20, -1);
+        assertTrue("descRangePage " + k, page.toRankNodes().toString().equals(rank.descRangeByRankWithScores(-20, -1).toString()));
+        ByteBuffer buffer = ByteBuffer.allocate(page.binarySize());
+        page.writeTo(buffer);
+        buffer.flip();
+        assertTrue("binary page " + k, RankPage.readFrom(buffer).toRankNodes().toString().equals(page.toRankNodes().toString()) && !buffer.hasRemaining());
+        StringBuilder json = new StringBuilder();
+        rank.ascRangePage(0, 1).writeTo(json);
+        List<JSONObject> parsed = JSON.parseArray(json.toString(), JSONObject.class);
+        assertTrue("json page size " + k, parsed.size() == Math.min(2, asc.size()));
+        for (int i = 0; i < parsed.size(); i++) {
+            assertTrue("json page " + k, parsed.get(i).getString("nodeId").equals(asc.get(i).getNodeId()) && parsed.get(i).getLongValue("rank") == i
+                    && parsed.get(i).getDoubleValue("nodeScore") == asc.get(i).getNodeScore());
+        }
+        json.setLength(0);
+        RankPage.of(Collections.singletonList(new RankNode("inf", 0L, Double.POSITIVE_INFINITY)), 0).writeTo(json);
+        assertTrue("json infinite score " + k, JSON.parseArray(json.toString(), JSONObject.class).get(0).get("nodeScore") == null);
+
+        rank.removeByRank(0, 9);
+        assertTrue("removeByRank " + k, rank.countAll() == Math.max(expected.size() - 10, 0));
+        rankManager.remove(rank);
+        assertTrue("remove " + k, rank.countAll() == 0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.yinrs.rank.offheaprank;
+
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.localrank.LocalRank;
+import com.yinrs.rank.localrank.LocalRankManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class OffHeapRankTest {
+    private final OffHeapRankManager rankManager = RankManagerFactory.getInstance(OffHeapRankManager.class);
+
+    @After
+    public void removeAll() {
+        rankManager.removeAll();
+        assertTrue("removeAll", rankManager.ranks().isEmpty());
+    }
+
+    @Test
+    public void sameAsLocalRanks() {
+        LocalRankManager localManager = RankManagerFactory.getInstance(LocalRankManager.class);
+        for (int k = 0; k < 99; k++) {
+            sameAsLocalRank(rankManager.register("rank-" + k), localManager.register("offheap-rank-" + k), k);
+        }
+    }
+
+    @Test
+    public void primitiveIds() {
+        primitive(rankManager.register("primitive"));
+    }
+
+    @Test
+    public void moveNode() {
+        move(rankManager);
+    }
+
+    /**
+     * Same scores and same ids ordered the same way by LocalRank: single digit ids sort alike as bytes and as numbers.
+     */
+    private static void sameAsLocalRank(OffHeapRank rank, LocalRank local, int k) {
+        Random random = new Random(k);
+        for (int i = 0; i < 999; i++) {
+            String nodeId = String.valueOf(random.nextInt(10));
+            double score = random.nextInt(k % 3 == 0 ? 3 : 50);
+            if (random.nextBoolean()) {
+                rank.insertOrUpdate(nodeId, score);
+                local.insertOrUpdate(nodeId, score);
+            } else if (random.nextBoolean()) {
+                assertTrue("incr " + nodeId, rank.incr(nodeId, score).equals(local.incr(nodeId, score)));
+            } else {
+                assertTrue("remove " + nodeId, rank.remove(nodeId) == local.remove(nodeId));
+            }
+            if (i % 100 == 99) {
+                assertTrue("desc " + k + " " + i, ids(rank.descRangeByRankWithScores(0, -1)).equals(ids(local.descRangeByRankWithScores(0, -1))));
+            }
+        }
+        assertTrue("asc " + k, ids(rank.ascRangeByRankWithScores(-7, -2)).equals(ids(local.ascRangeByRankWithScores(-7, -2))));
+        assertTrue("count " + k, rank.countAll().equals(local.countAll()) && rank.countBy(5, 30).equals(local.countBy(5, 30)));
+        for (RankNode node : local.ascRangeByRankWithScores(0, -1)) {
+            assertTrue("asc rank " + node, node.getRank().equals(rank.getASCRank(node.getNodeId())));
+            assertTrue("desc rank " + node, local.getDESCRank(node.getNodeId()).equals(rank.getDESCRank(node.getNodeId())));
+            assertTrue("neighborhood " + node, ids(rank.descNeighborhood(node.getNodeId(), 2, 2)).equals(ids(local.descNeighborhood(node.getNodeId(), 2, 2))));
+        }
+        assertTrue("page " + k, rank.descRangePage(1, 4).getStartRank() == 1 && rank.descRangePage(1, 4).size() == local.descRangePage(1, 4).size());
+        assertTrue("removeByScore " + k, rank.removeByScore(10, 12) == local.removeByScore(10, 12));
+        assertTrue("removeByRank " + k, rank.removeByRank(1, 2) == local.removeByRank(1, 2));
+        assertTrue("after remove " + k, ids(rank.ascRangeByRankWithScores(0, -1)).equals(ids(local.ascRangeByRankWithScores(0, -1))));
+    }
+
+    private static void primitive(OffHeapRank rank) {
+        int n = 200000;
+        Random random = new Random(7);
+        Map<Long, Double> expected = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            long id = random.nextLong();
+            double score = random.nextInt(1000);
+            assertTrue("insert " + id, rank.insertOrUpdate(id, score) == !expected.containsKey(id));
+            expected.put(id, score);
+        }
+        List<Long> ids = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < n / 2; i++) {
+            long id = ids.get(i);
+            if (i % 2 == 0) {
+                assertTrue("remove " + id, rank.remove(id));
+                expected.remove(id);
+            } else {
+                expected.put(id, rank.incr(id, 5));
+            }
+        }
+        assertTrue("size", rank.countAll() == expected.size());
+        LongRankPage page = rank.ascLongRangePage(0, -1);
+        for (int i = 0; i < page.size(); i++) {
+            assertTrue("score " + page.getNodeId(i), expected.get(page.getNodeId(i)) == page.getNodeScore(i));
+            if (i > 0) {
+                assertTrue("order " + i, page.getNodeScore(i - 1) < page.getNodeScore(i)
+                        || page.getNodeScore(i - 1) == page.getNodeScore(i) && page.getNodeId(i - 1) < page.getNodeId(i));
+            }
+            if (i % 997 == 0) {
+                assertTrue("rank " + i, rank.getASCRank(page.getNodeId(i)) == i && rank.getDESCRank(page.getNodeId(i)) == page.size() - 1 - i);
+            }
+        }
+        LongRankPage desc = rank.descLongRangePage(10, 19);
+        for (int i = 0; i < desc.size(); i++) {
+            assertTrue("desc page " + i, desc.getNodeId(i) == page.getNodeId(page.size() - 11 - i));
+        }
+        assertTrue("removed", Double.isNaN(rank.getNodeVal(ids.get(0))) && rank.getASCRank(ids.get(0)) == -1);
+        assertTrue("non numeric read", rank.getNodeVal("not a number") == null && rank.remove("not a number") == 0);
+        try {
+            rank.insertOrUpdate("not a number", 1);
+            fail("non numeric write");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue("removeAll", rank.offHeapBytes() > 0 && rank.removeAll() == expected.size() && rank.countAll() == 0);
+        assertTrue("reused after removeAll", rank.insertOrUpdate(1L, 1) && rank.getNodeVal(1L) == 1);
+    }
+
+    private static void move(OffHeapRankManager manager) {
+        OffHeapRank src = manager.register("src");
+        OffHeapRank tgt = manager.register("tgt");
+        src.insertOrUpdate(42L, 7);
+        manager.move(src, tgt, "42");
+        assertTrue("move", src.getNodeVal("42") == null && tgt.getNodeVal(42L) == 7);
+    }
+
+    private static List<String> ids(List<RankNode> nodes) {
+        return nodes.stream().map(RankNode::getNodeId).collect(Collectors.toList());
+    }
+}
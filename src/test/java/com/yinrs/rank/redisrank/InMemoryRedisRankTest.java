@@ -0,0 +1,275 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.CacheManager;
+import com.yinrs.cache.memory.InMemoryCacheManager;
+import com.yinrs.rank.RankBatch;
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.localrank.LocalRank;
+import com.yinrs.rank.localrank.LocalRankManager;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * The redis ranks on an {@link InMemoryCacheManager}, no redis server needed.
+ */
+public class InMemoryRedisRankTest {
+    private final InMemoryCacheManager cache = new InMemoryCacheManager();
+    private final LocalRankManager localManager = RankManagerFactory.getInstance(LocalRankManager.class);
+
+    @Test
+    public void redisRanks() {
+        RedisRankManager<RedisRank> manager = new RedisRankManager<>("memrank_", "memrank_set", RedisRank.class, cache);
+        for (int k = 0; k < 20; k++) {
+            RedisRank rank = manager.register("rank-" + k);
+            LocalRank local = localManager.register("memory-rank-" + k);
+            sameAsLocalRank(rank, local, k);
+            batch(rank, local, k);
+        }
+        move(manager);
+        infiniteScores(manager.register("infinite"));
+        long version = cache.getNumber(ResultCache.versionKey("memrank_rank-0"), Long.class);
+        manager.removeAll();
+        assertTrue("removeAll", manager.ranks() == null || manager.ranks().isEmpty());
+        assertTrue("version kept and incremented", cache.getNumber(ResultCache.versionKey("memrank_rank-0"), Long.class) == version + 1);
+    }
+
+    @Test
+    public void increments() throws Exception {
+        RedisRankManager<RedisRank> manager = new RedisRankManager<>("memrank_", "memrank_set", RedisRank.class, cache);
+        concurrentIncr(manager.register("concurrent"));
+        coalescedIncr(manager);
+        coalescedMove(manager);
+        coalescedMove(new RedisRankManager<RedisRank>("memsplit_", "memsplit_set", RedisRank.class, cache) {
+            @Override
+            protected boolean canMoveAtomically(RedisRank src, RedisRank tgt) {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    public void timestampRanks() {
+        timestamp(new RedisRankDESCWithTimestampManager<>("memts_", "memts_set", RedisRankDESCWithTimestamp.class, cache));
+        packedTimestamp(new RedisRankDESCWithPackedTimestampManager<>("mempts_", "mempts_set", RedisRankDESCWithPackedTimestamp.class, cache));
+    }
+
+    @Test
+    public void shardedRanks() {
+        ShardedRedisRankManager<ShardedRedisRank> sharded = new ShardedRedisRankManager<>("memshard_", "memshard_set", ShardedRedisRank.class, cache);
+        sameAsLocalRank(sharded.register("rank"), localManager.register("memory-sharded"), 99);
+        deepRange(sharded.register("deep"), localManager.register("memory-deep"));
+    }
+
+    private static void sameAsLocalRank(RedisRank rank, LocalRank local, int k) {
+        Random random = new Random(k);
+        for (int i = 0; i < 999; i++) {
+            String nodeId = "nodeId" + random.nextInt(300);
+            double score = random.nextInt(50);
+            if (random.nextBoolean()) {
+                rank.insertOrUpdate(nodeId, score);
+                local.insertOrUpdate(nodeId, score);
+            } else if (random.nextBoolean()) {
+                assertTrue("incr " + nodeId, Objects.equals(rank.incr(nodeId, score), local.incr(nodeId, score)));
+            } else {
+                assertTrue("remove " + nodeId, rank.remove(nodeId) == local.remove(nodeId));
+            }
+        }
+        assertTrue("removeByScore " + k, rank.removeByScore(10, 12) == local.removeByScore(10, 12));
+        assertTrue("desc " + k, ids(rank.descRangeByRankWithScores(0, -1)).equals(ids(local.descRangeByRankWithScores(0, -1))));
+        assertTrue("asc " + k, ids(rank.ascRangeByRankWithScores(-7, -2)).equals(ids(local.ascRangeByRankWithScores(-7, -2))));
+        assertTrue("count " + k, rank.countAll().equals(local.countAll()) && rank.countBy(5, 30).equals(local.countBy(5, 30)));
+        for (RankNode node : local.ascRangeByRankWithScores(0, 20)) {
+            assertTrue("asc rank " + node, node.getRank().equals(rank.getASCRank(node.getNodeId())));
+            assertTrue("desc rank " + node, local.getDESCRank(node.getNodeId()).equals(rank.getDESCRank(node.getNodeId())));
+            assertTrue("neighborhood " + node, ids(rank.descNeighborhood(node.getNodeId(), 2, 2)).equals(ids(local.descNeighborhood(node.getNodeId(), 2, 2))));
+        }
+        assertTrue("page " + k, rank.descRangePage(3, 12).size() == local.descRangePage(3, 12).size());
+    }
+
+    private static void batch(RedisRank rank, LocalRank local, int k) {
+        RankBatch batch = rank.batch();
+        CompletableFuture<Double> incr = batch.incr("batched", 2);
+        batch.execute();
+        assertTrue("batch " + k, incr.join() == 2 && rank.getNodeVal("batched") == 2);
+        local.insertOrUpdate("batched", 2);
+        assertTrue("removeByRank count " + k, rank.removeByRank(0, 4) == local.removeByRank(0, 4));
+        assertTrue("removeByRank " + k, ids(rank.ascRangeByRankWithScores(0, -1)).equals(ids(local.ascRangeByRankWithScores(0, -1))));
+    }
+
+    private static void deepRange(ShardedRedisRank rank, LocalRank local) {
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            String nodeId = "nodeId" + i;
+            double score = i % 3 == 0 ? random.nextInt(40) : random.nextDouble() * 1000 - 500;
+            rank.insertOrUpdate(nodeId, score);
+            local.insertOrUpdate(nodeId, score);
+        }
+        for (long start : new long[]{990, 1003, 2500, 4990, 6000}) {
+            List<RankNode> desc = rank.descRangeByRankWithScores(start, start + 20);
+            assertTrue("deep desc " + start, ids(desc).equals(ids(local.descRangeByRankWithScores(start, start + 20))));
+            assertTrue("deep desc rank " + start, desc.isEmpty() || desc.get(0).getRank() == start);
+            assertTrue("deep asc " + start, ids(rank.ascRangeByRankWithScores(start, start + 20)).equals(ids(local.ascRangeByRankWithScores(start, start + 20))));
+        }
+        assertTrue("deep stream", ids(rank.streamDesc(333).collect(Collectors.toList())).equals(ids(local.descRangeByRankWithScores(0, -1))));
+        assertTrue("deep removeByRank count", rank.removeByRank(2000, 2999) == local.removeByRank(2000, 2999));
+        assertTrue("deep removeByRank", ids(rank.ascRangeByRankWithScores(0, -1)).equals(ids(local.ascRangeByRankWithScores(0, -1))));
+    }
+
+    private static void move(RedisRankManager<RedisRank> manager) {
+        RedisRank src = manager.register("src");
+        RedisRank tgt = manager.register("tgt");
+        src.insertOrUpdate("node", 7);
+        manager.move(src, tgt, "node");
+        assertTrue("move", src.getNodeVal("node") == null && tgt.getNodeVal("node") == 7);
+    }
+
+    private static void infiniteScores(RedisRank rank) {
+        rank.insertOrUpdate("top", Double.POSITIVE_INFINITY);
+        rank.insertOrUpdate("middle", 1);
+        rank.insertOrUpdate("bottom", Double.NEGATIVE_INFINITY);
+        List<RankNode> around = rank.descNeighborhood("middle", 1, 1);
+        assertTrue("neighborhood of infinite scores", ids(around).equals(Arrays.asList("top", "middle", "bottom"))
+                && around.get(0).getNodeScore() == Double.POSITIVE_INFINITY && around.get(2).getNodeScore() == Double.NEGATIVE_INFINITY);
+    }
+
+    private static void concurrentIncr(RedisRank rank) throws InterruptedException {
+        int threads = 8, incrs = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < incrs; i++) {
+                    rank.incr("node" + (i % 10), 1);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue("concurrent incr timed out", pool.awaitTermination(1, TimeUnit.MINUTES));
+        for (int i = 0; i < 10; i++) {
+            assertTrue("concurrent incr node" + i, rank.getNodeVal("node" + i) == threads * incrs / 10);
+        }
+    }
+
+    private static void coalescedIncr(RedisRankManager<RedisRank> manager) {
+        RedisRank rank = manager.register("coalesced");
+        rank.enableIncrCoalescing(TimeUnit.HOURS.toMillis(1), 1000);
+        assertTrue("incr queued", rank.incr("a", 1) == null && rank.incr("a", 2) == null && rank.getNodeVal("a") == null);
+        rank.flushIncr();
+        assertTrue("incr flushed", rank.getNodeVal("a") == 3);
+        rank.incr("b", 1);
+        assertTrue("queued incr discarded", rank.remove("b") == 0);
+        rank.flushIncr();
+        assertTrue("removed node not written back", rank.getNodeVal("b") == null);
+        rank.incr("c", 1);
+        manager.remove(rank);
+        assertTrue("rank removed after the last flush", rank.getNodeVal("c") == null && rank.countAll() == 0);
+
+        RedisRank ranked = manager.register("coalesced-rank");
+        ranked.enableIncrCoalescing(TimeUnit.HOURS.toMillis(1), 1000);
+        ranked.insertOrUpdate("x", 1);
+        ranked.insertOrUpdate("y", 5);
+        ranked.incr("x", 10);
+        assertTrue("removeByRank sees the pending delta", ranked.removeByRank(-1, -1) == 1);
+        ranked.flushIncr();
+        assertTrue("removed by rank not written back", ranked.getNodeVal("x") == null && ranked.getNodeVal("y") == 5);
+        ranked.incr("z", 3);
+        assertTrue("removeByScore sees the pending delta", ranked.removeByScore(0, 4) == 1);
+        ranked.flushIncr();
+        assertTrue("removed by score not written back", ranked.getNodeVal("z") == null && ranked.countAll() == 1);
+        manager.remove(ranked);
+    }
+
+    private static void coalescedMove(RedisRankManager<RedisRank> manager) {
+        RedisRank src = manager.register("coalesced-src");
+        RedisRank tgt = manager.register("coalesced-tgt");
+        src.enableIncrCoalescing(TimeUnit.HOURS.toMillis(1), 1000);
+        src.insertOrUpdate("node", 1);
+        src.incr("node", 6);
+        manager.move(src, tgt, "node");
+        src.flushIncr();
+        assertTrue("move takes the pending delta", src.getNodeVal("node") == null && tgt.getNodeVal("node") == 7);
+        src.incr("new", 2);
+        manager.move(src, tgt, "new");
+        src.flushIncr();
+        assertTrue("move of a node only in the coalescer", src.getNodeVal("new") == null && tgt.getNodeVal("new") == 2);
+        manager.remove(src);
+        manager.remove(tgt);
+    }
+
+    private static void timestamp(RedisRankDESCWithTimestampManager<RedisRankDESCWithTimestamp> manager) {
+        RedisRankDESCWithTimestamp rank = manager.register("rank");
+        rank.insertOrUpdate("late", 10, new Date(2000));
+        rank.insertOrUpdate("early", 10, new Date(1000));
+        rank.insertOrUpdate("low", 5, new Date(1000));
+        assertTrue("earlier first", ids(rank.descRangeByRankWithScores(0, -1)).equals(Arrays.asList("early", "late", "low")));
+        assertTrue("timestamp incr", rank.incr("low", 10, new Date(3000)) == 15 && rank.getDESCRank("low") == 0);
+        RankNodeWithTimestamp node = rank.getDESCRankNode("early");
+        assertTrue("rank node", "early".equals(node.getNodeId()) && node.getRank() == 1 && node.getNodeScore() == 10);
+        assertTrue("timestamp val", rank.getNodeVal("late") == 10 && rank.getNodeVal("absent") == null);
+        assertTrue("timestamp neighborhood", ids(rank.descNeighborhood("late", 1, 0)).equals(Arrays.asList("early", "late")));
+        assertTrue("timestamp remove", rank.remove("late") == 1 && rank.getDESCRankNode("late") == null);
+        assertTrue("timestamp removeAll", rank.removeAll() == 2 && rank.countAll() == 0);
+
+        CacheManager cache = rank.getRedis();
+        String legacyKey = "memts_legacy-hash";//written by a version before the side hash was hash tagged
+        cache.zadd("memts_legacy", 10, "1000_old");
+        cache.hset(legacyKey, "old", "1000_old");
+        cache.zadd("memts_legacy", 5, "1000_both");
+        cache.hset(legacyKey, "both", "1000_both");
+        RedisRankDESCWithTimestamp legacy = manager.register("legacy");
+        legacy.insertOrUpdate("both", 7, new Date(2000));
+        assertTrue("legacy hash migrated on first use", !cache.exists(legacyKey) && legacy.getNodeVal("old") == 10);
+        assertTrue("upsert replaces the migrated member", legacy.getNodeVal("both") == 7 && legacy.countAll() == 2);
+        cache.zadd("memts_legacy", 3, "1000_both");
+        cache.hset(legacyKey, "both", "1000_both");
+        cache.zadd("memts_legacy", 4, "1000_late");
+        cache.hset(legacyKey, "late", "1000_late");
+        assertTrue("written by an old JVM since", legacy.migrateLegacyHash() == 1 && !cache.exists(legacyKey));
+        assertTrue("mapping written since kept", legacy.getNodeVal("late") == 4 && legacy.getNodeVal("both") == 7 && legacy.countAll() == 3);
+        assertTrue("migrated once", legacy.migrateLegacyHash() == 0);
+        cache.hset(legacyKey, "left", "1000_left");
+        assertTrue("removeAll deletes the legacy hash", legacy.removeAll() == 3 && !cache.exists(legacyKey));
+    }
+
+    private static void packedTimestamp(RedisRankDESCWithPackedTimestampManager<RedisRankDESCWithPackedTimestamp> manager) {
+        RedisRankDESCWithPackedTimestamp rank = manager.register("rank");
+        rank.insertOrUpdate("late", 10, at(2));
+        rank.insertOrUpdate("early", 10, at(1));
+        assertTrue("packed incr", rank.incr("new", 3, at(3)) == 3 && rank.incr("new", 7, at(4)) == 10);
+        assertTrue("packed order", ids(rank.descRangeByRankWithScores(0, -1)).equals(Arrays.asList("early", "late", "new")));
+        assertTrue("packed rank node", rank.getDESCRankNode("new").getRank() == 2);
+        assertTrue("packed out of range", rank.incr("new", rank.getPacker().getMaxScore(), at(5)) == null);
+        RedisRankDESCWithPackedTimestamp other = manager.register("other");
+        other.insertOrUpdate("other", 10, at(2));
+        manager.move(rank, other, "early");
+        assertTrue("packed move keeps the time", ids(other.descRangeByRankWithScores(0, -1)).equals(Arrays.asList("early", "other")));
+    }
+
+    /**
+     * @return the time the given seconds after a fixed instant inside the range of the packer
+     */
+    private static Date at(int seconds) {
+        return new Date(1700000000000L + seconds * 1000L);
+    }
+
+    private static List<String> ids(List<RankNode> nodes) {
+        return nodes.stream().map(RankNode::getNodeId).collect(Collectors.toList());
+    }
+}
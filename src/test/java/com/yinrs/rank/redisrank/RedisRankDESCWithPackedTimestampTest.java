@@ -0,0 +1,119 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.memory.InMemoryCacheManager;
+import com.yinrs.rank.RankNode;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * The packed timestamp rank on an {@link InMemoryCacheManager}, with the packer of reference.conf.
+ */
+public class RedisRankDESCWithPackedTimestampTest {
+    private static final long EPOCH = 1577836800000L;
+
+    private final RedisRankDESCWithPackedTimestampManager<RedisRankDESCWithPackedTimestamp> manager =
+            new RedisRankDESCWithPackedTimestampManager<>("packed_", "packed_set", RedisRankDESCWithPackedTimestamp.class, new InMemoryCacheManager());
+
+    @Test
+    public void tiesOrderedByTime() {
+        RedisRankDESCWithPackedTimestamp rank = manager.register("ties");
+        List<Integer> seconds = new ArrayList<>();
+        for (int i = 0; i < 99; i++) {
+            seconds.add(i);
+        }
+        Collections.shuffle(seconds, new Random(1));
+        for (int second : seconds) {
+            rank.insertOrUpdate("node" + second, 12345, at(second));
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 99; i++) {
+            expected.add("node" + i);
+        }
+        assertEquals("equal scores, the earlier first", expected, ids(rank.descRangeByRankWithScores(0, -1)));
+
+        rank.insertOrUpdate("higher", 12346, at(1000));
+        rank.insertOrUpdate("lower", 12344, at(-1000));
+        assertEquals("score before time", "higher", rank.descRangeByRankWithScores(0, 0).get(0).getNodeId());
+        assertEquals("score before time", "lower", rank.ascRangeByRankWithScores(0, 0).get(0).getNodeId());
+        assertTrue("unpacked scores", rank.getNodeVal("node7") == 12345 && rank.getDESCRankNode("node7").getNodeScore() == 12345);
+
+        assertTrue("incr takes the new time", rank.incr("node0", 0, at(500)) == 12345);
+        assertEquals("incr moves behind the earlier ties", Long.valueOf(99), rank.getDESCRank("node0"));
+    }
+
+    @Test
+    public void timeRoundTrips() {
+        RedisRankDESCWithPackedTimestamp rank = manager.register("time");
+        ScorePacker packer = rank.getPacker();
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            long time = EPOCH + (random.nextLong() & Long.MAX_VALUE) % (1000L << packer.getTimeBits());
+            long score = random.nextInt(1 << 20) - (1 << 19);
+            rank.insertOrUpdate("node", score, new Date(time));
+            double packed = rank.getRedis().zscore(rank.getRankName(), "node");
+            assertEquals("time " + time, time / 1000 * 1000, packer.timeMillis(packed));
+            assertEquals("score " + score, score, rank.getNodeVal("node"), 0);
+        }
+        rank.incr("node", 1, new Date(EPOCH + 42000));
+        assertEquals("incr repacks the time", EPOCH + 42000, packer.timeMillis(rank.getRedis().zscore(rank.getRankName(), "node")));
+    }
+
+    @Test
+    public void rejectsOutOfRange() {
+        RedisRankDESCWithPackedTimestamp rank = manager.register("range");
+        ScorePacker packer = rank.getPacker();
+        assertRejected(() -> rank.insertOrUpdate("node", 1.5, at(0)), "fraction");
+        assertRejected(() -> rank.insertOrUpdate("node", packer.getMaxScore() + 1, at(0)), "score above range");
+        assertRejected(() -> rank.insertOrUpdate("node", packer.getMinScore() - 1, at(0)), "score below range");
+        assertRejected(() -> rank.insertOrUpdate("node", 1, new Date(EPOCH - 1000)), "time before epoch");
+        assertRejected(() -> rank.insertOrUpdate("node", 1, new Date(EPOCH + (1000L << packer.getTimeBits()))), "time after range");
+        assertRejected(() -> rank.incr("node", 1, new Date(EPOCH - 1000)), "incr time before epoch");
+        assertTrue("nothing written", rank.countAll() == 0);
+
+        rank.insertOrUpdate("node", packer.getMaxScore(), at(0));
+        assertNull("incr past the range", rank.incr("node", 1, at(1)));
+        assertEquals("score kept", packer.getMaxScore(), rank.getNodeVal("node"), 0);
+        rank.insertOrUpdate("low", packer.getMinScore(), at(0));
+        assertNull("incr below the range", rank.incr("low", -1, at(1)));
+    }
+
+    @Test
+    public void countByUnpackedBounds() {
+        RedisRankDESCWithPackedTimestamp rank = manager.register("count");
+        for (int i = 0; i < 10; i++) {
+            rank.insertOrUpdate("node" + i, i, at(i * 7919 % 1000));
+        }
+        assertEquals("inclusive bounds at any time", Long.valueOf(3), rank.countBy(3, 5));
+        assertEquals("single score", Long.valueOf(1), rank.countBy(9, 9));
+        assertEquals("negative bounds", Long.valueOf(1), rank.countBy(-5, 0));
+        assertEquals("fractional bounds", Long.valueOf(2), rank.countBy(2.5, 4.5));
+        assertEquals("removeByScore unpacks too", 3, rank.removeByScore(3, 5));
+        assertEquals("removed", Arrays.asList("node9", "node8", "node7", "node6", "node2", "node1", "node0"),
+                ids(rank.descRangeByRankWithScores(0, -1)));
+    }
+
+    private static void assertRejected(Runnable runnable, String message) {
+        try {
+            runnable.run();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        fail(message);
+    }
+
+    private static Date at(int seconds) {
+        return new Date(1700000000000L + seconds * 1000L);
+    }
+
+    private static List<String> ids(List<RankNode> nodes) {
+        return nodes.stream().map(RankNode::getNodeId).collect(Collectors.toList());
+    }
+}
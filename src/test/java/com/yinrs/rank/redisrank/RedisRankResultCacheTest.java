@@ -0,0 +1,46 @@
+package com.yinrs.rank.redisrank;
+
+
+import com.yinrs.rank.RankBatch;
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class RedisRankResultCacheTest {
+    public static void main(String[] args) {
+        System.setProperty("mp.rank.result-cache.enabled", "true");
+        RedisRankManager rankManager = RankManagerFactory.getInstance(RedisRankManager.class);
+        RedisRank rank = rankManager.register("result-cache-rank");
+        assertTrue("result cache enabled", rank.getResultCache() != null);
+        rank.removeAll();
+        for (int i = 0; i < 10; i++) {
+            rank.insertOrUpdate("nodeId" + i, i);
+        }
+        long version = rank.getRedis().getNumber(rank.getResultCache().getVersionKey(), Long.class);
+
+        assertTrue("countAll", rank.countAll() == 10);
+        assertTrue("desc rank", rank.getDESCRank("nodeId9") == 0);
+        List<RankNode> top = rank.descRangeByRankWithScores(0, 2);
+        assertTrue("range", top.size() == 3 && "nodeId9".equals(top.get(0).getNodeId()));
+
+        rank.incr("nodeId0", 100);
+        assertTrue("rank after incr", rank.getDESCRank("nodeId0") == 0);
+        assertTrue("score after incr", rank.getNodeVal("nodeId0") == 100);
+        rank.remove("nodeId0");
+        assertTrue("countAll after remove", rank.countAll() == 9);
+        assertTrue("countBy after remove", rank.countBy(0, 4) == 4);
+
+        RankBatch batch = rank.batch();
+        batch.insertOrUpdate("nodeId10", 10);
+        batch.execute();
+        assertTrue("page after batch", "nodeId10".equals(rank.descRangePage(0, 0).getNodeId(0)));
+
+        long bumped = rank.getRedis().getNumber(rank.getResultCache().getVersionKey(), Long.class);
+        assertTrue("one version per write, got " + (bumped - version), bumped == version + 3);
+        rank.removeAll();
+    }
+}
@@ -1,12 +1,15 @@
 package com.yinrs.rank.redisrank;
 
 
+import com.yinrs.rank.RankBatch;
 import com.yinrs.rank.RankManagerFactory;
 import com.yinrs.rank.RankNode;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 public class RedisRankTest {
@@ -36,6 +39,17 @@ public class RedisRankTest {
         Long aLong1 = rank.countBy(0, 99);
         String rankName = rank.getRankName();
         desc = rank.descRangeByRankWithScores(0, -1);
+
+        RankBatch batch = rank.batch();
+        List<CompletableFuture<Double>> incrs = new ArrayList<>();
+        for (int i = 0; i < 99; i++) {
+            incrs.add(batch.incr("nodeId" + i, i));
+        }
+        CompletableFuture<Long> removed = batch.remove("node999");
+        batch.execute();
+        Double nodeVal3 = incrs.get(13).join();
+        Long removedCount = removed.join();
+        List<RankNode> around = rank.descNeighborhood("nodeId13", 2, 2);
         System.out.println();
     }
 
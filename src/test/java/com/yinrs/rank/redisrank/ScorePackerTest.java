@@ -0,0 +1,43 @@
+package com.yinrs.rank.redisrank;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ScorePackerTest {
+    @Test
+    public void pack() {
+        long epoch = 1577836800000L;
+        ScorePacker packer = new ScorePacker(23, 30, epoch, 1000);
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long score = random.nextInt(1 << 23) - (1 << 22);
+            long time = epoch + (random.nextLong() & Long.MAX_VALUE) % (1000L << 30);
+            double packed = packer.pack(score, time);
+            assertTrue("score " + score, packer.score(packed) == score);
+            assertTrue("time " + time, packer.timeMillis(packed) == time / 1000 * 1000);
+            assertTrue("bounds " + score, packed >= packer.lowest(score) && packed <= packer.highest(score));
+        }
+        assertTrue("earlier first", packer.pack(10, epoch) > packer.pack(10, epoch + 1000));
+        assertTrue("score first", packer.pack(11, epoch + 5000) > packer.pack(10, epoch));
+        assertTrue("negative score", packer.pack(-1, epoch) < packer.pack(0, epoch + 5000));
+        assertRejected(() -> packer.pack(1.5, epoch), "fraction");
+        assertRejected(() -> packer.pack(1 << 22, epoch), "score overflow");
+        assertRejected(() -> packer.pack(0, epoch - 1000), "before epoch");
+        assertRejected(() -> packer.pack(0, epoch + (1000L << 30)), "time overflow");
+        assertRejected(() -> new ScorePacker(24, 30, epoch, 1000), "mantissa");
+    }
+
+    private static void assertRejected(Runnable runnable, String message) {
+        try {
+            runnable.run();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        fail(message);
+    }
+}
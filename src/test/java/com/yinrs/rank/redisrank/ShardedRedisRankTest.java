@@ -0,0 +1,55 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.rank.RankManagerFactory;
+import com.yinrs.rank.RankNode;
+import com.yinrs.rank.localrank.LocalRank;
+import com.yinrs.rank.localrank.LocalRankManager;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class ShardedRedisRankTest {
+    public static void main(String[] args) throws Exception {
+        ShardedRedisRankManager rankManager = RankManagerFactory.getInstance(ShardedRedisRankManager.class);
+        LocalRankManager localManager = RankManagerFactory.getInstance(LocalRankManager.class);
+        for (int i = 0; i < 9; i++) {
+            test(rankManager, localManager, i);
+        }
+        System.out.println();
+    }
+
+    private static void test(ShardedRedisRankManager rankManager, LocalRankManager localManager, int k) {
+        ShardedRedisRank rank = (ShardedRedisRank) rankManager.register("rank-" + k);
+        LocalRank expected = localManager.register("rank-" + k);
+        Random random = new Random(k);
+        for (int i = 0; i < 999; i++) {
+            String nodeId = "nodeId" + random.nextInt(300);
+            double score = random.nextInt(20);
+            rank.insertOrUpdate(nodeId, score);
+            expected.insertOrUpdate(nodeId, score);
+        }
+        assertTrue("countAll " + k, rank.countAll().equals(expected.countAll()));
+        assertTrue("desc " + k, ids(rank.descRangeByRankWithScores(0, -1)).equals(ids(expected.descRangeByRankWithScores(0, -1))));
+        assertTrue("asc " + k, ids(rank.ascRangeByRankWithScores(5, 50)).equals(ids(expected.ascRangeByRankWithScores(5, 50))));
+        for (RankNode node : expected.descRangeByRankWithScores(0, -1)) {
+            assertTrue("desc rank " + node, rank.getDESCRank(node.getNodeId()).equals(expected.getDESCRank(node.getNodeId())));
+            assertTrue("asc rank " + node, rank.getASCRank(node.getNodeId()).equals(expected.getASCRank(node.getNodeId())));
+        }
+        assertTrue("neighborhood " + k, ids(rank.descNeighborhood("nodeId13", 2, 2)).equals(ids(expected.descNeighborhood("nodeId13", 2, 2))));
+        assertTrue("countBy " + k, rank.countBy(3, 7).equals(expected.countBy(3, 7)));
+        rank.removeByRank(0, 9);
+        expected.removeByRank(0, 9);
+        assertTrue("removeByRank " + k, ids(rank.descRangeByRankWithScores(0, -1)).equals(ids(expected.descRangeByRankWithScores(0, -1))));
+        rankManager.remove(rank);
+        localManager.remove(expected);
+        assertTrue("remove " + k, rank.countAll() == 0);
+    }
+
+    private static List<String> ids(List<RankNode> nodes) {
+        return nodes == null ? null : nodes.stream().map(RankNode::getNodeId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,161 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.memory.InMemoryCacheManager;
+import com.yinrs.cache.redis.RedisKeys;
+import com.yinrs.rank.RankNode;
+import org.junit.Test;
+import redis.clients.jedis.Tuple;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertTrue;
+
+
+public class SlidingWindowRankTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long START = 472222 * HOUR;
+
+    private final InMemoryCacheManager cache = new InMemoryCacheManager();
+    private final AtomicLong now = new AtomicLong(START);
+
+    @Test
+    public void expiresAtWindowEdge() {
+        SlidingWindowRank rank = rank("edge");
+        rank.incr("a", 5);
+        now.set(START + HOUR - 1);
+        rank.incr("b", 4);
+        now.set(START + HOUR);
+        rank.incr("b", 3);
+
+        now.set(START + 3 * HOUR - 1);
+        assertTrue("last millisecond of the window", rank.getNodeVal("a") == 5 && rank.getNodeVal("b") == 7);
+        now.set(START + 3 * HOUR);
+        assertTrue("first bucket left the window", rank.getNodeVal("a") == null && rank.getNodeVal("b") == 3);
+        assertTrue("members at 0 leave the rank", rank.countAll() == 1);
+        now.set(START + 4 * HOUR);
+        assertTrue("second bucket left the window", rank.countAll() == 0);
+    }
+
+    @Test
+    public void rebuildAfterRollover() {
+        SlidingWindowRank rank = rank("rebuild");
+        rank.incr("a", 1);
+        now.addAndGet(HOUR);
+        rank.incr("a", 2);
+        rank.incr("b", 4);
+        now.addAndGet(HOUR);
+        rank.incr("c", 3);
+
+        cache.del(RedisKeys.sameSlot("rebuild", ":cursor"));
+        assertTrue("incr not counted in the rank while the cursor is missing", rank.incr("c", 1) == null);
+        now.addAndGet(HOUR);
+        assertTrue("rebuilt from the live buckets", rank.getNodeVal("a") == 2 && rank.getNodeVal("b") == 4 && rank.getNodeVal("c") == 4);
+        assertTrue("rebuilt rank equals its buckets", sameAsBuckets(rank));
+
+        cache.zadd(rank.bucketKey(rank.currentBucket() - 1), 10, "late");
+        rank.incr("d", 1);
+        assertTrue("buckets not written through the rank are only read by a rebuild", rank.getNodeVal("late") == null);
+        now.addAndGet(3 * HOUR);
+        rank.incr("e", 1);
+        assertTrue("a whole window behind rebuilds", rank.countAll() == 1 && rank.getNodeVal("e") == 1);
+        now.addAndGet(HOUR);
+        assertTrue("slides again after the rebuild", rank.getNodeVal("e") == 1 && sameAsBuckets(rank));
+    }
+
+    @Test
+    public void concurrentIncrAcrossBuckets() throws Exception {
+        SlidingWindowRank rank = rank("concurrent");
+        SlidingWindowRank other = rank("concurrent");
+        int threads = 8;
+        int incrs = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            SlidingWindowRank writer = t % 2 == 0 ? rank : other;
+            boolean ticking = t == 0;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < incrs; i++) {
+                    if (ticking && (i == incrs / 3 || i == 2 * incrs / 3)) {//two boundaries, the window keeps all
+                        now.addAndGet(HOUR);
+                    }
+                    writer.incr("node" + i % 10, 1);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        double sum = 0;
+        for (RankNode node : rank.descRangeByRankWithScores(0, -1)) {
+            sum += node.getNodeScore();
+        }
+        assertTrue("every incr counted once across the bucket boundaries", sum == threads * incrs);
+        assertTrue("rank equals its buckets", sameAsBuckets(rank));
+        now.addAndGet(HOUR);
+        assertTrue("slid once for both writers", sameAsBuckets(rank) && sameAsBuckets(other));
+    }
+
+    @Test
+    public void removeFromBuckets() {
+        SlidingWindowRank rank = rank("remove");
+        rank.incr("a", 1);
+        rank.incr("b", 1);
+        now.addAndGet(HOUR);
+        rank.incr("b", 1);
+        assertTrue("remove", rank.remove("a") == 1 && rank.getNodeVal("a") == null);
+        now.addAndGet(2 * HOUR);
+        assertTrue("removed node not subtracted below 0", rank.getNodeVal("a") == null && rank.getNodeVal("b") == 1);
+        assertTrue("remove all", rank.removeAll() == 1 && rank.countAll() == 0 && !cache.exists(rank.bucketKey(rank.currentBucket() - 1)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @SuppressWarnings("deprecation")
+    public void scoresOnlyIncremented() {
+        rank("increment").insertOrUpdate("a", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unevenBuckets() {
+        new SlidingWindowRank(cache, "uneven", 10, 3);
+    }
+
+    private SlidingWindowRank rank(String name) {
+        SlidingWindowRank rank = new SlidingWindowRank(cache, name, 3 * HOUR, 3);
+        rank.setClock(now::get);
+        return rank;
+    }
+
+    /**
+     * @return whether the rank holds the sums of the sub-buckets of its window
+     */
+    private boolean sameAsBuckets(SlidingWindowRank rank) {
+        Map<String, Double> sums = new HashMap<>();
+        long current = rank.currentBucket();
+        for (long bucket = current - rank.getBuckets() + 1; bucket <= current; bucket++) {
+            for (Tuple tuple : cache.zrangeWithScores(rank.bucketKey(bucket), 0, -1)) {
+                sums.merge(tuple.getElement(), tuple.getScore(), Double::sum);
+            }
+        }
+        sums.values().removeIf(score -> score == 0);
+        Map<String, Double> scores = new HashMap<>();
+        for (RankNode node : rank.descRangeByRankWithScores(0, -1)) {
+            scores.put(node.getNodeId(), node.getNodeScore());
+        }
+        return scores.equals(sums);
+    }
+}
@@ -0,0 +1,87 @@
+package com.yinrs.rank.redisrank;
+
+import com.yinrs.cache.memory.InMemoryCacheManager;
+import com.yinrs.rank.RankNode;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class WindowedRankTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void windows() throws Exception {
+        InMemoryCacheManager cache = new InMemoryCacheManager();
+        AtomicLong now = new AtomicLong(1700000000000L);
+        WindowedRank rank = new WindowedRank(cache, "windowed", WindowedRank.Granularity.DAY, 7, ZoneOffset.UTC, 0);
+        rank.setClock(now::get);
+
+        assertTrue("incr in the bucket", rank.incr("a", 5) == 5 && rank.incr("a", 1) == 6);
+        rank.incr("b", 4);
+        now.addAndGet(DAY);
+        rank.incr("b", 3);
+        rank.incr("c", 1);
+        now.addAndGet(DAY);
+        rank.incr("c", 2);
+
+        WindowedRank.View today = rank.window(1);
+        WindowedRank.View week = rank.window(7);
+        assertTrue("today", today.getNodeVal("c") == 2 && today.countAll() == 1);
+        assertTrue("week order", ids(week.descRangeByRankWithScores(0, -1)).equals(Arrays.asList("b", "a", "c")));
+        assertTrue("week scores", week.getNodeVal("b") == 7 && week.getDESCRank("a") == 1);
+        assertTrue("two days", rank.window(2).getNodeVal("b") == 3 && rank.window(2).getNodeVal("a") == null);
+        assertTrue("one view per window", rank.window(7) == week);
+
+        cache.zadd(rank.bucketKey(rank.currentBucket() - 1), 100, "late");
+        rank.incr("c", 1);
+        assertTrue("closed buckets are aggregated once a bucket", week.getNodeVal("c") == 4 && week.getNodeVal("late") == null);
+
+        now.addAndGet(DAY);
+        assertTrue("closed buckets aggregated again in the next bucket", week.getNodeVal("late") == 100 && week.getNodeVal("c") == 4);
+        now.addAndGet(5 * DAY);
+        assertTrue("window rolled", week.getNodeVal("a") == null && week.getNodeVal("late") == null && week.getNodeVal("c") == 3);
+        now.addAndGet(DAY);
+        assertTrue("window empty", week.countAll() == 0);
+
+        rank.incr("d", 1);
+        assertTrue("new bucket", week.getNodeVal("d") == 1);
+        assertTrue("remove", rank.remove("d") && week.getNodeVal("d") == null && !rank.remove("d"));
+
+        WindowedRank cached = new WindowedRank(cache, "cached", WindowedRank.Granularity.HOUR, 24, ZoneOffset.UTC, TimeUnit.MINUTES.toMillis(1));
+        cached.setClock(now::get);
+        cached.incr("x", 1);
+        WindowedRank.View day = cached.window(24);
+        assertTrue("hour buckets", day.getNodeVal("x") == 1);
+        cached.incr("x", 1);
+        assertTrue("view read until refreshMillis passed", day.getNodeVal("x") == 1);
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        assertTrue("view refreshed", day.getNodeVal("x") == 2);
+
+        try {
+            rank.window(8);
+            fail("window past retention");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @SuppressWarnings("deprecation")
+    public void viewIsReadOnly() {
+        WindowedRank rank = new WindowedRank(new InMemoryCacheManager(), "read-only", WindowedRank.Granularity.DAY, 7, ZoneOffset.UTC, 0);
+        rank.window(7).insertOrUpdate("a", 1);
+    }
+
+    private static List<String> ids(List<RankNode> nodes) {
+        return nodes.stream().map(RankNode::getNodeId).collect(Collectors.toList());
+    }
+}